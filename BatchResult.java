@@ -0,0 +1,178 @@
+/* Author: Daniel Hammer
+ *
+ * BatchResult class
+ *
+ * Accumulates the outcomes of many games of Durak
+ * Games stopped at Durak.MAX_ROUNDS are counted apart from draws
+ * Each worker fills its own BatchResult, and the results are merged
+ *      once the workers are done, so no counters are ever shared
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class BatchResult{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    private long games;
+    private long draws;
+    private long stopped;
+    private long rounds;
+    private long cardsLeft;
+    private long[] losses;
+    private long elapsedNanos;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    public BatchResult(int numPlayers){
+        this.losses = new long[numPlayers];
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public long getGames(){
+        return this.games;
+    }
+
+    public long getDraws(){
+        return this.draws;
+    }
+
+    // Games cut off at Durak.MAX_ROUNDS with no loser
+    public long getStopped(){
+        return this.stopped;
+    }
+
+    public long getRounds(){
+        return this.rounds;
+    }
+
+    public long getCardsLeft(){
+        return this.cardsLeft;
+    }
+
+    public long getLosses(int seat){
+        return this.losses[seat];
+    }
+
+    public int getNumPlayers(){
+        return this.losses.length;
+    }
+
+    public long getElapsedNanos(){
+        return this.elapsedNanos;
+    }
+
+    public void setElapsedNanos(long elapsedNanos){
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public double getGamesPerSecond(){
+        return elapsedNanos == 0 ? 0 : games / (elapsedNanos / 1e9);
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // Adds one finished game to the totals
+    public void record(GameResult result){
+        record(result.getOutcome(), result.getRoundsPlayed(), result.getCardsLeft());
+    }
+
+    // Same as above, without a GameResult; a loserSeat of -1 is a draw,
+    //      and GameResult.STOPPED a stopped game
+    public void record(int loserSeat, int roundsPlayed, int cardsLeft){
+        games++;
+        rounds += roundsPlayed;
+        if (loserSeat == GameResult.STOPPED){
+            stopped++;
+        }
+        else if (loserSeat < 0){
+            draws++;
+        }
+        else{
+            losses[loserSeat]++;
+            this.cardsLeft += cardsLeft;
+        }
+    }
+
+    // Adds all of the other result's totals into this one
+    public void merge(BatchResult other){
+        games += other.games;
+        draws += other.draws;
+        stopped += other.stopped;
+        rounds += other.rounds;
+        cardsLeft += other.cardsLeft;
+        for (int i = 0; i < losses.length; i++){
+            losses[i] += other.losses[i];
+        }
+    }
+
+    // Writes the totals, for readState() to add back (see BatchRunner)
+    public void writeState(DataOutput out) throws IOException{
+        out.writeInt(losses.length);
+        out.writeLong(games);
+        out.writeLong(draws);
+        out.writeLong(stopped);
+        out.writeLong(rounds);
+        out.writeLong(cardsLeft);
+        for (long l : losses){
+            out.writeLong(l);
+        }
+    }
+
+    // Adds totals written by writeState() for the same number of players
+    public void readState(DataInput in) throws IOException{
+        if (in.readInt() != losses.length){
+            throw new IllegalArgumentException("saved result is for a different"
+                    + " number of players");
+        }
+        games += in.readLong();
+        draws += in.readLong();
+        stopped += in.readLong();
+        rounds += in.readLong();
+        cardsLeft += in.readLong();
+        for (int i = 0; i < losses.length; i++){
+            losses[i] += in.readLong();
+        }
+    }
+
+    public String toString(){
+        StringBuilder sb = new StringBuilder();
+        sb.append(games).append(" games in ")
+            .append(String.format("%.3f", elapsedNanos / 1e9)).append("s (")
+            .append(String.format("%.0f", getGamesPerSecond()))
+            .append(" games/s)\n");
+        sb.append("Average rounds per game: ")
+            .append(String.format("%.2f", games == 0 ? 0.0
+                    : (double) rounds / games)).append('\n');
+        for (int i = 0; i < losses.length; i++){
+            sb.append("Seat ").append(i).append(" lost ").append(losses[i])
+                .append(" times\n");
+        }
+        sb.append("Draws: ").append(draws);
+        if (stopped != 0){
+            sb.append("\nStopped at ").append(Durak.MAX_ROUNDS).append(" rounds: ")
+                .append(stopped);
+        }
+        return sb.toString();
+    }
+}
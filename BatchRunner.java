@@ -0,0 +1,545 @@
+/* Author: Daniel Hammer
+ *
+ * BatchRunner class
+ *
+ * Plays a large number of headless games of Durak across every core
+ * The range of game indexes is split recursively on a work-stealing
+ *      ForkJoinPool; each leaf plays its games into its own BatchResult,
+ *      and the results are merged as the tasks are joined
+ *
+ * Every game's seed is derived from the batch seed and the game's index,
+ *      so a batch gives the same totals no matter how the work was split
+ *
+ * A SimulationStats can be attached to gather more detailed statistics;
+ *      every leaf records into it with a Recorder of its own, and it can
+ *      be read while the batch is still running
+ * A ResultStore can be attached to keep every game's summary; each game
+ *      goes in the row of its index, so the store lines up with the seeds
+ *      and a resumed batch rewrites the same rows
+ *
+ * Given a checkpoint file, the batch is played in chunks of CHUNK_SIZE
+ *      games, and every so often the chunks that are done and their merged
+ *      totals (and stats) are saved there: to a temporary file, forced to
+ *      disk, then renamed over the old checkpoint
+ * Run the same batch with the same file after a crash and only the chunks
+ *      that were not saved are played again; since every game's seed comes
+ *      from its index, the totals come out exactly as if it had never
+ *      stopped
+ * The workers only hand a finished chunk over under a short lock; the
+ *      checkpoint is written by the thread that started the batch
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+public class BatchRunner{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // Games per leaf task; small enough to balance, big enough to amortize
+    private static final int LEAF_SIZE = 256;
+
+    private final GameConfig config;
+    private final int parallelism;
+
+    // If set, every worker logs its games to its own file in here
+    private Path logDirectory;
+    private final ConcurrentHashMap<Integer, GameLogWriter> logs =
+        new ConcurrentHashMap<Integer, GameLogWriter>();
+
+    // If set, every game is also recorded into these
+    private SimulationStats stats;
+
+    // If set, every game is also written to this, in the row of its index
+    private ResultStore store;
+
+    // If set, progress is saved to this file every 'checkpointMillis'
+    // A checkpoint only ever holds whole chunks
+    private static final long CHUNK_SIZE = 1 << 16;
+    private static final int CHECKPOINT_MAGIC = 0x44434B50;
+    // Version 2 counts games stopped at Durak.MAX_ROUNDS apart from draws
+    private static final int CHECKPOINT_VERSION = 2;
+    private Path checkpoint;
+    private long checkpointMillis = 60_000;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    public BatchRunner(GameConfig config){
+        this(config, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchRunner(GameConfig config, int parallelism){
+        this.config = config;
+        this.parallelism = parallelism;
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    // Logs every game to 'directory' with a GameLogWriter, one file per
+    //      worker (games-<worker>.dlog)
+    public void setLogDirectory(Path directory){
+        this.logDirectory = directory;
+    }
+
+    // Records every game into 'stats' as well, which must be for the
+    //      config's number of players
+    public void setStats(SimulationStats stats){
+        this.stats = stats;
+    }
+
+    public SimulationStats getStats(){
+        return this.stats;
+    }
+
+    // Writes every game to 'store' as well, which must have room for the
+    //      config's number of players
+    public void setStore(ResultStore store){
+        this.store = store;
+    }
+
+    public ResultStore getStore(){
+        return this.store;
+    }
+
+    // Saves progress to 'file' every 'millis', and resumes from it if it
+    //      already holds progress on the same batch
+    public void setCheckpoint(Path file, long millis){
+        this.checkpoint = file;
+        this.checkpointMillis = millis;
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // Plays 'games' games and returns the merged totals
+    public BatchResult run(long games){
+        if (checkpoint != null){
+            return runCheckpointed(games);
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long start = System.nanoTime();
+        try{
+            BatchResult result = pool.invoke(new GameRange(0, games));
+            result.setElapsedNanos(System.nanoTime() - start);
+            return result;
+        }
+        finally{
+            pool.shutdown();
+            closeLogs();
+        }
+    }
+
+    // Returns the calling worker's log, opening it on first use,
+    //      or NONE if games are not being logged
+    private GameEventListener workerLog(){
+        if (logDirectory == null){
+            return GameEventListener.NONE;
+        }
+        int worker = ((ForkJoinWorkerThread) Thread.currentThread()).getPoolIndex();
+        return logs.computeIfAbsent(worker, w -> {
+            try{
+                return new GameLogWriter(logDirectory.resolve("games-" + w + ".dlog"));
+            }
+            catch (IOException e){
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void closeLogs(){
+        for (GameLogWriter log : logs.values()){
+            try{
+                log.close();
+            }
+            catch (IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+        logs.clear();
+    }
+
+    // Derives an independent seed for the game at 'index'
+    // (SplitMix64 finalizer, so neighbouring indexes give unrelated seeds)
+    public static long seedFor(long batchSeed, long index){
+        return SplitMix.mix64(batchSeed + (index + 1) * 0x9E3779B97F4A7C15L);
+    }
+
+
+
+
+    /****************
+     * WORKER TASKS *
+     * *************/
+
+    // Plays the games in [from, to), splitting while the range is large
+    private class GameRange extends RecursiveTask<BatchResult>{
+
+        private static final long serialVersionUID = 1L;
+
+        private final long from;
+        private final long to;
+
+        // Where the games' stats go, if anywhere
+        private final SimulationStats into;
+
+        GameRange(long from, long to){
+            this(from, to, stats);
+        }
+
+        GameRange(long from, long to, SimulationStats into){
+            this.from = from;
+            this.to = to;
+            this.into = into;
+        }
+
+        @Override
+        protected BatchResult compute(){
+            if (to - from <= LEAF_SIZE){
+                BatchResult result = new BatchResult(config.getNumPlayers());
+                GameEventListener log = workerLog();
+                if (into != null){
+                    log = MulticastListener.of(log, into.newRecorder());
+                }
+                ResultStore.Recorder row = null;
+                if (store != null){
+                    row = store.newRecorder();
+                    log = MulticastListener.of(log, row);
+                }
+                long batchSeed = config.getSeed();
+                for (long i = from; i < to; i++){
+                    if (row != null){
+                        row.setNextRow(i);
+                    }
+                    result.record(DurakEngine.play(
+                                config.withSeed(seedFor(batchSeed, i)), log));
+                }
+                return result;
+            }
+            long mid = (from + to) >>> 1;
+            GameRange left = new GameRange(from, mid, into);
+            left.fork();
+            BatchResult result = new GameRange(mid, to, into).compute();
+            result.merge(left.join());
+            return result;
+        }
+    }
+
+
+
+
+    /*****************
+     * CHECKPOINTING *
+     * **************/
+
+    // Plays every chunk not already in the checkpoint, saving progress as
+    //      chunks finish, and returns the totals of the whole batch
+    private BatchResult runCheckpointed(long games){
+        if (logDirectory != null){
+            throw new IllegalStateException("game logs cannot be resumed,"
+                    + " so they cannot be written by a checkpointed batch");
+        }
+        Progress progress = new Progress(games);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long start = System.nanoTime();
+        try{
+            if (Files.exists(checkpoint)){
+                progress.load(checkpoint);
+            }
+            ArrayList<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+            for (int c = 0; c < progress.chunks; c++){
+                if (!progress.done.get(c)){
+                    progress.pending++;
+                    tasks.add(pool.submit(progress.chunk(c)));
+                }
+            }
+            while (!progress.awaitDone(checkpointMillis)){
+                progress.save(checkpoint, System.nanoTime() - start);
+            }
+            // Saves whatever finished, even if a chunk failed
+            progress.save(checkpoint, System.nanoTime() - start);
+            for (ForkJoinTask<?> t : tasks){
+                t.join();
+            }
+            BatchResult result = new BatchResult(config.getNumPlayers());
+            result.merge(progress.totals);
+            result.setElapsedNanos(progress.elapsedBefore + System.nanoTime() - start);
+            return result;
+        }
+        catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+        finally{
+            pool.shutdown();
+        }
+    }
+
+    // The chunks of a checkpointed batch that are done, and their totals
+    // 'games' and 'chunks' are fixed for the batch; the rest is guarded
+    //      by the Progress's lock once the chunks are submitted
+    private class Progress{
+
+        private final long games;
+        private final int chunks;
+        private final BitSet done;
+        private final BatchResult totals;
+
+        // Time spent by earlier runs of this batch
+        private long elapsedBefore;
+
+        // Chunks submitted but not finished, and whether one has failed
+        private int pending;
+        private boolean failed;
+
+        Progress(long games){
+            this.games = games;
+            this.chunks = (int) ((games + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            this.done = new BitSet(chunks);
+            this.totals = new BatchResult(config.getNumPlayers());
+        }
+
+        // Plays chunk 'c' into stats of its own, then adds it to the totals
+        Runnable chunk(int c){
+            return () -> {
+                long from = c * CHUNK_SIZE;
+                SimulationStats chunkStats = stats == null ? null
+                    : new SimulationStats(config.getNumPlayers());
+                try{
+                    BatchResult result = new GameRange(from,
+                            Math.min(games, from + CHUNK_SIZE), chunkStats).compute();
+                    finished(c, result, chunkStats);
+                }
+                catch (RuntimeException | Error e){
+                    failed();
+                    throw e;
+                }
+            };
+        }
+
+        private synchronized void finished(int c, BatchResult result,
+                SimulationStats chunkStats){
+            totals.merge(result);
+            if (stats != null){
+                stats.merge(chunkStats);
+            }
+            done.set(c);
+            pending--;
+            notifyAll();
+        }
+
+        private synchronized void failed(){
+            failed = true;
+            notifyAll();
+        }
+
+        // Waits up to 'millis' for every chunk to finish (or one to fail)
+        // Returns true if there is nothing left to wait for
+        synchronized boolean awaitDone(long millis){
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+            long left;
+            while (pending > 0 && !failed
+                    && (left = deadline - System.nanoTime()) > 0){
+                try{
+                    TimeUnit.NANOSECONDS.timedWait(this, left);
+                }
+                catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while waiting"
+                            + " for the batch", e);
+                }
+            }
+            return pending == 0 || failed;
+        }
+
+        // Copies the progress under the lock, then writes it without holding
+        //      it, through a temporary file so a crash mid-write leaves the
+        //      previous checkpoint in place
+        // The store is forced to disk before the file is written, so every
+        //      chunk the checkpoint says is done has its rows saved
+        void save(Path file, long elapsed) throws IOException{
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            writeBatch(out);
+            out.writeLong(elapsedBefore + elapsed);
+            synchronized (this){
+                long[] words = done.toLongArray();
+                out.writeInt(words.length);
+                for (long w : words){
+                    out.writeLong(w);
+                }
+                totals.writeState(out);
+                out.writeBoolean(stats != null);
+                if (stats != null){
+                    stats.writeState(out);
+                }
+            }
+            out.flush();
+            if (store != null){
+                store.flush();
+            }
+
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel ch = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+                ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+                while (buf.hasRemaining()){
+                    ch.write(buf);
+                }
+                ch.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // Restores the progress saved by save(), which must be for this batch
+        void load(Path file) throws IOException{
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(file))){
+                if (in.readInt() != CHECKPOINT_MAGIC || in.readInt() != CHECKPOINT_VERSION){
+                    throw new IllegalArgumentException(file + " is not a checkpoint");
+                }
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                writeBatch(new DataOutputStream(expected));
+                byte[] saved = in.readNBytes(expected.size());
+                if (!Arrays.equals(saved, expected.toByteArray())){
+                    throw new IllegalArgumentException(file + " is a checkpoint of"
+                            + " a different batch");
+                }
+                elapsedBefore = in.readLong();
+                long[] words = new long[in.readInt()];
+                for (int i = 0; i < words.length; i++){
+                    words[i] = in.readLong();
+                }
+                done.or(BitSet.valueOf(words));
+                totals.readState(in);
+                if (in.readBoolean() != (stats != null)){
+                    throw new IllegalArgumentException(file + (stats == null
+                                ? " has stats, but none are being gathered"
+                                : " has no stats, but stats are being gathered"));
+                }
+                if (stats != null){
+                    stats.readState(in);
+                }
+            }
+        }
+
+        // Everything that decides which games a batch plays
+        private void writeBatch(DataOutputStream out) throws IOException{
+            out.writeInt(config.getNumPlayers());
+            out.writeInt(config.getInitialHandSize());
+            out.writeBoolean(config.getHints());
+            out.writeLong(config.getSeed());
+            out.writeInt(config.getDeckType().ordinal());
+            out.writeInt(config.getDecks());
+            out.writeLong(games);
+            out.writeLong(CHUNK_SIZE);
+        }
+    }
+
+
+
+
+    /*********************
+     * PROGRAM EXECUTION *
+     * ******************/
+
+    // java BatchRunner [games] [players] [seed] [threads] [log directory]
+    //      [--stats=<file>] [--store=<directory>] [--checkpoint=<file>]
+    //      [--checkpoint-every=<seconds>]
+    // Also gathers SimulationStats into <file> (JSON for .json, else CSV)
+    // With --store, writes every game to a ResultStore in <directory>
+    // With --checkpoint, saves progress to <file> (every minute by default)
+    //      and resumes from it when run again
+    public static void main(String[] args) throws IOException{
+        Path statsFile = null;
+        Path storeDirectory = null;
+        Path checkpointFile = null;
+        long checkpointSeconds = 60;
+        ArrayList<String> positional = new ArrayList<String>();
+        for (String arg : args){
+            if (arg.startsWith("--stats=")){
+                statsFile = Path.of(arg.substring("--stats=".length()));
+            }
+            else if (arg.startsWith("--store=")){
+                storeDirectory = Path.of(arg.substring("--store=".length()));
+            }
+            else if (arg.startsWith("--checkpoint=")){
+                checkpointFile = Path.of(arg.substring("--checkpoint=".length()));
+            }
+            else if (arg.startsWith("--checkpoint-every=")){
+                checkpointSeconds = Long.parseLong(
+                        arg.substring("--checkpoint-every=".length()));
+            }
+            else{
+                positional.add(arg);
+            }
+        }
+        args = positional.toArray(new String[0]);
+
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 100000;
+        int numPlayers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+        int threads = args.length > 3 ? Integer.parseInt(args[3])
+            : Runtime.getRuntime().availableProcessors();
+
+        BatchRunner runner = new BatchRunner(
+                new GameConfig(numPlayers, 6, false, seed), threads);
+        if (args.length > 4){
+            runner.setLogDirectory(Path.of(args[4]));
+        }
+        if (statsFile != null){
+            runner.setStats(new SimulationStats(numPlayers));
+        }
+        if (storeDirectory != null){
+            runner.setStore(ResultStore.create(storeDirectory, numPlayers));
+        }
+        if (checkpointFile != null){
+            runner.setCheckpoint(checkpointFile, checkpointSeconds * 1000);
+        }
+        System.out.println(runner.run(games));
+        if (statsFile != null){
+            System.out.println(runner.getStats());
+            runner.getStats().writeTo(statsFile);
+        }
+        if (storeDirectory != null){
+            runner.getStore().close();
+        }
+        if (EngineMetrics.ENABLED){
+            System.out.println(EngineMetrics.get());
+        }
+    }
+}
@@ -0,0 +1,473 @@
+/* Author: Daniel Hammer
+ *
+ * Benchmark class
+ *
+ * Micro-benchmarks for the engine's hot paths:
+ *      building, shuffling, and dealing the deck,
+ *      the Player card checks (hasHigherCard, returnHigherCard, canPlay),
+ *      a single round of Durak, copying and stepping a GameState,
+ *      solving two-player endgames, whole games at 2 to 6 players, and
+ *      big tables dealt from shoes of several decks
+ *
+ * Each benchmark is warmed up, then timed over several iterations
+ * Alongside the time per operation it reports the bytes allocated per
+ *      operation, read from the JVM's per-thread allocation counter
+ * The endgame solver also reports the positions it searched per second
+ *      and how often its transposition table already held a position,
+ *      and the big tables (and game.4p, to compare) report the time per
+ *      card in the shoe
+ *
+ * Usage: java Benchmark [filter] [--budget=<bytes per game>]
+ *      filter  only runs benchmarks whose name contains it
+ *      budget  exits with status 1 if a full game allocates more than this
+ *
+ * The same operations also run under JMH (jmh/EngineBenchmark.java, built
+ *      by the pom's jmh profile); this harness needs no build
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.function.IntToLongFunction;
+
+public class Benchmark{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    // Target length of one iteration
+    private static final long ITERATION_NANOS = 200_000_000L;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Results are folded in here so the JIT cannot drop the work
+    private static long sink;
+
+    // The solver used by the endgame benchmark, and how many solves it ran
+    private static EndgameSolver solver;
+    private static long solves;
+
+
+
+
+    /*************
+     * OPERATION *
+     * **********/
+
+    // One benchmarked operation, run 'n' times
+    // Returns a value derived from the work, which is kept in 'sink'
+    private interface Op{
+        long run(int n);
+    }
+
+    // The outcome of one benchmark
+    private static class Score{
+        final String name;
+        final double nanosPerOp;
+        final double bytesPerOp;
+
+        Score(String name, double nanosPerOp, double bytesPerOp){
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        public String toString(){
+            return String.format("%-32s %14.1f ns/op %14.0f ops/s %12.1f B/op",
+                    name, nanosPerOp, 1e9 / nanosPerOp, bytesPerOp);
+        }
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // Warms up, then measures the op and returns its best iteration
+    private static Score measure(String name, Op op){
+        // Find a batch size that takes about ITERATION_NANOS
+        int n = 1;
+        long elapsed;
+        do{
+            n *= 2;
+            long start = System.nanoTime();
+            sink += op.run(n);
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ITERATION_NANOS / 10 && n < (1 << 28));
+        n = (int) Math.max(1, n * (ITERATION_NANOS / (double) Math.max(1, elapsed)));
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++){
+            sink += op.run(n);
+        }
+
+        double bestNanos = Double.MAX_VALUE;
+        double bytes = 0;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++){
+            long allocated = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            sink += op.run(n);
+            long nanos = System.nanoTime() - start;
+            allocated = THREADS.getCurrentThreadAllocatedBytes() - allocated;
+            bestNanos = Math.min(bestNanos, nanos / (double) n);
+            bytes += allocated / (double) n;
+        }
+        return new Score(name, bestNanos, bytes / MEASURED_ITERATIONS);
+    }
+
+
+
+
+    /**************
+     * BENCHMARKS *
+     * ***********/
+
+    private static Game newGame(int numPlayers){
+        return new Game(new GameConfig(numPlayers, 6, false, 42L));
+    }
+
+    // Refills the deck and empties every hand
+    private static void reset(Game game){
+        game.getDeck().clear();
+        game.buildDeck();
+        for (Player p : game.getPlayers()){
+            p.getHand().clear();
+        }
+    }
+
+    private static Op buildDeck(){
+        Game game = newGame(4);
+        return n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++){
+                game.getDeck().clear();
+                h += game.buildDeck().size();
+            }
+            return h;
+        };
+    }
+
+    private static Op shuffle(){
+        Game game = newGame(4);
+        ArrayList<Card> deck = game.getDeck();
+        return n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++){
+                game.shuffle(deck);
+                h += deck.get(0).getId();
+            }
+            return h;
+        };
+    }
+
+    // Includes refilling the deck, so subtract buildDeck for the deal alone
+    private static Op deal(){
+        Game game = newGame(4);
+        return n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++){
+                reset(game);
+                game.dealCardsToAllPlayers();
+                h += game.getPlayers().get(0).getHand().getBits();
+            }
+            return h;
+        };
+    }
+
+    // A player holding six cards, and a spread of cards to test against
+    private static Player handFixture(){
+        Player p = new Player("Bench", 100, 100);
+        p.setRandom(new SplitMix(7L));
+        p.setTrump(TrumpContext.of(Suit.SPADES));
+        p.addCard(Card.of(Suit.HEARTS, Face.FOUR));
+        p.addCard(Card.of(Suit.HEARTS, Face.JACK));
+        p.addCard(Card.of(Suit.CLUBS, Face.NINE));
+        p.addCard(Card.of(Suit.DIAMONDS, Face.QUEEN));
+        p.addCard(Card.of(Suit.SPADES, Face.SIX));
+        p.addCard(Card.of(Suit.SPADES, Face.KING));
+        return p;
+    }
+
+    private static Card[] probes(){
+        Card[] probes = new Card[Card.count()];
+        for (int i = 0; i < probes.length; i++){
+            probes[i] = Card.byId((i * 31) % probes.length);
+        }
+        return probes;
+    }
+
+    private static Op hasHigherCard(){
+        Player p = handFixture();
+        Card[] probes = probes();
+        return n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++){
+                if (p.hasHigherCard(probes[i % probes.length])){
+                    h++;
+                }
+            }
+            return h;
+        };
+    }
+
+    // Puts the returned card back so the hand stays the same
+    private static Op returnHigherCard(){
+        Player p = handFixture();
+        Card[] probes = probes();
+        return n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++){
+                Card c = p.returnHigherCard(probes[i % probes.length]);
+                if (c != null){
+                    p.addCard(c);
+                    h += c.getId();
+                }
+            }
+            return h;
+        };
+    }
+
+    private static Op canPlay(){
+        Player p = handFixture();
+        CardSet[] piles = new CardSet[Suit.values().length];
+        for (Suit s : Suit.values()){
+            piles[s.ordinal()] = new CardSet();
+            piles[s.ordinal()].add(Card.of(s, Face.TEN));
+        }
+        piles[0].add(Card.of(Suit.values()[1], Face.ACE));
+        return n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++){
+                if (p.canPlay(piles[i & 3])){
+                    h++;
+                }
+            }
+            return h;
+        };
+    }
+
+    // One round plus the deal and clean-up after it
+    // A new game is started whenever the current one ends
+    private static Op round(){
+        return new Op(){
+            private long seed = 1;
+            private Durak durak = start();
+
+            private Durak start(){
+                Durak d = new Durak(new GameConfig(4, 6, false, seed++));
+                d.startGame();
+                return d;
+            }
+
+            @Override
+            public long run(int n){
+                long h = 0;
+                for (int i = 0; i < n; i++){
+                    durak.round();
+                    durak.getGame().dealCardsToAllPlayers();
+                    durak.getGame().removeFinishedPlayers();
+                    if (durak.isGameOver()){
+                        h += durak.getResult().getRoundsPlayed();
+                        durak = start();
+                    }
+                }
+                return h;
+            }
+        };
+    }
+
+    // Copies a mid-game position into a preallocated buffer
+    private static Op copyState(){
+        GameState state = midGame();
+        GameState buffer = new GameState(4);
+        return n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++){
+                state.copyInto(buffer);
+                h += buffer.getHand(i & 3);
+            }
+            return h;
+        };
+    }
+
+    // Applies and takes back every legal move of a mid-game position
+    private static Op applyUndo(){
+        GameState state = midGame();
+        return n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++){
+                long moves = state.legalMoves();
+                while (moves != 0){
+                    state.apply(Long.numberOfTrailingZeros(moves));
+                    h += state.getTable();
+                    state.undo();
+                    moves &= moves - 1;
+                }
+            }
+            return h;
+        };
+    }
+
+    // A four player game, a few rounds in
+    private static GameState midGame(){
+        GameState state = new GameState(4);
+        RandomSource rand = new SplitMix(11L);
+        state.deal(rand);
+        while (state.getRound() < 4){
+            long moves = state.legalMoves();
+            moves &= ~GameState.TAKE_BIT;
+            if (moves == 0){
+                moves = GameState.TAKE_BIT;
+            }
+            state.apply(Long.numberOfTrailingZeros(moves));
+        }
+        return state;
+    }
+
+    // Solves a set of two-player endgames, each with an empty table
+    // Searches are cut off at a fixed node limit, so hard positions cost
+    //      the same every time
+    private static Op solveEndgame(){
+        RandomSource rand = new SplitMix(13L);
+        GameState[] positions = new GameState[16];
+        for (int i = 0; i < positions.length; i++){
+            while (positions[i] == null){
+                positions[i] = EndgameSolver.randomEndgame(2, rand);
+            }
+        }
+        solver = new EndgameSolver(new TranspositionTable(16));
+        return n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++){
+                GameState state = positions[i % positions.length];
+                solver.getTable().clear();
+                h += solver.solve(state, state.toMove(), 20_000L);
+                solves++;
+            }
+            return h;
+        };
+    }
+
+    private static Op fullGame(int numPlayers){
+        GameConfig config = new GameConfig(numPlayers, 6, false, 0L);
+        return n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++){
+                h += DurakEngine.play(config.withSeed(i)).getRoundsPlayed();
+            }
+            return h;
+        };
+    }
+
+    // A whole game at a big table, dealt from a shoe of 'decks' decks
+    private static Op bigTable(int numPlayers, int decks){
+        GameConfig config = new GameConfig(numPlayers, 6, false, 0L,
+                DeckType.STANDARD, decks);
+        return n -> {
+            long h = 0;
+            for (int i = 0; i < n; i++){
+                h += DurakEngine.play(config.withSeed(i)).getRoundsPlayed();
+            }
+            return h;
+        };
+    }
+
+    // The shoe size of a benchmark's game
+    private static int cards(String name){
+        switch (name){
+            case "table.12p.2decks": return 2 * 52;
+            case "table.24p.4decks": return 4 * 52;
+            default: return 52;
+        }
+    }
+
+
+
+
+    /*********************
+     * PROGRAM EXECUTION *
+     * ******************/
+
+    public static void main(String[] args){
+        String filter = "";
+        long budget = -1;
+        for (String arg : args){
+            if (arg.startsWith("--budget=")){
+                budget = Long.parseLong(arg.substring("--budget=".length()));
+            }
+            else{
+                filter = arg;
+            }
+        }
+
+        String[] names = {
+            "Game.buildDeck", "Game.shuffle", "Game.deal",
+            "Player.hasHigherCard", "Player.returnHigherCard", "Player.canPlay",
+            "Durak.round", "GameState.copyInto", "GameState.applyUndo",
+            "EndgameSolver.solve", "game.2p", "game.3p", "game.4p", "game.5p", "game.6p",
+            "table.12p.2decks", "table.24p.4decks"
+        };
+
+        boolean overBudget = false;
+        for (String name : names){
+            if (!name.contains(filter)){
+                continue;
+            }
+            Score score = measure(name, op(name));
+            System.out.println(score);
+            if (name.equals("EndgameSolver.solve")){
+                double nodesPerSolve = solver.getNodes() / (double) solves;
+                System.out.println(String.format("%-32s %14.0f nodes/s %10.1f%% table hits",
+                        "", nodesPerSolve * 1e9 / score.nanosPerOp,
+                        100 * solver.getHitRate()));
+            }
+            if (name.equals("game.4p") || name.startsWith("table.")){
+                System.out.println(String.format("%-32s %14.1f ns/card",
+                        "", score.nanosPerOp / cards(name)));
+            }
+            if (budget >= 0 && (name.startsWith("game.") || name.startsWith("table."))
+                    && score.bytesPerOp > budget){
+                System.out.println("\t" + name + " allocates more than the budget of "
+                        + budget + " B/game");
+                overBudget = true;
+            }
+        }
+        if (sink == 42){
+            System.out.println();
+        }
+        if (overBudget){
+            System.exit(1);
+        }
+    }
+
+    // The named benchmark's operation, for jmh/EngineBenchmark
+    // JMH benchmarks must be in a package, where this class's types
+    //      cannot be named, so the op is handed over as a JDK interface
+    public static IntToLongFunction operation(String name){
+        Op op = op(name);
+        return op::run;
+    }
+
+    private static Op op(String name){
+        switch (name){
+            case "Game.buildDeck": return buildDeck();
+            case "Game.shuffle": return shuffle();
+            case "Game.deal": return deal();
+            case "Player.hasHigherCard": return hasHigherCard();
+            case "Player.returnHigherCard": return returnHigherCard();
+            case "Player.canPlay": return canPlay();
+            case "Durak.round": return round();
+            case "GameState.copyInto": return copyState();
+            case "GameState.applyUndo": return applyUndo();
+            case "EndgameSolver.solve": return solveEndgame();
+            case "table.12p.2decks": return bigTable(12, 2);
+            case "table.24p.4decks": return bigTable(24, 4);
+            default: return fullGame(name.charAt(5) - '0');
+        }
+    }
+}
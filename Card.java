@@ -3,23 +3,32 @@
  * Card class
  *
  * Contains attributes to create a unique playing card, such as
- *      Face, Suit, Rank, and whether or not the card is a trump suit
- *      A trump suit is more valuable than any other card
+ *      Face, Suit, and Rank
+ *
+ * Cards are immutable and there is exactly one Card object for each of the
+ *      52 cards; use Card.of() or Card.byId() to get it
+ * Whether a card is a trump depends on the game it is played in, so that
+ *      is answered by the game's TrumpContext, not by the card
  *
  * Also contains methods to compare two cards, and display as a string
  */
 
-@SuppressWarnings("overrides")
-public class Card implements Comparable<Card>{
+public final class Card implements Comparable<Card>{
 
     /**********
      * FIELDS *
      * *******/
 
-    private Suit suit;
-    private Face face;
-    private int rank;
-    private boolean isTrump;
+    private final Suit suit;
+    private final Face face;
+    private final int rank;
+
+    // Position of this card in a CardSet: faces first, then suits,
+    //      so lower ids are lower faces
+    private final int id;
+
+    // The only Card objects that exist, indexed by id
+    private static final Card[] CARDS = buildCards();
 
 
 
@@ -27,12 +36,43 @@ public class Card implements Comparable<Card>{
     /**************
      * CONTRUCTOR *
      * ***********/
-    
-    public Card(Suit suit, Face face, int rank){
+
+    private Card(Suit suit, Face face){
         this.suit = suit;
         this.face = face;
-        this.rank = rank;
-        this.isTrump = false;
+        this.rank = face.getRank();
+        this.id = face.ordinal() * Suit.values().length + suit.ordinal();
+    }
+
+    private static Card[] buildCards(){
+        Card[] cards = new Card[Face.values().length * Suit.values().length];
+        for (Suit s : Suit.values()){
+            for (Face f : Face.values()){
+                Card c = new Card(s, f);
+                cards[c.id] = c;
+            }
+        }
+        return cards;
+    }
+
+
+
+
+    /**************
+     * FLYWEIGHTS *
+     * ***********/
+
+    public static Card of(Suit suit, Face face){
+        return CARDS[face.ordinal() * Suit.values().length + suit.ordinal()];
+    }
+
+    public static Card byId(int id){
+        return CARDS[id];
+    }
+
+    // The number of distinct cards
+    public static int count(){
+        return CARDS.length;
     }
 
 
@@ -50,17 +90,13 @@ public class Card implements Comparable<Card>{
         return this.face;
     }
 
+    // The rank of the card's face; trumps are ranked by the TrumpContext
     public int getRank(){
         return this.rank;
     }
-    
-    public void setTrump(){
-        this.rank = rank + 13;
-        this.isTrump = true;
-    }
-    
-    public boolean isTrump(){
-        return isTrump;
+
+    public int getId(){
+        return this.id;
     }
 
 
@@ -72,30 +108,14 @@ public class Card implements Comparable<Card>{
 
     // Returns positive if 'this' card is bigger,
     // negative if 'c' card is bigger, and 0 if they are equal
+    // Cards with the same face are ordered by suit
     @Override
     public int compareTo(Card c){
-        return this.getRank() > c.getRank() ? 1 :
-            this.getRank() < c.getRank() ? -1 : 0;
-    }
-
-    // Returns true if the 'this' is equal to 'other', else false
-    @Override
-    public boolean equals(Object other){
-        if (this == other){
-            return true;
-        }
-        else{
-            Card c = (Card) other;
-            return this.rank == c.getRank()
-                && this.suit == c.getSuit()
-                && this.face == c.getFace()
-                && this.isTrump == c.isTrump();
-        }
+        return Integer.compare(this.id, c.id);
     }
 
     // Displays the card's Face and Suit
     public String toString(){
-        return isTrump ? this.face + " of " + this.suit + " (T)"
-            : this.face + " of " + this.suit;
+        return this.face + " of " + this.suit;
     }
 }
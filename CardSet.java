@@ -0,0 +1,281 @@
+/* Author: Daniel Hammer
+ *
+ * CardSet class
+ *
+ * A set of cards stored as the bits of a single long
+ * Every card has an id from 0 to 51 (see Card.getId()), ordered by face
+ *      first and suit second, so bit order is also rank order
+ *
+ * Adding, removing, and checking for a card are single bit operations,
+ *      and questions like "does this hand hold any suit already on the
+ *      table" are a single AND of two masks
+ *
+ * A shoe of several decks can hold the same card more than once, so a
+ *      CardSet is really a multiset: the main long holds every card held
+ *      at least once, and extra planes (only created when needed) hold
+ *      the cards held at least twice, three times, and so on
+ * Masks (getBits(), lowest(), intersects(), ...) only see the main long,
+ *      which is all the rules ever ask about; size() and the iterator
+ *      count every copy
+ */
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class CardSet implements Iterable<Card>{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // One bit in every nibble: all thirteen cards of suit 0
+    private static final long SUIT_0 = 0x1111111111111L;
+
+    // Every card in a 52 card deck
+    public static final long ALL = (1L << 52) - 1;
+
+    private long bits;
+
+    // extra[i] holds the cards held at least i + 2 times; null until a
+    //      card is added twice
+    private long[] extra;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    public CardSet(){
+        this.bits = 0L;
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    // A mask of every card held at least once
+    public long getBits(){
+        return this.bits;
+    }
+
+    // Replaces the set with one copy of each card in the mask
+    public void setBits(long bits){
+        this.bits = bits;
+        clearExtra();
+    }
+
+    // The number of cards, counting every copy
+    public int size(){
+        int n = Long.bitCount(bits);
+        if (extra != null){
+            for (long plane : extra){
+                n += Long.bitCount(plane);
+            }
+        }
+        return n;
+    }
+
+    // The number of copies of 'c' in the set
+    public int count(Card c){
+        long b = bit(c);
+        if ((bits & b) == 0){
+            return 0;
+        }
+        int n = 1;
+        if (extra != null){
+            for (int i = 0; i < extra.length && (extra[i] & b) != 0; i++){
+                n++;
+            }
+        }
+        return n;
+    }
+
+    public boolean isEmpty(){
+        return bits == 0L;
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    public void add(Card c){
+        addMask(bit(c));
+    }
+
+    public void addAll(CardSet other){
+        addMask(other.bits);
+        if (other.extra != null){
+            for (long plane : other.extra){
+                addMask(plane);
+            }
+        }
+    }
+
+    // Adds one copy of every card in the mask
+    // Copies carry up through the planes like a unary counter
+    private void addMask(long mask){
+        long carry = bits & mask;
+        bits |= mask;
+        for (int i = 0; carry != 0; i++){
+            if (extra == null || i == extra.length){
+                extra = extra == null ? new long[2] : Arrays.copyOf(extra, extra.length * 2);
+            }
+            long over = extra[i] & carry;
+            extra[i] |= carry;
+            carry = over;
+        }
+    }
+
+    // Removes one copy of the card
+    // Returns true if the card was in the set
+    public boolean remove(Card c){
+        long b = bit(c);
+        if ((bits & b) == 0){
+            return false;
+        }
+        if (extra != null){
+            for (int i = extra.length - 1; i >= 0; i--){
+                if ((extra[i] & b) != 0){
+                    extra[i] &= ~b;
+                    return true;
+                }
+            }
+        }
+        bits &= ~b;
+        return true;
+    }
+
+    public boolean contains(Card c){
+        return (bits & bit(c)) != 0;
+    }
+
+    public void clear(){
+        bits = 0L;
+        clearExtra();
+    }
+
+    private void clearExtra(){
+        if (extra != null){
+            Arrays.fill(extra, 0L);
+        }
+    }
+
+    // Returns a mask of every card whose suit appears in this set
+    public long suitCover(){
+        return MoveGenerator.suitCover(bits);
+    }
+
+    // Returns true if this set holds any card in the mask
+    public boolean intersects(long mask){
+        return (bits & mask) != 0;
+    }
+
+    // Returns the lowest card of this set that is also in the mask,
+    //      or null if there is none
+    public Card lowest(long mask){
+        long m = bits & mask;
+        return m == 0 ? null : Card.byId(Long.numberOfTrailingZeros(m));
+    }
+
+    // Returns the n-th lowest card (0-based) of this set that is also
+    //      in the mask, counting every copy
+    public Card select(long mask, int n){
+        long m = bits & mask;
+        if (extra != null){
+            for (; m != 0; m &= m - 1){
+                Card c = Card.byId(Long.numberOfTrailingZeros(m));
+                n -= count(c);
+                if (n < 0){
+                    return c;
+                }
+            }
+            throw new NoSuchElementException("Asked for card #" + n
+                    + " past the end of the mask");
+        }
+        for (int i = 0; i < n; i++){
+            m &= m - 1;
+        }
+        if (m == 0){
+            throw new NoSuchElementException("Only " + Long.bitCount(bits & mask)
+                    + " cards in mask, asked for #" + n);
+        }
+        return Card.byId(Long.numberOfTrailingZeros(m));
+    }
+
+    // Iterates from the lowest card to the highest, every copy in turn
+    // The set may be changed while iterating; the iterator sees the cards
+    //      that were in the set when it was created
+    @Override
+    public Iterator<Card> iterator(){
+        long[] planes = extra == null ? null : extra.clone();
+        return new Iterator<Card>(){
+            private long remaining = bits;
+            private int copies;
+
+            @Override
+            public boolean hasNext(){
+                return remaining != 0;
+            }
+
+            @Override
+            public Card next(){
+                if (remaining == 0){
+                    throw new NoSuchElementException();
+                }
+                int id = Long.numberOfTrailingZeros(remaining);
+                long b = remaining & -remaining;
+                if (planes != null && copies < planes.length
+                        && (planes[copies] & b) != 0){
+                    copies++;
+                }
+                else{
+                    remaining &= remaining - 1;
+                    copies = 0;
+                }
+                return Card.byId(id);
+            }
+        };
+    }
+
+    public String toString(){
+        StringBuilder sb = new StringBuilder("[");
+        for (Card c : this){
+            if (sb.length() > 1){
+                sb.append(", ");
+            }
+            sb.append(c);
+        }
+        return sb.append(']').toString();
+    }
+
+
+
+
+    /******************
+     * STATIC HELPERS *
+     * ***************/
+
+    public static long bit(Card c){
+        return 1L << c.getId();
+    }
+
+    // Returns a mask of all thirteen cards of the suit
+    public static long suitMask(Suit s){
+        return SUIT_0 << s.ordinal();
+    }
+
+    // Returns a mask of every card with a higher face than 'c'
+    //      (of any suit)
+    public static long higherFaces(Card c){
+        return (-1L << ((c.getFace().ordinal() + 1) * 4)) & ALL;
+    }
+}
@@ -0,0 +1,237 @@
+/* Author: Daniel Hammer
+ *
+ * CardTracker class
+ *
+ * Keeps what every player at the table can know about where the cards
+ *      are, from the public events of one game at a time:
+ *      the trump suit, the cards on the table, the cards beaten off and
+ *      discarded, and the cards a defender picked up, which stay known to
+ *      be in their hand until they play them
+ * Every event updates a few card masks, so following a game costs nothing
+ *      more than listening to it
+ *
+ * Queries are answered from the masks in constant time; what a player
+ *      cannot see is everything in the deck that is not known to be
+ *      anywhere, less their own hand, which they pass in
+ * A player's hidden cards are taken to be a uniform draw from those
+ *      unseen cards, which gives the probabilities
+ *
+ * Only one deck (of either type) can be followed with masks; in a shoe of
+ *      several decks the tracker stops tracking (isTracking()) and its
+ *      queries throw
+ *
+ * Durak gives one to every Strategy through TableView.getTracker()
+ */
+
+import java.util.Arrays;
+
+public final class CardTracker implements GameEventListener{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // ln(n!) for every n up to the size of a deck
+    private static final double[] LOG_FACTORIAL = new double[Card.count() + 1];
+    static{
+        for (int n = 1; n < LOG_FACTORIAL.length; n++){
+            LOG_FACTORIAL[n] = LOG_FACTORIAL[n - 1] + Math.log(n);
+        }
+    }
+
+    private boolean tracking;
+    private TrumpContext trump;
+
+    // Every card in the game
+    private long deck;
+
+    // Played this round, and beaten off in earlier rounds
+    private long table;
+    private long discarded;
+
+    // Cards known to be in each seat's hand, and all of them together
+    private long[] known = new long[0];
+    private long allKnown;
+
+    // Hand sizes are public, so they are read from the players themselves
+    private Player[] players = new Player[0];
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    // False before the first game and for games played from a shoe
+    public boolean isTracking(){
+        return this.tracking;
+    }
+
+    public TrumpContext getTrump(){
+        return this.trump;
+    }
+
+    // The cards played so far this round, including an attack the
+    //      defender has not answered yet
+    public long getTable(){
+        return this.table;
+    }
+
+    // Every card beaten off in earlier rounds
+    public long getDiscarded(){
+        return this.discarded;
+    }
+
+    // The cards 'seat' is known to be holding
+    public long getKnown(int seat){
+        check();
+        return this.known[seat];
+    }
+
+    // How many of the cards in 'seat''s hand nobody else has seen
+    public int getHidden(int seat){
+        check();
+        return players[seat].getHand().size() - Long.bitCount(known[seat]);
+    }
+
+
+
+
+    /*****************
+     * QUERY METHODS *
+     * **************/
+
+    // Every card the player holding 'ownHand' cannot place: in the deck or
+    //      hidden in someone's hand
+    public long unseen(long ownHand){
+        check();
+        return deck & ~(table | discarded | allKnown | ownHand);
+    }
+
+    // Every card 'seat' could be holding, as far as the player holding
+    //      'ownHand' can tell
+    public long possible(int seat, long ownHand){
+        return getHidden(seat) > 0 ? known[seat] | unseen(ownHand) : getKnown(seat);
+    }
+
+    // Whether 'seat' could be holding a card that beats 'attack'
+    public boolean canPossiblyBeat(int seat, Card attack, long ownHand){
+        return (possible(seat, ownHand) & trump.beaters(attack)) != 0;
+    }
+
+    // Whether 'seat' is known to hold a card that beats 'attack'
+    public boolean canSurelyBeat(int seat, Card attack){
+        return (getKnown(seat) & trump.beaters(attack)) != 0;
+    }
+
+    // The chance that 'seat' holds at least one of 'cards', as far as the
+    //      player holding 'ownHand' can tell
+    public double probabilityHoldsAny(int seat, long cards, long ownHand){
+        if ((getKnown(seat) & cards) != 0){
+            return 1;
+        }
+        long pool = unseen(ownHand);
+        int u = Long.bitCount(pool);
+        int t = Long.bitCount(pool & cards);
+        int n = Math.min(getHidden(seat), u);
+        if (t == 0 || n == 0){
+            return 0;
+        }
+        if (n > u - t){
+            return 1;
+        }
+        // Hypergeometric: none of the n hidden cards is one of the t
+        return 1 - Math.exp(LOG_FACTORIAL[u - t] - LOG_FACTORIAL[u - t - n]
+                + LOG_FACTORIAL[u - n] - LOG_FACTORIAL[u]);
+    }
+
+    public double probabilityHoldsTrump(int seat, long ownHand){
+        return probabilityHoldsAny(seat, trump.getTrumpMask(), ownHand);
+    }
+
+    // The chance that 'seat' can beat 'attack'
+    public double probabilityCanBeat(int seat, Card attack, long ownHand){
+        return probabilityHoldsAny(seat, trump.beaters(attack), ownHand);
+    }
+
+    private void check(){
+        if (!tracking){
+            throw new IllegalStateException(trump == null ? "no game is being tracked"
+                    : "cards cannot be tracked in a shoe of several decks");
+        }
+    }
+
+
+
+
+    /*****************
+     * EVENT METHODS *
+     * **************/
+
+    @Override
+    public void gameStarted(long seed, int numPlayers, TrumpContext trump){
+        this.tracking = true;
+        this.trump = trump;
+        this.deck = DeckType.STANDARD.getMask();
+        this.table = 0;
+        this.discarded = 0;
+        this.allKnown = 0;
+        if (known.length != numPlayers){
+            known = new long[numPlayers];
+            players = new Player[numPlayers];
+        }
+        else{
+            Arrays.fill(known, 0);
+        }
+    }
+
+    @Override
+    public void shoeUsed(DeckType deckType, int decks){
+        deck = deckType.getMask();
+        tracking = decks == 1;
+    }
+
+    @Override
+    public void startingHandDealt(Player player){
+        players[player.getSeat()] = player;
+    }
+
+    // Whatever was left on the table was beaten off
+    @Override
+    public void roundStarted(int round, Player defender){
+        discarded |= table;
+        table = 0;
+    }
+
+    @Override
+    public void attackPlayed(int attackNumber, Player attacker, Card card){
+        played(attacker, card);
+    }
+
+    @Override
+    public void defended(Player defender, Card attack, Card defense){
+        played(defender, defense);
+    }
+
+    @Override
+    public void pickedUp(Player defender, CardSet cards){
+        long picked = cards.getBits();
+        known[defender.getSeat()] |= picked;
+        allKnown |= picked;
+        table = 0;
+    }
+
+    @Override
+    public void playerFinished(Player player){
+        allKnown &= ~known[player.getSeat()];
+        known[player.getSeat()] = 0;
+    }
+
+    private void played(Player player, Card card){
+        long bit = CardSet.bit(card);
+        known[player.getSeat()] &= ~bit;
+        allKnown &= ~bit;
+        table |= bit;
+    }
+}
@@ -0,0 +1,58 @@
+/* Author: Daniel Hammer
+ *
+ * ConsoleInput class
+ *
+ * Reads the user's input from System.in
+ * There is only one, so the whole program shares a single Scanner and no
+ *      line buffered by one reader is lost to another
+ * The Scanner is only created once a line is actually needed, so headless
+ *      games never allocate one
+ */
+
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+public final class ConsoleInput implements InputProvider{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    private static final ConsoleInput INSTANCE = new ConsoleInput();
+
+    private Scanner sc;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    private ConsoleInput(){
+    }
+
+    public static ConsoleInput get(){
+        return INSTANCE;
+    }
+
+
+
+
+    /*****************
+     * INPUT METHODS *
+     * **************/
+
+    @Override
+    public synchronized String nextLine(){
+        if (sc == null){
+            sc = new Scanner(System.in);
+        }
+        try{
+            return sc.nextLine();
+        }
+        catch (NoSuchElementException e){
+            throw new IllegalStateException("the console has no more input");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/* Author: Daniel Hammer
+ *
+ * ConsoleListener class
+ *
+ * Prints every event of a game of Durak to System.out
+ * This is the text a player sees when running Durak from the command line
+ */
+
+public class ConsoleListener implements GameEventListener{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // Used to mark trump cards with (T)
+    private TrumpContext trump;
+
+
+
+
+    /*****************
+     * EVENT METHODS *
+     * **************/
+
+    @Override
+    public void gameStarted(long seed, int numPlayers, TrumpContext trump){
+        this.trump = trump;
+        System.out.println("The Trump suit is now " + trump.getSuit());
+    }
+
+    @Override
+    public void shoeUsed(DeckType deckType, int decks){
+        System.out.println("Playing from a shoe of " + decks + " "
+                + deckType + " deck(s), " + deckType.size() * decks + " cards");
+    }
+
+    @Override
+    public void roundStarted(int round, Player defender){
+        System.out.println("\n======================= Round #"
+                + round + " =======================");
+        System.out.println("\tCurrent Defender: " + defender.getName() + "\n");
+    }
+
+    @Override
+    public void attackPlayed(int attackNumber, Player attacker, Card card){
+        System.out.println("\nIn attack #" + attackNumber + ":");
+        System.out.println("\t" + attacker.getName() + " played "
+                + trump.display(card));
+    }
+
+    @Override
+    public void defended(Player defender, Card attack, Card defense){
+        System.out.println("\tBut " + defender.getName()
+                + " has a higher card of " + trump.display(defense));
+    }
+
+    @Override
+    public void pickedUp(Player defender, CardSet cards){
+        System.out.println("\t" + defender.getName()
+                + " will not fight the attack");
+    }
+
+    @Override
+    public void maxAttacksReached(Player defender){
+        System.out.println("\n" + defender.getName() + " has endured"
+                + " the maximum number of attacks and the turn is over");
+    }
+
+    @Override
+    public void playerFinished(Player player){
+        System.out.println("\n" + player.getName() + " has no more cards"
+                + " and is done with the game");
+    }
+
+    @Override
+    public void loserDeclared(Player loser){
+        System.out.println("\n" + loser.getName() + " is the loser!\n");
+    }
+
+    @Override
+    public void draw(){
+        System.out.println("\nThe game is a draw!");
+    }
+
+    @Override
+    public void roundLimitReached(int rounds){
+        System.out.println("\nThe game is stopped after " + rounds
+                + " rounds with no loser");
+    }
+}
@@ -0,0 +1,136 @@
+/* Author: Daniel Hammer
+ *
+ * Deal class
+ *
+ * One deal of a game: the shoe in the order it will be dealt, and the
+ *      trump suit
+ * A GameConfig given a Deal plays it instead of shuffling and drawing a
+ *      trump from its seed (the seed still drives every NPC decision),
+ *      so the same cards can be played again under other conditions
+ *
+ * Deals can be transformed, for variance reduction (see Tournament):
+ *      mirrored() reflects every face (a two becomes an ace, and so on),
+ *      which turns a strong hand into a weak one, and withTrump() swaps
+ *      the trump suit with another, which changes nothing in play
+ */
+
+public final class Deal{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // The last card is dealt first, as in Game.deal()
+    private final Card[] order;
+    private final Suit trump;
+    private final DeckType deckType;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    public Deal(Card[] order, Suit trump, DeckType deckType){
+        this.order = order.clone();
+        this.trump = trump;
+        this.deckType = deckType;
+    }
+
+    // The deal a game from 'config' with seed 'seed' would play: the shoe
+    //      built as Game builds it, shuffled the same way with the same
+    //      generator, and the trump drawn from it as Durak draws it
+    public static Deal shuffled(GameConfig config, long seed){
+        DeckType type = config.getDeckType();
+        Card[] cards = new Card[config.getShoeSize()];
+        Face[] faces = Face.values();
+        int n = 0;
+        for (int d = 0; d < config.getDecks(); d++){
+            for (Suit s : Suit.values()){
+                for (int f = type.getLowest().ordinal(); f < faces.length; f++){
+                    cards[n++] = Card.of(s, faces[f]);
+                }
+            }
+        }
+        RandomSource rand = new SplitMix(seed);
+        for (int i = cards.length - 1; i > 0; i--){
+            int j = rand.nextInt(i + 1);
+            Card c = cards[i];
+            cards[i] = cards[j];
+            cards[j] = c;
+        }
+        Suit trump = cards[rand.nextInt(cards.length)].getSuit();
+        return new Deal(cards, trump, type);
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public int size(){
+        return this.order.length;
+    }
+
+    // The card dealt 'i'-th from the end, as in Game.deal()
+    public Card get(int i){
+        return this.order[i];
+    }
+
+    public Suit getTrump(){
+        return this.trump;
+    }
+
+    public DeckType getDeckType(){
+        return this.deckType;
+    }
+
+    // The trumps among the starting hands of 'numPlayers' players
+    //      dealt 'handSize' cards each, which are the last cards of the order
+    public int startingTrumps(int numPlayers, int handSize){
+        int dealt = Math.min(order.length, numPlayers * handSize);
+        int n = 0;
+        for (int i = order.length - dealt; i < order.length; i++){
+            if (order[i].getSuit() == trump){
+                n++;
+            }
+        }
+        return n;
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // The same deal with every face reflected within the deck
+    //      (lowest <-> ace, and so on); the trump suit stays
+    public Deal mirrored(){
+        Face[] faces = Face.values();
+        int top = deckType.getLowest().ordinal() + faces.length - 1;
+        Card[] cards = new Card[order.length];
+        for (int i = 0; i < cards.length; i++){
+            cards[i] = Card.of(order[i].getSuit(), faces[top - order[i].getFace().ordinal()]);
+        }
+        return new Deal(cards, trump, deckType);
+    }
+
+    // The same deal with the trump suit and 'suit' swapped throughout
+    public Deal withTrump(Suit suit){
+        if (suit == trump){
+            return this;
+        }
+        Card[] cards = new Card[order.length];
+        for (int i = 0; i < cards.length; i++){
+            Suit s = order[i].getSuit();
+            s = s == trump ? suit : s == suit ? trump : s;
+            cards[i] = Card.of(s, order[i].getFace());
+        }
+        return new Deal(cards, suit, deckType);
+    }
+}
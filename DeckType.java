@@ -0,0 +1,54 @@
+/* Author: Daniel Hammer
+ *
+ * DeckType enumeration
+ *
+ * Which cards make up one deck: the full 52 card deck, or the 36 card
+ *      deck Durak is traditionally played with (six through ace)
+ * A game may shuffle several decks together into one shoe (see GameConfig)
+ */
+
+public enum DeckType{
+    STANDARD(Face.TWO),
+    SHORT(Face.SIX);
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    private final Face lowest;
+    private final long mask;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    DeckType(Face lowest){
+        this.lowest = lowest;
+        this.mask = (-1L << (lowest.ordinal() * Suit.values().length)) & CardSet.ALL;
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    // The lowest face in the deck
+    public Face getLowest(){
+        return this.lowest;
+    }
+
+    // A CardSet mask of every card in one deck
+    public long getMask(){
+        return this.mask;
+    }
+
+    // The number of cards in one deck
+    public int size(){
+        return Long.bitCount(mask);
+    }
+}
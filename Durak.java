@@ -10,47 +10,65 @@
  * For a list of rules, please see http://www.gamecabinet.com/rules/Durak.html
  */
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Scanner;
-import java.util.Random;
 
-public class Durak{
+public class Durak implements TableView{
     
     /**********
      * FIELDS *
      *********/
 
     private Game durak;
-    private Scanner sc;
 
-    // ArrayLists of cards to represent the deck,
-    //      attack pile, and defended pile;
+    // True for a console session, where hints and display delay apply
+    private boolean isVerbose;
+
+    // Told about everything that happens in the game
+    private GameEventListener listener;
+
+    // What every player can know about the cards, kept for Strategies
+    //      (null when no player has one)
+    private CardTracker tracker;
+
+    // An ArrayList of cards to represent the deck, and the cards played
+    //      this round
     private ArrayList<Card> deck;
-    private ArrayList<Card> attack;
-    private ArrayList<Card> defended;
+    private final TableRound table = new TableRound();
 
-    // ArrayLists of players to represent NPCs, a list of attackers, and a list
-    //      of players to remove (bypass ConcurrentModificationException)
+    // Every player in seat order, and the seats still in the game
+    // Finished players stay in 'players'; only the ring shrinks
     private ArrayList<Player> players;
-    private ArrayList<Player> attackers;
+    private SeatRing seats;
 
     // Placeholders to represent the defender (during an attack) 
     // and the loser of the game
     private Player defender;
     private Player loser;
 
-    // Placeholders to represent the cards being used to attack/defend
-    private Card currentAttack;
-    private Card currentDefense;
+    // Set if the game was cut off at MAX_ROUNDS
+    private boolean stopped;
 
-    // Indexes for rounds and attackers/defenders
-    private int roundCounter, currentDefender, currentAttacker, numAttacks;
+    // The player whose attack is being played, for snapshot()
+    private Player attacking;
 
-    // The number of cards in each player's starting hand
+    // The trump suit of this game, chosen after the deck is shuffled
+    private TrumpContext trump;
+
+    // Indexes for rounds and the seats of the defender and first attacker
+    private int roundCounter, currentDefender, currentAttacker;
+
+    // The number of cards in each player's starting hand in a console game
     // Also the minimum number of cards a player must be holding
-    private final int INITIAL_HAND_SIZE = 6;
-    private final int NUM_PLAYERS = 4;
-    private final int MAX_NUM_ATTACKS = 6;
+    private static final int INITIAL_HAND_SIZE = 6;
+
+    // Once the deck is empty two players can pass the same cards back and
+    //      forth for ever (much more often in a shoe of several decks, where
+    //      a card cannot beat its own duplicate), so a game still going
+    //      after this many rounds is stopped with no loser (see
+    //      GameResult.isStopped()); it is not counted as a draw
+    public static final int MAX_ROUNDS = 10_000;
 
 
 
@@ -60,17 +78,40 @@ public class Durak{
      * ************/
 
     public Durak(){
-        this.durak = new Game(INITIAL_HAND_SIZE);
-        this.sc = new Scanner(System.in);
+        this(new Game(INITIAL_HAND_SIZE), new ConsoleListener());
+    }
+
+    // A console game that reads the user's input from 'input'
+    // Replaying the same input with the same seed plays the same game
+    public Durak(InputProvider input, long seed){
+        this(new Game(INITIAL_HAND_SIZE, input, seed), new ConsoleListener());
+    }
+
+    // Headless constructor: no prompts and no console output
+    public Durak(GameConfig config){
+        this(new Game(config), GameEventListener.NONE);
+    }
+
+    // Headless, but reports every event to the listener
+    public Durak(GameConfig config, GameEventListener listener){
+        this(new Game(config), listener);
+    }
+
+    private Durak(Game game, GameEventListener listener){
+        this.durak = game;
+        this.isVerbose = game.isVerbose();
+        this.listener = listener;
+        durak.setListener(listener);
         
         // Builds a deck of cards
         this.deck = durak.getDeck();
-        this.attack = new ArrayList<Card>();
-        this.defended = new ArrayList<Card>();
 
         // Builds a list of players
         this.players = durak.getPlayers();
-        this.attackers = new ArrayList<Player>();
+        this.seats = durak.getSeats();
+        for (Player p : players){
+            p.setTableView(this);
+        }
 
         this.roundCounter = 0;
     }
@@ -82,9 +123,31 @@ public class Durak{
      * PROGRAM EXECUTION *
      * ******************/
 
-    public static void main(String[] args){
-        Durak game = new Durak();
-        game.playGame();
+    // Usage: java Durak [--seed=<n>] [--record=<file>]
+    // With --record, everything typed is saved as a session that
+    //      SessionReplay can play back
+    public static void main(String[] args) throws IOException{
+        long seed = System.nanoTime();
+        Path record = null;
+        for (String arg : args){
+            if (arg.startsWith("--seed=")){
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            }
+            else if (arg.startsWith("--record=")){
+                record = Path.of(arg.substring("--record=".length()));
+            }
+        }
+        if (record == null){
+            new Durak(ConsoleInput.get(), seed).playGame();
+            return;
+        }
+        ArrayList<String> lines = new ArrayList<String>();
+        try{
+            new Durak(InputProvider.recording(ConsoleInput.get(), lines), seed).playGame();
+        }
+        finally{
+            SessionReplay.save(record, seed, lines);
+        }
     }
 
 
@@ -93,14 +156,8 @@ public class Durak{
     // Game logic
     public void playGame(){
 
-        
-        // Shuffle the deck and pick a suit to be the trump suit
-        durak.shuffle(deck);
-        setTrumpSuit();
-
-        // Give all players the INITIAL_HAND amount of cards (6)
-        durak.dealCardsToAllPlayers();
-
+        long allocated = EngineMetrics.ENABLED ? EngineMetrics.allocated() : 0;
+        startGame();
 
         // This is the game loop
         // This will execute until there is either one player left
@@ -109,7 +166,7 @@ public class Durak{
             // Display all of the players and their current cards
             // Print the number of cards remaining in the deck
             // ONLY if hints are enabled!
-            if (durak.getHints()){
+            if (isVerbose && durak.getHints()){
                 durak.displayAllPlayersHands();
                 System.out.println("\nThere are " + deck.size()
                 + " remaining in the deck\n");
@@ -117,11 +174,18 @@ public class Durak{
             }
 
             // Commence a series of attacks and defenses
+            boolean timed = EngineMetrics.ENABLED
+                && (roundCounter & EngineMetrics.ROUND_SAMPLE_MASK) == 0;
+            long start = timed ? System.nanoTime() : 0;
             round();
+            long dealStart = timed ? System.nanoTime() : 0;
 
             // After the round has concluded, deal everyone cards until they
             // all have 6 or there are none left in the deck
             durak.dealCardsToAllPlayers();
+            if (timed){
+                EngineMetrics.get().roundSampled(start, dealStart);
+            }
 
             // If a player has no more cards and the deck is empty,
             // remove them from the game
@@ -130,6 +194,11 @@ public class Durak{
             // Pause so the user can read easier
             displayDelay();
         } while ((!isGameOver()));
+
+        if (EngineMetrics.ENABLED){
+            EngineMetrics.get().gameEnded(allocated, roundCounter);
+        }
+        listener.gameEnded(getResult());
     }
 
 
@@ -139,117 +208,233 @@ public class Durak{
      * LOGICAL METHODS *
      * ****************/
 
+    // Shuffles, picks the trump suit, and deals the starting hands
+    public void startGame(){
+
+        // Shuffle the deck (or lay out a fixed deal) and pick a suit to be
+        //      the trump suit
+        long start = EngineMetrics.ENABLED ? System.nanoTime() : 0;
+        if (durak.getDeal() == null){
+            durak.shuffle(deck);
+        }
+        else{
+            durak.arrange(durak.getDeal());
+        }
+        if (EngineMetrics.ENABLED){
+            EngineMetrics.get().shuffled(start);
+        }
+        trackCards();
+        setTrumpSuit();
+
+        // Give all players the INITIAL_HAND amount of cards (6)
+        start = EngineMetrics.ENABLED ? System.nanoTime() : 0;
+        durak.dealCardsToAllPlayers();
+        if (EngineMetrics.ENABLED){
+            EngineMetrics.get().dealt(start);
+        }
+        for (Player p : players){
+            listener.startingHandDealt(p);
+        }
+    }
+
+
+
+
     // Commences a series of attacks and defenses
+    // The rules are TableRound's: the first attacker leads, and after
+    //      every card the defender beats, each attacker in turn is offered
+    //      a throw-in
     public void round(){
 
         roundCounter++;
-        numAttacks = 0;
-        System.out.println("\n======================= Round #"
-                + roundCounter + " =======================");
-
-        // All player and card lists from the previous round are cleared
-        attackers.clear();
-        attack.clear();
-        defended.clear();
-
-        // A new attacker and new defender are chosen
-        currentDefender = roundCounter % (players.size());
-        currentAttacker = (currentDefender + 1) < players.size() ?
-            currentDefender + 1 : 0;
-
-        // The attacker and defender roles are assigned
-        attackers.add(players.get(currentAttacker));
+
+        // The defender moves one seat round the table each round (seat 1
+        //      defends first), and the seat after them attacks first
+        // A defender who went out last round still passes the turn on
+        currentDefender = seats.next(roundCounter == 1 ? 0 : currentDefender);
+        currentAttacker = seats.next(currentDefender);
+
+        // The attacker and defender roles are assigned, and the cards from
+        //      the previous round are cleared off the table
+        Player first = players.get(currentAttacker);
         defender = players.get(currentDefender);
-        System.out.println("\tCurrent Defender: " + defender.getName() + "\n");
-
-
-        // Attacks:
-        //
-        // The first attack only involves one attacker and one defender
-        // The attacker will place down a card from his/her hand
-        // If the defender has a card of higher rank OR trump, play it
-        // Then comes the second attack, which differs slightly from the first
-        // If the initial attacker CAN and WILL attack again, he/she gets to
-        // attack first, and then other players can follow suit
-        if ((attackers.get(0).willAttack()
-                && attackers.get(0).canPlay(defended))
-                || numAttacks == 0){
-
-            System.out.println("\nIn attack #" + (++numAttacks) + ":");
-            // If the defender fails to defend, the turn is over
-            if (attackers.get(0).attack(defender, defended, attack, numAttacks) == false){
+        table.reset(currentDefender, currentAttacker);
+        listener.roundStarted(roundCounter, defender);
+
+        // The first attacker must lead with a card
+        attacking = first;
+        first.attack(table);
+
+        // Every attack the defender beats lets the attackers throw in again,
+        //      until the table is full, the defender has nothing left to
+        //      beat with, or nobody will throw in
+        while (defender.defend(table)){
+            if (table.isFull()){
+                listener.maxAttacksReached(defender);
                 return;
             }
-            // If the defender has defended 6 total attacks, the turn is over
-            if (numAttacks >= MAX_NUM_ATTACKS){
-                System.out.println("\n" + defender.getName() + " has endured"
-                        + " the maximum number of attacks and the turn is over");
+            if (!table.isOpen(defender.getHand().size()) || !offerThrowIn()){
                 return;
             }
-            
-            // Add all new attackers to the attacker list
-            for (Player p : players){
-                if (!(attackers.contains(p)) && !(p.equals(defender))){
-                    attackers.add(p);
-                }
-            }
+        }
+    }
 
-            // Now that the attacker lists is filled, loop through it
-            // Let every attacker have as many chances as he/she wants to attack
-            for (Player p : attackers){
-                while (p.canPlay(defended) && p.willAttack()){
-                    System.out.println("\nIn attack #" + (++numAttacks) + ":");
-                    
-                    // If the defender fails, the turn is over
-                    if (p.attack(defender, defended, attack, numAttacks) == false){
-                        return;
-                    }
-                    // If the defender has defended 6 times, the turn is over
-                    if (numAttacks >= MAX_NUM_ATTACKS){
-                        System.out.println("\n" + defender.getName()
-                                + " has endured the maximum number of attacks"
-                                + " and the turn is over");
-                        return;
-                    }
+    // Goes once round the table from the first attacker, which leaves the
+    //      defender (the seat before them) out, until someone throws in
+    // Returns false if every attacker passed
+    private boolean offerThrowIn(){
+        int seat = currentAttacker;
+        for (int i = seats.size() - 1; i > 0; i--, seat = seats.next(seat)){
+            Player p = players.get(seat);
+            if (p.canPlay(table.getCards()) && p.willAttack()){
+                attacking = p;
+                if (p.attack(table) != null){
+                    return true;
                 }
             }
         }
+        return false;
     }
 
 
 
 
     // Picks a random card from the deck and sets its suit to the Trump Suit
+    // Cards are shared between games, so the trump suit lives in a
+    //      TrumpContext that every player is given
+    // A fixed deal brings its own trump suit
     public void setTrumpSuit(){
-        Random rand = new Random();
-        int trump = rand.nextInt(52);
-        System.out.println("The Trump suit is now "
-                + deck.get(trump).getSuit());
-        for (Card c : deck){
-            if (c.getSuit().equals(deck.get(trump).getSuit())){
-                c.setTrump();
+        if (durak.getDeal() != null){
+            trump = TrumpContext.of(durak.getDeal().getTrump());
+        }
+        else{
+            RandomSource rand = durak.getRandom();
+            int index = rand.nextInt(deck.size());
+            trump = TrumpContext.of(deck.get(index).getSuit());
+        }
+        for (Player p : players){
+            p.setTrump(trump);
+        }
+        listener.gameStarted(durak.getSeed(), players.size(), trump);
+        if (durak.getDecks() != 1 || durak.getDeckType() != DeckType.STANDARD){
+            listener.shoeUsed(durak.getDeckType(), durak.getDecks());
+        }
+    }
+
+    /**************
+     * TABLE VIEW *
+     * ***********/
+
+    @Override
+    public long getTable(){
+        return table.getBits();
+    }
+
+    @Override
+    public CardTracker getTracker(){
+        return this.tracker;
+    }
+
+    // Starts a CardTracker if any player has a Strategy to ask it, so the
+    //      default NPCs play without one
+    private void trackCards(){
+        if (tracker != null){
+            return;
+        }
+        for (Player p : players){
+            if (p.getStrategy() != null){
+                tracker = new CardTracker();
+                listener = MulticastListener.of(tracker, listener);
+                durak.setListener(listener);
+                return;
             }
         }
     }
 
+    // Seats in the state are the players' seats; the deck keeps its order
+    // GameState models one deck of either type, so shoes of several decks
+    //      (and tables of more than GameState.MAX_SEATS) cannot be snapshot;
+    //      DurakEngine.checkStrategies() turns Strategies away from those
+    //      games before they start
+    @Override
+    public GameState snapshot(Player observer, Card pendingAttack){
+        if (durak.getDecks() != 1){
+            throw new IllegalStateException("cannot snapshot a shoe of "
+                    + durak.getDecks() + "x" + durak.getDeckType());
+        }
+        GameState state = new GameState(players.size(), durak.getInitialHandSize());
+        state.setCards(durak.getDeckType().getMask());
+        int active = 0;
+        for (int i = 0, s = seats.first(); i < seats.size(); i++, s = seats.next(s)){
+            active |= 1 << s;
+        }
+        for (Player p : players){
+            state.setHand(p.getSeat(), p.getHand().getBits());
+        }
+        byte[] cards = new byte[deck.size()];
+        for (int i = 0; i < cards.length; i++){
+            cards[i] = (byte) deck.get(i).getId();
+        }
+        state.setDeck(cards, cards.length);
+
+        // The pending attack is already on the table
+        if (pendingAttack == null){
+            state.setPosition(trump, active, roundCounter, defender.getSeat(),
+                    observer.getSeat(), currentAttacker,
+                    GameState.ATTACK, getTable(), -1, table.size());
+        }
+        else{
+            state.setPosition(trump, active, roundCounter, defender.getSeat(),
+                    attacking.getSeat(), currentAttacker,
+                    GameState.DEFEND, getTable(), pendingAttack.getId(), table.size());
+        }
+        return state;
+    }
+
+
+
+
+    public Game getGame(){
+        return this.durak;
+    }
+
+    public TrumpContext getTrump(){
+        return this.trump;
+    }
+
 
 
 
     // Determines if anyone has lost or if the game has ended
     public boolean isGameOver(){
-        if (players.size() == 1){
-            loser = players.get(0);
+        if (seats.size() == 1){
+            loser = players.get(seats.first());
             loser.setVictory(false);
-            System.out.println("\n" + loser.getName() + " is the loser!\n");
+            listener.loserDeclared(loser);
             return true;
         }
-        else if (players.size() == 0){
-            System.out.println("\nThe game is a draw!");
+        else if (seats.size() == 0){
+            listener.draw();
+            return true;
+        }
+        else if (roundCounter >= MAX_ROUNDS){
+            stopped = true;
+            listener.roundLimitReached(roundCounter);
             return true;
         }
         return false;
     }
 
+    // Summarizes a finished game
+    // Only meaningful once isGameOver() has returned true
+    public GameResult getResult(){
+        if (loser == null){
+            return new GameResult(null, -1, roundCounter, 0, durak.getSeed(), stopped);
+        }
+        return new GameResult(loser.getName(), loser.getSeat(),
+                roundCounter, loser.getHand().size(), durak.getSeed());
+    }
+
     public void displayDelay(){
         if (durak.getDisplayDelay()){
             durak.displayDelay();
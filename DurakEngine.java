@@ -0,0 +1,125 @@
+/* Author: Daniel Hammer
+ *
+ * DurakEngine class
+ *
+ * Runs complete games of Durak without a console
+ * Nothing is read from System.in and nothing is printed, so any number of
+ *      games can be played back to back inside a single JVM
+ */
+
+import java.util.ArrayList;
+
+public final class DurakEngine{
+
+    private DurakEngine(){
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // Plays one game to completion with the passed settings
+    public static GameResult play(GameConfig config){
+        return play(config, GameEventListener.NONE);
+    }
+
+    // Plays one game, reporting every event to the listener
+    public static GameResult play(GameConfig config, GameEventListener listener){
+        Durak game = new Durak(config, listener);
+        game.playGame();
+        return game.getResult();
+    }
+
+    // Plays one game with the passed Strategy for each seat in turn
+    // Seats without one (or given null) keep the default NPC behaviour
+    // Strategies search a GameState, so games it cannot hold are turned
+    //      away (see checkStrategies())
+    public static GameResult play(GameConfig config, GameEventListener listener,
+            Strategy... strategies){
+        for (Strategy s : strategies){
+            if (s != null){
+                checkStrategies(config);
+            }
+        }
+        Durak game = new Durak(config, listener);
+        ArrayList<Player> players = game.getGame().getPlayers();
+        for (int i = 0; i < strategies.length && i < players.size(); i++){
+            players.get(i).setStrategy(strategies[i]);
+        }
+        game.playGame();
+        return game.getResult();
+    }
+
+
+
+
+    // Throws IllegalArgumentException if a Strategy cannot play 'config':
+    //      a GameState holds one deck (of either type) and at most
+    //      GameState.MAX_SEATS players
+    public static void checkStrategies(GameConfig config){
+        if (config.getDecks() != 1){
+            throw new IllegalArgumentException("strategies cannot play from a"
+                    + " shoe of " + config.getDecks() + " decks");
+        }
+        if (config.getNumPlayers() > GameState.MAX_SEATS){
+            throw new IllegalArgumentException("strategies cannot play at a table of "
+                    + config.getNumPlayers() + " players");
+        }
+    }
+
+
+
+
+    /*********************
+     * PROGRAM EXECUTION *
+     * ******************/
+
+    // Plays the requested number of games (default 1000) and prints a summary
+    // java DurakEngine [games] [players] [seed] [decks] [36|52]
+    public static void main(String[] args){
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int numPlayers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+        int decks = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        DeckType deckType = args.length > 4 && args[4].equals("36")
+            ? DeckType.SHORT : DeckType.STANDARD;
+
+        GameConfig config = new GameConfig(numPlayers, 6, false, seed,
+                deckType, decks);
+        int[] losses = new int[numPlayers];
+        int draws = 0;
+        int stopped = 0;
+        long rounds = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < games; i++){
+            GameResult result = play(config.withSeed(seed + i));
+            rounds += result.getRoundsPlayed();
+            if (result.isStopped()){
+                stopped++;
+            }
+            else if (result.isDraw()){
+                draws++;
+            }
+            else{
+                losses[result.getLoserSeat()]++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(games + " games in " + String.format("%.3f", seconds)
+                + "s (" + String.format("%.0f", games / seconds) + " games/s)");
+        System.out.println("Average rounds per game: "
+                + String.format("%.2f", (double) rounds / games));
+        for (int i = 0; i < numPlayers; i++){
+            System.out.println("Seat " + i + " lost " + losses[i] + " times");
+        }
+        System.out.println("Draws: " + draws);
+        if (stopped != 0){
+            System.out.println("Stopped at " + Durak.MAX_ROUNDS + " rounds: " + stopped);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/* Author: Daniel Hammer
+ *
+ * EndgameSolver class
+ *
+ * Solves Durak exactly once the deck is empty
+ * From then on every card is in a hand, on the table, or discarded, so
+ *      the game can be searched as a perfect-information game
+ * (With two players the other hand is simply every card not yet seen;
+ *      with more, the solver plays "paranoid": every other player is
+ *      assumed to be playing against the seat being solved for)
+ *
+ * Values are for the solved seat: WIN if it gets out without being the
+ *      durak, DRAW if the game ends in a draw, LOSS if it is the durak
+ * The search is alpha-beta over GameState with apply/undo, trying the
+ *      remembered best move first and then cheap cards before trumps
+ * Positions are memoized in a TranspositionTable, which may be shared
+ *      between solvers on different threads
+ *
+ * Without a deck, a game can go round in circles (two players taking the
+ *      same cards from each other), so a round that starts in a position
+ *      already on the search path is scored as a draw
+ * As usual with transposition tables, such a draw can be reused on another
+ *      path, so values that depend on a repetition are not always exact
+ * A search that goes more than MAX_PLY moves deep, or past its node
+ *      limit, gives up and returns UNKNOWN
+ *
+ * One solver belongs to one thread
+ *
+ * Usage: java EndgameSolver [positions] [players] [seed]
+ *      solves random endgames and reports nodes/s and the table hit rate
+ */
+
+import java.util.Arrays;
+
+public class EndgameSolver{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    public static final int WIN = 1;
+    public static final int DRAW = 0;
+    public static final int LOSS = -1;
+
+    // Returned when the search ran out of nodes
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    public static final long DEFAULT_NODE_LIMIT = 2_000_000L;
+    public static final int MAX_PLY = 1000;
+
+    // Thrown to abandon a search that ran out of nodes or depth
+    private static final RuntimeException GIVE_UP =
+        new RuntimeException("search limit reached", null, false, false){};
+
+    private final TranspositionTable table;
+
+    // The seat being solved for, and a key that keeps its entries apart
+    //      from other seats' (paranoid values depend on the seat)
+    private int seat;
+    private long perspective;
+
+    // Keys of the round starts on the current search path
+    private long[] path;
+    private int pathSize;
+
+    private long nodeLimit;
+    private int maxDepth;
+    private long nodes;
+    private long probes;
+    private long hits;
+
+    // The value of the move bestMove() last returned, for the seat to move
+    private int lastValue = UNKNOWN;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    public EndgameSolver(TranspositionTable table){
+        this.table = table;
+        this.path = new long[64];
+    }
+
+    // With a table of its own, 2^20 entries
+    public EndgameSolver(){
+        this(new TranspositionTable(20));
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public TranspositionTable getTable(){
+        return this.table;
+    }
+
+    // Positions searched so far, over every solve
+    public long getNodes(){
+        return this.nodes;
+    }
+
+    public int getLastValue(){
+        return this.lastValue;
+    }
+
+    // The fraction of table probes that found an entry
+    public double getHitRate(){
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    // True once nothing is left to draw and the game is still going
+    public static boolean isEndgame(GameState state){
+        return state.getDeckSize() == 0 && !state.isOver();
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // The value of 'state' for 'seat' with perfect play, or UNKNOWN if it
+    //      takes more than 'maxNodes' positions to find
+    // 'state' is left as it was
+    public int solve(GameState state, int seat, long maxNodes){
+        int depth = state.getDepth();
+        begin(seat, maxNodes, depth);
+        try{
+            return search(state, LOSS, WIN);
+        }
+        catch (RuntimeException e){
+            if (e != GIVE_UP){
+                throw e;
+            }
+            while (state.getDepth() > depth){
+                state.undo();
+            }
+            return UNKNOWN;
+        }
+    }
+
+    // The best move in 'allowed' for the seat to move, or -1 if the search
+    //      runs out of nodes; getLastValue() then tells what it is worth
+    // Moves of equal value are ranked cheap cards first, then PASS, then TAKE
+    public int bestMove(GameState state, long allowed, long maxNodes){
+        int depth = state.getDepth();
+        begin(state.toMove(), maxNodes, depth);
+        int best = -1;
+        int bestValue = UNKNOWN;
+        lastValue = UNKNOWN;
+        try{
+            long moves = state.legalMoves() & allowed;
+            long trumps = state.getTrump().getTrumpMask();
+            for (int g = 0; g < 3 && bestValue < WIN; g++){
+                long group = group(moves, trumps, g);
+                for (; group != 0 && bestValue < WIN; group &= group - 1){
+                    int move = Long.numberOfTrailingZeros(group);
+                    state.apply(move);
+                    int v = search(state, bestValue == UNKNOWN ? LOSS : bestValue, WIN);
+                    state.undo();
+                    if (bestValue == UNKNOWN || v > bestValue){
+                        bestValue = v;
+                        best = move;
+                    }
+                }
+            }
+            lastValue = bestValue;
+            return best;
+        }
+        catch (RuntimeException e){
+            if (e != GIVE_UP){
+                throw e;
+            }
+            while (state.getDepth() > depth){
+                state.undo();
+            }
+            return -1;
+        }
+    }
+
+    private void begin(int seat, long maxNodes, int depth){
+        this.seat = seat;
+        this.maxDepth = depth + MAX_PLY;
+        this.perspective = SplitMix.mix64(0x5EA7L + seat);
+        this.pathSize = 0;
+        this.nodeLimit = nodes + maxNodes;
+    }
+
+    // Alpha-beta: the seat being solved maximizes, everyone else minimizes
+    private int search(GameState s, int alpha, int beta){
+        if (s.isOver()){
+            int loser = s.getLoser();
+            return loser == -1 ? DRAW : loser == seat ? LOSS : WIN;
+        }
+        if (!s.isActive(seat)){
+            return WIN;
+        }
+        if (++nodes > nodeLimit || s.getDepth() > maxDepth){
+            throw GIVE_UP;
+        }
+
+        long key = s.getKey() ^ perspective;
+        boolean roundStart = s.getPhase() == GameState.ATTACK && s.getTable() == 0;
+        if (roundStart){
+            for (int i = 0; i < pathSize; i++){
+                if (path[i] == key){
+                    return DRAW;
+                }
+            }
+            if (pathSize == path.length){
+                path = Arrays.copyOf(path, pathSize * 2);
+            }
+            path[pathSize++] = key;
+        }
+
+        int firstMove = -1;
+        probes++;
+        long entry = table.probe(key);
+        if (entry != 0){
+            hits++;
+            int v = TranspositionTable.value(entry);
+            int bound = TranspositionTable.bound(entry);
+            if (bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER && v >= beta)
+                    || (bound == TranspositionTable.UPPER && v <= alpha)){
+                if (roundStart){
+                    pathSize--;
+                }
+                return v;
+            }
+            firstMove = TranspositionTable.move(entry);
+        }
+
+        boolean max = s.toMove() == seat;
+        int a = alpha;
+        int b = beta;
+        int best = max ? LOSS - 1 : WIN + 1;
+        int bestMove = -1;
+        long moves = s.legalMoves();
+        if (firstMove >= 0 && (moves & (1L << firstMove)) != 0){
+            moves &= ~(1L << firstMove);
+        }
+        else{
+            firstMove = -1;
+        }
+        long trumps = s.getTrump().getTrumpMask();
+
+        search:
+        for (int g = -1; g < 3; g++){
+            long group = g < 0 ? (firstMove < 0 ? 0L : 1L << firstMove)
+                : group(moves, trumps, g);
+            for (; group != 0; group &= group - 1){
+                int move = Long.numberOfTrailingZeros(group);
+                s.apply(move);
+                int v = search(s, a, b);
+                s.undo();
+                if (max ? v > best : v < best){
+                    best = v;
+                    bestMove = move;
+                }
+                if (max){
+                    a = Math.max(a, v);
+                }
+                else{
+                    b = Math.min(b, v);
+                }
+                if (a >= b){
+                    break search;
+                }
+            }
+        }
+
+        if (roundStart){
+            pathSize--;
+        }
+        int bound = best <= alpha ? TranspositionTable.UPPER
+            : best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table.store(key, best, bound, bestMove);
+        return best;
+    }
+
+    // Move ordering: plain cards, then trumps (each lowest first), then
+    //      PASS and TAKE
+    private static long group(long moves, long trumps, int g){
+        switch (g){
+            case 0: return moves & CardSet.ALL & ~trumps;
+            case 1: return moves & trumps;
+            default: return moves & ~CardSet.ALL;
+        }
+    }
+
+
+
+
+    /*********************
+     * PROGRAM EXECUTION *
+     * ******************/
+
+    // Plays a random game forward until the deck is empty at the start of
+    //      a round, and returns that position (or null if the game ended)
+    public static GameState randomEndgame(int numPlayers, RandomSource rand){
+        GameState state = new GameState(numPlayers);
+        state.deal(rand);
+        while (!state.isOver() && !(state.getDeckSize() == 0
+                    && state.getPhase() == GameState.ATTACK && state.getTable() == 0)){
+            long moves = state.legalMoves();
+            if (state.getPhase() == GameState.DEFEND && rand.nextInt(4) != 0
+                    && (moves & CardSet.ALL) != 0){
+                moves &= CardSet.ALL;
+            }
+            for (int r = rand.nextInt(Long.bitCount(moves)); r > 0; r--){
+                moves &= moves - 1;
+            }
+            state.apply(Long.numberOfTrailingZeros(moves));
+        }
+        return state.isOver() ? null : state;
+    }
+
+    public static void main(String[] args){
+        int positions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int numPlayers = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+
+        RandomSource rand = new SplitMix(seed);
+        EndgameSolver solver = new EndgameSolver();
+        int[] values = new int[3];
+        int unknown = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < positions; i++){
+            GameState state = null;
+            while (state == null){
+                state = randomEndgame(numPlayers, rand);
+            }
+            int v = solver.solve(state, state.toMove(), DEFAULT_NODE_LIMIT);
+            if (v == UNKNOWN){
+                unknown++;
+            }
+            else{
+                values[v + 1]++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(positions + " endgames (" + numPlayers + " players) in "
+                + String.format("%.3f", seconds) + "s");
+        System.out.println("First attacker wins " + values[2] + ", draws "
+                + values[1] + ", loses " + values[0] + ", unsolved " + unknown);
+        System.out.println(String.format("%.0f", solver.getNodes() / seconds)
+                + " nodes/s, table hit rate "
+                + String.format("%.1f", 100 * solver.getHitRate()) + "%");
+    }
+}
@@ -0,0 +1,104 @@
+/* Author: Daniel Hammer
+ *
+ * EndgameStrategy class
+ *
+ * A Strategy that plays solved endgames perfectly
+ * Once the deck is empty and only two players are left, the other hand is
+ *      every card this player has not seen, so the EndgameSolver can
+ *      search the rest of the game exactly
+ * When that search proves a win, its move is played; otherwise (a draw by
+ *      going round in circles, a loss, a search over its node limit, or
+ *      any position the solver does not cover) the fallback Strategy plays
+ *
+ * Solved positions are kept in one TranspositionTable for the strategy's
+ *      whole life, shared without locks by every game using it
+ * Given a Tablebase, positions it covers are looked up instead of searched
+ */
+
+public class EndgameStrategy implements Strategy{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // About a twentieth of a second of search per decision
+    public static final long DEFAULT_NODE_LIMIT = 200_000L;
+
+    private final Strategy fallback;
+    private final TranspositionTable table;
+    private final long maxNodes;
+    private final Tablebase tablebase;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    // 'tablebase' may be null
+    public EndgameStrategy(Strategy fallback, long maxNodes, TranspositionTable table,
+            Tablebase tablebase){
+        this.fallback = fallback;
+        this.maxNodes = maxNodes;
+        this.table = table;
+        this.tablebase = tablebase;
+    }
+
+    public EndgameStrategy(Strategy fallback, long maxNodes, TranspositionTable table){
+        this(fallback, maxNodes, table, null);
+    }
+
+    public EndgameStrategy(Strategy fallback){
+        this(fallback, DEFAULT_NODE_LIMIT, new TranspositionTable(20));
+    }
+
+    // Searches with ISMCTS until the endgame
+    public EndgameStrategy(){
+        this(new IsmctsStrategy());
+    }
+
+
+
+
+    /********************
+     * STRATEGY METHODS *
+     * *****************/
+
+    @Override
+    public Card chooseAttack(Player self, TableView view, long legal,
+            boolean mustPlay){
+        long allowed = mustPlay ? legal : legal | GameState.PASS_BIT;
+        int move = solve(view.snapshot(self, null), allowed);
+        if (move < 0){
+            return fallback.chooseAttack(self, view, legal, mustPlay);
+        }
+        return move == GameState.PASS ? null : Card.byId(move);
+    }
+
+    @Override
+    public Card chooseDefense(Player self, TableView view, Card attack,
+            long legal){
+        int move = solve(view.snapshot(self, attack), legal | GameState.TAKE_BIT);
+        if (move < 0){
+            return fallback.chooseDefense(self, view, attack, legal);
+        }
+        return move == GameState.TAKE ? null : Card.byId(move);
+    }
+
+    // A winning move, or -1 if there is none to be found
+    private int solve(GameState state, long allowed){
+        if (state.getDeckSize() != 0 || state.getActiveCount() != 2){
+            return -1;
+        }
+        if (tablebase != null){
+            int v = tablebase.value(state);
+            if (v != Tablebase.UNKNOWN){
+                return v == Tablebase.WIN ? tablebase.bestMove(state, allowed) : -1;
+            }
+        }
+        EndgameSolver solver = new EndgameSolver(table);
+        int move = solver.bestMove(state, allowed, maxNodes);
+        return solver.getLastValue() == EndgameSolver.WIN ? move : -1;
+    }
+}
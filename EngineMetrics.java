@@ -0,0 +1,236 @@
+/* Author: Daniel Hammer
+ *
+ * EngineMetrics class
+ *
+ * Runtime counters for long-running simulations and servers, published as
+ *      a JMX MBean so they can be watched from jconsole (or any JMX client)
+ *      without attaching a profiler:
+ *      games and rounds played, and games per second,
+ *      time spent shuffling, dealing, and playing rounds, from one round
+ *      in eight (and scaled up),
+ *      a histogram of NPC decision latency, from one decision in 64,
+ *      and the bytes allocated per game
+ * Only a sample is timed because reading the clock costs about as much as
+ *      a default NPC decision, and a good part of a round *
+ * Off unless the JVM is started with -Ddurak.metrics=true
+ * ENABLED is a static final, so the JIT folds every "if (ENABLED)" in the
+ *      engine away and a disabled run pays nothing for the timing
+ * Every counter is a LongAdder, so all the threads of a batch or a server
+ *      record into the one instance without contending
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public final class EngineMetrics implements EngineMetricsMBean{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    public static final boolean ENABLED = Boolean.getBoolean("durak.metrics");
+
+    public static final String OBJECT_NAME = "durak:type=EngineMetrics";
+
+    private static final EngineMetrics INSTANCE = new EngineMetrics();
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Players time the decisions whose count ANDed with this is 0, and
+    //      Durak the rounds
+    public static final int DECISION_SAMPLE_MASK = 63;
+    public static final int ROUND_SAMPLE_MASK = 7;
+
+    // Decision latency: 10 ns buckets up to 100 us, then overflow (where
+    //      a searching Strategy's decisions land)
+    private static final int DECISION_BUCKETS = 10_000;
+    private static final int DECISION_WIDTH = 10;
+
+    private final LongAdder games = new LongAdder();
+    private final LongAdder rounds = new LongAdder();
+    private final LongAdder shuffleNanos = new LongAdder();
+    private final LongAdder dealNanos = new LongAdder();
+    private final LongAdder roundNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final Histogram decisionNanos = new Histogram(DECISION_BUCKETS, DECISION_WIDTH);
+    private volatile long startNanos = System.nanoTime();
+
+    static{
+        if (ENABLED){
+            try{
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,
+                        new ObjectName(OBJECT_NAME));
+            }
+            catch (JMException e){
+                throw new IllegalStateException("could not register " + OBJECT_NAME, e);
+            }
+        }
+    }
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    private EngineMetrics(){
+    }
+
+    public static EngineMetrics get(){
+        return INSTANCE;
+    }
+
+
+
+
+    /******************
+     * RECORD METHODS *
+     * ***************/
+
+    // Each takes the System.nanoTime() at which the phase started
+    // Only call these when ENABLED
+
+    public void shuffled(long start){
+        shuffleNanos.add(System.nanoTime() - start);
+    }
+
+    // The starting hands
+    public void dealt(long start){
+        dealNanos.add(System.nanoTime() - start);
+    }
+
+    // A sampled round, and the deal after it, each standing for
+    //      ROUND_SAMPLE_MASK + 1 of them
+    public void roundSampled(long start, long dealStart){
+        long now = System.nanoTime();
+        roundNanos.add((dealStart - start) * (ROUND_SAMPLE_MASK + 1));
+        dealNanos.add((now - dealStart) * (ROUND_SAMPLE_MASK + 1));
+    }
+
+    public void decided(long start){
+        decisionNanos.record(System.nanoTime() - start);
+    }
+
+    // The bytes this thread has allocated so far, to pass to gameEnded()
+    public static long allocated(){
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    public void gameEnded(long allocatedAtStart, int roundsPlayed){
+        games.increment();
+        rounds.add(roundsPlayed);
+        allocatedBytes.add(allocated() - allocatedAtStart);
+    }
+
+
+
+
+    /*****************
+     * MBEAN METHODS *
+     * **************/
+
+    @Override
+    public long getGames(){
+        return this.games.sum();
+    }
+
+    @Override
+    public long getRounds(){
+        return this.rounds.sum();
+    }
+
+    @Override
+    public double getGamesPerSecond(){
+        return getGames() / seconds();
+    }
+
+    @Override
+    public double getRoundsPerGame(){
+        return perGame(getRounds());
+    }
+
+    @Override
+    public double getShuffleNanosPerGame(){
+        return perGame(shuffleNanos.sum());
+    }
+
+    @Override
+    public double getDealNanosPerGame(){
+        return perGame(dealNanos.sum());
+    }
+
+    @Override
+    public double getRoundNanosPerGame(){
+        return perGame(roundNanos.sum());
+    }
+
+    @Override
+    public long getDecisions(){
+        return this.decisionNanos.getCount();
+    }
+
+    @Override
+    public double getDecisionNanosMean(){
+        return this.decisionNanos.getMean();
+    }
+
+    @Override
+    public long getDecisionNanosP50(){
+        return this.decisionNanos.percentile(0.5);
+    }
+
+    @Override
+    public long getDecisionNanosP99(){
+        return this.decisionNanos.percentile(0.99);
+    }
+
+    @Override
+    public long getDecisionNanosP999(){
+        return this.decisionNanos.percentile(0.999);
+    }
+
+    @Override
+    public double getAllocatedBytesPerGame(){
+        return perGame(allocatedBytes.sum());
+    }
+
+    @Override
+    public double getAllocatedBytesPerSecond(){
+        return allocatedBytes.sum() / seconds();
+    }
+
+    @Override
+    public void reset(){
+        games.reset();
+        rounds.reset();
+        shuffleNanos.reset();
+        dealNanos.reset();
+        roundNanos.reset();
+        allocatedBytes.reset();
+        decisionNanos.reset();
+        startNanos = System.nanoTime();
+    }
+
+    private double perGame(long total){
+        long n = getGames();
+        return n == 0 ? 0 : (double) total / n;
+    }
+
+    private double seconds(){
+        return Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+    }
+
+    public String toString(){
+        return String.format("%d games (%.0f/s), %.1f rounds/game; per game: shuffle"
+                + " %.0f ns, deal %.0f ns, rounds %.0f ns, %.0f bytes; %d NPC decisions,"
+                + " mean %.0f ns, p50 %d ns, p99 %d ns",
+                getGames(), getGamesPerSecond(), getRoundsPerGame(),
+                getShuffleNanosPerGame(), getDealNanosPerGame(), getRoundNanosPerGame(),
+                getAllocatedBytesPerGame(), getDecisions(), getDecisionNanosMean(),
+                getDecisionNanosP50(), getDecisionNanosP99());
+    }
+}
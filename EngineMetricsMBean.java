@@ -0,0 +1,44 @@
+/* Author: Daniel Hammer
+ *
+ * EngineMetricsMBean interface
+ *
+ * What EngineMetrics publishes over JMX, as "durak:type=EngineMetrics"
+ * Every time is in nanoseconds; every rate and mean is since the last reset
+ */
+
+public interface EngineMetricsMBean{
+
+    long getGames();
+
+    long getRounds();
+
+    double getGamesPerSecond();
+
+    double getRoundsPerGame();
+
+    // Mean time per game spent in each phase
+    double getShuffleNanosPerGame();
+
+    double getDealNanosPerGame();
+
+    double getRoundNanosPerGame();
+
+    // NPC decisions: whether and what to attack, and what to defend with
+    // Only a sample of the decisions is timed and counted
+    long getDecisions();
+
+    double getDecisionNanosMean();
+
+    // -1 when above the histogram's range (see EngineMetrics)
+    long getDecisionNanosP50();
+
+    long getDecisionNanosP99();
+
+    long getDecisionNanosP999();
+
+    double getAllocatedBytesPerGame();
+
+    double getAllocatedBytesPerSecond();
+
+    void reset();
+}
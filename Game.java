@@ -7,10 +7,7 @@
  * Most of what exists here is here to keep the individual game files smaller
  */
 
-import java.util.Random;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Scanner;
 
 public class Game{
     
@@ -18,19 +15,35 @@ public class Game{
      * FIELDS *
      * *******/
 
-    // A final size of the deck. No calculations should exceed this!
-    private final int DECK_SIZE = Face.values().length * Suit.values().length;
+    // The shoe: how many decks of which type are shuffled together
+    // No calculations should exceed its size!
+    private final DeckType deckType;
+    private final int decks;
+    private final int DECK_SIZE;
     private final int INITIAL_HAND_SIZE;
     
     private int numPlayers;
     private boolean enableHints;
     private boolean enableDisplayDelay;
     private boolean willUserPlay;
+    private boolean isVerbose;
+    private GameEventListener listener = GameEventListener.NONE;
 
     private ArrayList<Card> deck;
+
+    // Every player in seat order, and the seats still in the game
     private ArrayList<Player> players;
+    private SeatRing seats;
+
+    // Every random decision in this game is drawn from here
+    private RandomSource rand;
+
+    // Played instead of shuffling, if the config fixed it
+    private Deal deal;
 
-    private Scanner sc = new Scanner(System.in);
+    // Where the settings, the user's moves, and the display delay are read
+    //      from in a console game; shared with the user's Player
+    private InputProvider input;
 
 
 
@@ -40,13 +53,26 @@ public class Game{
     
     // Called by Durak user-input simulation
     public Game(int initialHand){
+        this(initialHand, ConsoleInput.get(), System.nanoTime());
+    }
+
+    // A console game whose input comes from 'input'
+    // The same seed and the same input lines play out the same game
+    public Game(int initialHand, InputProvider input, long seed){
+        this.input = input;
         settings();
+        this.isVerbose = true;
+        this.rand = new SplitMix(seed);
+        this.deckType = DeckType.STANDARD;
+        this.decks = 1;
+        this.DECK_SIZE = deckType.size() * decks;
 
         this.deck = new ArrayList<Card>(DECK_SIZE);
         this.deck = buildDeck();
 
         this.players = new ArrayList<Player>(numPlayers);
         this.players = buildPlayerList(numPlayers);
+        this.seats = new SeatRing(numPlayers);
         
         if (this.willUserPlay == true){
             createUser();
@@ -59,6 +85,34 @@ public class Game{
         System.out.println("\n\n\n\n\n\n\n\n");
     }
 
+    // Called by the headless engine
+    // Takes every setting from the config and never touches the console
+    public Game(GameConfig config){
+        this.willUserPlay = false;
+        this.enableHints = config.getHints();
+        this.enableDisplayDelay = false;
+        this.isVerbose = false;
+        this.numPlayers = config.getNumPlayers();
+        this.rand = new SplitMix(config.getSeed());
+        this.deckType = config.getDeckType();
+        this.decks = config.getDecks();
+        this.DECK_SIZE = config.getShoeSize();
+        this.deal = config.getDeal();
+
+        this.deck = new ArrayList<Card>(DECK_SIZE);
+        this.deck = buildDeck();
+
+        this.players = new ArrayList<Player>(numPlayers);
+        this.players = buildPlayerList(numPlayers);
+        this.seats = new SeatRing(numPlayers);
+
+        int initialHand = config.getInitialHandSize();
+        if (DECK_SIZE / numPlayers < initialHand){
+            initialHand = (DECK_SIZE / numPlayers);
+        }
+        this.INITIAL_HAND_SIZE = initialHand;
+    }
+
 
 
 
@@ -70,10 +124,28 @@ public class Game{
         return this.deck;
     }
 
+    // Every player, in seat order, whether or not they are still playing
     public ArrayList<Player> getPlayers(){
         return this.players;
     }
 
+    // The seats of the players still in the game
+    public SeatRing getSeats(){
+        return this.seats;
+    }
+
+    public DeckType getDeckType(){
+        return this.deckType;
+    }
+
+    public int getDecks(){
+        return this.decks;
+    }
+
+    public int getInitialHandSize(){
+        return this.INITIAL_HAND_SIZE;
+    }
+
     public Player getPlayerByIndex(int index){
         return this.players.get(index);
     }
@@ -110,6 +182,38 @@ public class Game{
     public boolean isUserPlaying(){
         return this.willUserPlay;
     }
+
+    // Sets who is told about events in this game, players included
+    public void setListener(GameEventListener listener){
+        this.listener = listener;
+        for (Player p : players){
+            p.setListener(listener);
+        }
+    }
+
+    // True if this game was set up from the console
+    public boolean isVerbose(){
+        return this.isVerbose;
+    }
+
+    public RandomSource getRandom(){
+        return this.rand;
+    }
+
+    // Null in a headless game
+    public InputProvider getInput(){
+        return this.input;
+    }
+
+    // The deal this game plays, or null if it shuffles
+    public Deal getDeal(){
+        return this.deal;
+    }
+
+    // The seed that replays this game exactly
+    public long getSeed(){
+        return this.rand.getSeed();
+    }
     
 
 
@@ -118,11 +222,16 @@ public class Game{
      * LOGIC METHODS *
      * **************/
 
-    // Builds an ArrayList of Cards containing 4 suits of 13 cards each
+    // Builds an ArrayList of Cards holding every deck in the shoe,
+    //      each one suit by suit from its lowest face to the ace
+    // Cards are shared flyweights, so nothing new is allocated per card
     public ArrayList<Card> buildDeck(){
-        for (Suit s : Suit.values()){
-            for (Face f : Face.values()){
-                deck.add(new Card(s, f, f.getRank()));
+        Face[] faces = Face.values();
+        for (int d = 0; d < decks; d++){
+            for (Suit s : Suit.values()){
+                for (int f = deckType.getLowest().ordinal(); f < faces.length; f++){
+                    deck.add(Card.of(s, faces[f]));
+                }
             }
         }
         return deck;
@@ -132,6 +241,8 @@ public class Game{
     public ArrayList<Player> buildPlayerList(int numPlayers){
         for (int i = 0; i < numPlayers; i++){
             Player newPlayer = new Player("Player #" + (i + 1), 100, 100);
+            newPlayer.setSeat(i);
+            newPlayer.setRandom(rand);
             players.add(newPlayer);
         }
         return players;
@@ -142,52 +253,58 @@ public class Game{
         return deck.remove(deck.size() - 1);
     }
 
-    // Shuffles the deck of cards in a random order
+    // Shuffles the deck of cards in a random order (Fisher-Yates)
     public void shuffle(ArrayList<Card> cards){
-        Collections.shuffle(cards, new Random());
+        for (int i = cards.size() - 1; i > 0; i--){
+            int j = rand.nextInt(i + 1);
+            cards.set(j, cards.set(i, cards.get(j)));
+        }
     }
 
-    // Sorts all players' hands
-    public void sortPlayersHands(){
-        for (Player p : players){
-            p.sortHand();
+    // Puts the deck in the order of 'deal', instead of shuffling it
+    public void arrange(Deal deal){
+        deck.clear();
+        for (int i = 0; i < deal.size(); i++){
+            deck.add(deal.get(i));
         }
     }
 
-    // Deal cards to all players until either
+    // Deal cards to all players, one at a time in seat order, until either
     // A - every player has at least 6 cards
     // B - the deck is empty
+    // Passes go on until one deals nothing, so a player who emptied their
+    //      hand is filled back up however many others were already full
     public void dealCardsToAllPlayers(){
-        int fullHands = 0;
-        while (fullHands < players.size()){
-            for (Player p : players){
+        boolean dealt = true;
+        while (dealt && deck.size() != 0){
+            dealt = false;
+            int s = seats.first();
+            for (int i = seats.size(); i > 0; i--, s = seats.next(s)){
+                Player p = players.get(s);
                 if (p.getHand().size() < INITIAL_HAND_SIZE
                         && deck.size() != 0){
                     p.addCard(deal());
-                }
-                else{
-                    fullHands++;
+                    dealt = true;
                 }
             }
         }
     }
 
     // Removes players from the game if their hands and the deck are empty
+    // Each removal is O(1), and the ring may be walked while removing
     public void removeFinishedPlayers(){
-        ArrayList<Player> toRemove = new ArrayList<Player>();
-        for (Player p : players){
-            if (p.getHand().size() == 0 && this.deck.size() == 0){
-                toRemove.add(p);
+        if (this.deck.size() != 0){
+            return;
+        }
+        int s = seats.first();
+        for (int i = seats.size(); i > 0; i--, s = seats.next(s)){
+            Player p = players.get(s);
+            if (p.getHand().size() == 0){
+                seats.remove(s);
                 p.setVictory(true);
-                System.out.println("\n" + p.getName() + " has no more cards"
-                        + " and is done with the game");
+                listener.playerFinished(p);
             }
         }
-        // Avoids ConcurrentModificationException
-        for (Player p : toRemove){
-            players.remove(p);
-        }
-        toRemove.clear();
     }
 
     /*****************
@@ -196,43 +313,44 @@ public class Game{
 
     public int howManyPlayers(){
         System.out.print("How many players in total for this game?\n> ");
-        numPlayers = Integer.parseInt(sc.nextLine());
+        numPlayers = input.nextInt();
         return numPlayers;
     }
 
     public void createUser(){
         System.out.print("Enter your name: ");
-        players.get(0).setName(sc.nextLine());
+        players.get(0).setName(input.nextLine());
         players.get(0).setUser(true);
+        players.get(0).setInput(input);
     }
 
     public void settings(){
-        int input;
+        int choice;
         System.out.println("==================== SETTINGS ====================");
         System.out.println("Let a user play? (1-yes / 0-no)");
-        input = Integer.parseInt(sc.nextLine());
+        choice = input.nextInt();
 
-        this.willUserPlay = (input == 1) ? true : false;
+        this.willUserPlay = (choice == 1) ? true : false;
 
         System.out.println("Enable hints? (1-yes / 0-no)");
-        input = Integer.parseInt(sc.nextLine());
+        choice = input.nextInt();
         
-        this.enableHints = (input == 1) ? true : false;
+        this.enableHints = (choice == 1) ? true : false;
 
         System.out.println("Enable display delay? (1-yes / 0-no)");
-        input = Integer.parseInt(sc.nextLine());
+        choice = input.nextInt();
 
-        this.enableDisplayDelay = (input == 1) ? true : false;
+        this.enableDisplayDelay = (choice == 1) ? true : false;
 
         howManyPlayers();
     }
 
     public void displayDelay(){
         System.out.print("\n\nDisplay Delay - Press '0' to continue\n\n");
-        int input;
+        int choice;
         do{
-            input = Integer.parseInt(sc.nextLine());
-        } while (input != 0);
+            choice = input.nextInt();
+        } while (choice != 0);
     }
 
 
@@ -241,7 +359,7 @@ public class Game{
      * ****************/
 
     // Displays the contents of the passed pile
-    public void displayPile(ArrayList<Card> pile){
+    public void displayPile(Iterable<Card> pile){
         for (Card c : pile){
             System.out.println(c);
         }
@@ -251,8 +369,10 @@ public class Game{
     public void displayAllPlayersHands(){
         System.out.println("\nDisplaying all players' hands:");
         for (Player p : players){
-            System.out.println();
-            p.displayHand();
+            if (seats.contains(p.getSeat())){
+                System.out.println();
+                p.displayHand();
+            }
         }
     }
 }
@@ -0,0 +1,151 @@
+/* Author: Daniel Hammer
+ *
+ * GameConfig class
+ *
+ * Contains every setting needed to start a game of Durak without asking
+ *      the user for anything: the number of players, the size of each
+ *      starting hand, whether hints are enabled, the random seed, and
+ *      the shoe (how many decks of which DeckType are shuffled together)
+ * A config may also fix the deal (see Deal) instead of shuffling from
+ *      its seed
+ *
+ * Used by DurakEngine to run games headless
+ */
+
+public class GameConfig{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    private final int numPlayers;
+    private final int initialHandSize;
+    private final boolean enableHints;
+    private final long seed;
+    private final DeckType deckType;
+    private final int decks;
+
+    // Played instead of a shuffle from the seed, if set
+    private final Deal deal;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    public GameConfig(int numPlayers, int initialHandSize,
+            boolean enableHints, long seed, DeckType deckType, int decks){
+        this(numPlayers, initialHandSize, enableHints, seed, deckType, decks, null);
+    }
+
+    private GameConfig(int numPlayers, int initialHandSize,
+            boolean enableHints, long seed, DeckType deckType, int decks, Deal deal){
+        if (numPlayers < 2){
+            throw new IllegalArgumentException("Durak needs at least two"
+                    + " players, got " + numPlayers);
+        }
+        if (initialHandSize < 1){
+            throw new IllegalArgumentException("Initial hand size must be"
+                    + " positive, got " + initialHandSize);
+        }
+        if (decks < 1){
+            throw new IllegalArgumentException("A shoe needs at least one"
+                    + " deck, got " + decks);
+        }
+        if (numPlayers > deckType.size() * decks){
+            throw new IllegalArgumentException(decks + " " + deckType
+                    + " deck(s) cannot deal to " + numPlayers + " players");
+        }
+        this.numPlayers = numPlayers;
+        this.initialHandSize = initialHandSize;
+        this.enableHints = enableHints;
+        this.seed = seed;
+        this.deckType = deckType;
+        this.decks = decks;
+        this.deal = deal;
+    }
+
+    // One standard 52 card deck
+    public GameConfig(int numPlayers, int initialHandSize,
+            boolean enableHints, long seed){
+        this(numPlayers, initialHandSize, enableHints, seed, DeckType.STANDARD, 1);
+    }
+
+    // Four players with six cards each and no hints
+    public GameConfig(long seed){
+        this(4, 6, false, seed);
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public int getNumPlayers(){
+        return this.numPlayers;
+    }
+
+    public int getInitialHandSize(){
+        return this.initialHandSize;
+    }
+
+    public boolean getHints(){
+        return this.enableHints;
+    }
+
+    public long getSeed(){
+        return this.seed;
+    }
+
+    public DeckType getDeckType(){
+        return this.deckType;
+    }
+
+    public int getDecks(){
+        return this.decks;
+    }
+
+    // The number of cards in the shoe
+    public int getShoeSize(){
+        return deckType.size() * decks;
+    }
+
+    // The deal to play, or null to shuffle from the seed
+    public Deal getDeal(){
+        return this.deal;
+    }
+
+    // Returns a copy of this config with a different seed
+    public GameConfig withSeed(long seed){
+        return new GameConfig(numPlayers, initialHandSize, enableHints, seed,
+                deckType, decks, deal);
+    }
+
+    // Returns a copy of this config with a different shoe (and no deal)
+    public GameConfig withShoe(DeckType deckType, int decks){
+        return new GameConfig(numPlayers, initialHandSize, enableHints, seed,
+                deckType, decks);
+    }
+
+    // Returns a copy of this config that plays 'deal', which must be of
+    //      this config's shoe; null goes back to shuffling
+    public GameConfig withDeal(Deal deal){
+        if (deal != null && (deal.getDeckType() != deckType
+                    || deal.size() != getShoeSize())){
+            throw new IllegalArgumentException("a deal of " + deal.size()
+                    + " " + deal.getDeckType() + " cards does not fit " + this);
+        }
+        return new GameConfig(numPlayers, initialHandSize, enableHints, seed,
+                deckType, decks, deal);
+    }
+
+    public String toString(){
+        return "GameConfig[players=" + numPlayers + ", hand=" + initialHandSize
+            + ", hints=" + enableHints + ", seed=" + seed + ", shoe=" + decks
+            + "x" + deckType + (deal == null ? "" : ", dealt") + "]";
+    }
+}
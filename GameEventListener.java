@@ -0,0 +1,70 @@
+/* Author: Daniel Hammer
+ *
+ * GameEventListener interface
+ *
+ * Receives everything that happens in a game of Durak as it happens
+ * Every method does nothing by default, so a listener only overrides the
+ *      events it cares about, and a game played with NONE does no
+ *      formatting or printing at all
+ *
+ * ConsoleListener prints the game the way it has always been printed
+ */
+
+public interface GameEventListener{
+
+    // A listener that ignores every event
+    GameEventListener NONE = new GameEventListener(){};
+
+    // The deck has been shuffled and the trump suit picked
+    default void gameStarted(long seed, int numPlayers, TrumpContext trump){
+    }
+
+    // Follows gameStarted when the game is not played with one standard
+    //      deck: 'decks' decks of 'deckType' are shuffled together
+    default void shoeUsed(DeckType deckType, int decks){
+    }
+
+    // The player has been dealt their starting hand (player.getHand())
+    // Sent for every player in seat order, before the first round
+    default void startingHandDealt(Player player){
+    }
+
+    default void roundStarted(int round, Player defender){
+    }
+
+    // 'attackNumber' counts attacks within the round, starting at 1
+    default void attackPlayed(int attackNumber, Player attacker, Card card){
+    }
+
+    default void defended(Player defender, Card attack, Card defense){
+    }
+
+    // The defender would not or could not beat the attack and picks up
+    //      every card in 'cards'
+    // 'cards' is only valid during the call
+    default void pickedUp(Player defender, CardSet cards){
+    }
+
+    // The defender beat the maximum number of attacks, ending the round
+    default void maxAttacksReached(Player defender){
+    }
+
+    // The player has no cards left and the deck is empty
+    default void playerFinished(Player player){
+    }
+
+    default void loserDeclared(Player loser){
+    }
+
+    // The last players went out together
+    default void draw(){
+    }
+
+    // The game was stopped after Durak.MAX_ROUNDS rounds with players still
+    //      in, so it has no loser; it is not a draw
+    default void roundLimitReached(int rounds){
+    }
+
+    default void gameEnded(GameResult result){
+    }
+}
@@ -0,0 +1,364 @@
+/* Author: Daniel Hammer
+ *
+ * GameLogReader class
+ *
+ * Streams games back out of a log written by GameLogWriter
+ * Each game is replayed into a GameEventListener, so a logged game can be
+ *      printed with a ConsoleListener or fed to any other listener
+ *
+ * While replaying, every play is checked against the rules of Durak:
+ *      only the round's defender may beat an attack or pick the table up,
+ *      and never attack, a later attack must match a suit already on the
+ *      table, a defense must beat the attack under the game's trump, no
+ *      card may be on the table more times than the shoe holds it, and a
+ *      round holds at most six attacks
+ * A file that does not start with GameLogWriter's header, or a log that
+ *      breaks these rules (or is cut short), throws IllegalStateException
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class GameLogReader implements AutoCloseable{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_NUM_ATTACKS = TableRound.MAX_ATTACKS;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private boolean endOfFile;
+    private long gamesRead;
+
+    // The game being replayed
+    private Player[] seats;
+    private TrumpContext trump;
+    private DeckType deckType;
+    private int decks;
+    private final CardSet table = new CardSet();
+    private Player defender;
+    private Card lastAttack;
+    private int attacksThisRound;
+    private int round;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    public GameLogReader(Path file) throws IOException{
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.buffer.flip();
+        if (!ensure(GameLogWriter.HEADER) || buffer.getInt() != GameLogWriter.MAGIC){
+            channel.close();
+            throw new IllegalStateException(file + " is not a game log");
+        }
+        int version = buffer.getInt();
+        if (version != GameLogWriter.VERSION){
+            channel.close();
+            throw new IllegalStateException(file + " is a version " + version
+                    + " game log; this reader reads version " + GameLogWriter.VERSION);
+        }
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public long getGamesRead(){
+        return this.gamesRead;
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // Replays every remaining game into the listener
+    // Returns the number of games replayed
+    public long replayAll(GameEventListener listener){
+        long games = 0;
+        while (replayNext(listener)){
+            games++;
+        }
+        return games;
+    }
+
+    // Replays the next game into the listener
+    // Returns false if there are no games left
+    public boolean replayNext(GameEventListener listener){
+        if (!ensure(1)){
+            return false;
+        }
+        byte op = buffer.get();
+        if (op != GameLogWriter.GAME){
+            throw corrupt("expected a game header, found opcode " + op);
+        }
+        require(10);
+        long seed = buffer.getLong();
+        int numPlayers = buffer.get();
+        int suit = buffer.get();
+        if (numPlayers < 2 || suit < 0 || suit >= Suit.values().length){
+            throw corrupt("bad game header");
+        }
+        startGame(numPlayers, Suit.values()[suit]);
+        listener.gameStarted(seed, numPlayers, trump);
+
+        Player loser = null;
+        boolean stopped = false;
+        while (true){
+            require(1);
+            op = buffer.get();
+            switch (op){
+                case GameLogWriter.SHOE:
+                    require(2);
+                    int type = buffer.get();
+                    decks = buffer.get();
+                    if (round != 0 || type < 0 || type >= DeckType.values().length
+                            || decks < 1){
+                        throw corrupt("bad shoe");
+                    }
+                    deckType = DeckType.values()[type];
+                    listener.shoeUsed(deckType, decks);
+                    break;
+                case GameLogWriter.ROUND:
+                    require(1);
+                    round++;
+                    table.clear();
+                    lastAttack = null;
+                    attacksThisRound = 0;
+                    defender = seat(buffer.get());
+                    listener.roundStarted(round, defender);
+                    break;
+                case GameLogWriter.ATTACK:
+                    require(2);
+                    Player attacker = seat(buffer.get());
+                    Card attack = card(buffer.get());
+                    if (defender == null){
+                        throw corrupt("attack before the first round");
+                    }
+                    if (attacker == defender){
+                        throw corrupt(attacker.getName() + " attacks while defending");
+                    }
+                    checkAttack(attack);
+                    listener.attackPlayed(attacksThisRound, attacker, attack);
+                    break;
+                case GameLogWriter.DEFEND:
+                    require(2);
+                    Player blocker = checkDefender(seat(buffer.get()));
+                    Card defense = card(buffer.get());
+                    checkDefense(defense);
+                    listener.defended(blocker, lastAttack, defense);
+                    lastAttack = null;
+                    break;
+                case GameLogWriter.PICKUP:
+                    require(1);
+                    listener.pickedUp(checkDefender(seat(buffer.get())), table);
+                    lastAttack = null;
+                    break;
+                case GameLogWriter.MAX:
+                    listener.maxAttacksReached(defender);
+                    break;
+                case GameLogWriter.DONE:
+                    require(1);
+                    listener.playerFinished(seat(buffer.get()));
+                    break;
+                case GameLogWriter.LOSER:
+                    require(1);
+                    loser = seat(buffer.get());
+                    listener.loserDeclared(loser);
+                    break;
+                case GameLogWriter.DRAW:
+                    listener.draw();
+                    break;
+                case GameLogWriter.STOP:
+                    if (loser != null){
+                        throw corrupt("game stopped after its loser was declared");
+                    }
+                    stopped = true;
+                    listener.roundLimitReached(round);
+                    break;
+                case GameLogWriter.END:
+                    require(4);
+                    int rounds = buffer.getShort() & 0xFFFF;
+                    int cardsLeft = buffer.getShort() & 0xFFFF;
+                    listener.gameEnded(loser == null
+                            ? new GameResult(null, -1, rounds, 0, seed, stopped)
+                            : new GameResult(loser.getName(), loser.getSeat(),
+                                rounds, cardsLeft, seed));
+                    gamesRead++;
+                    return true;
+                default:
+                    throw corrupt("unknown opcode " + op);
+            }
+        }
+    }
+
+    // Sets up the seats and table for a new game
+    private void startGame(int numPlayers, Suit trumpSuit){
+        seats = new Player[numPlayers];
+        for (int i = 0; i < numPlayers; i++){
+            seats[i] = new Player("Player #" + (i + 1), 100, 100);
+            seats[i].setSeat(i);
+        }
+        trump = TrumpContext.of(trumpSuit);
+        deckType = DeckType.STANDARD;
+        decks = 1;
+        table.clear();
+        defender = null;
+        lastAttack = null;
+        attacksThisRound = 0;
+        round = 0;
+    }
+
+
+
+
+    /***************
+     * RULE CHECKS *
+     * ************/
+
+    // Only the round's defender may beat an attack or pick up
+    private Player checkDefender(Player player){
+        if (player != defender){
+            throw corrupt(player.getName() + " defends in round " + round + ", not "
+                    + (defender == null ? "a defender" : defender.getName()));
+        }
+        return player;
+    }
+
+    private void checkAttack(Card attack){
+        if (lastAttack != null){
+            throw corrupt("attack while " + lastAttack + " is undefended");
+        }
+        if (++attacksThisRound > MAX_NUM_ATTACKS){
+            throw corrupt("more than " + MAX_NUM_ATTACKS + " attacks in round " + round);
+        }
+        checkInShoe(attack);
+        if (MoveGenerator.attackMoves(CardSet.bit(attack), table.getBits()) == 0){
+            throw corrupt(attack + " matches no suit on the table");
+        }
+        table.add(attack);
+        lastAttack = attack;
+    }
+
+    private void checkDefense(Card defense){
+        if (lastAttack == null){
+            throw corrupt("defense with no attack to beat");
+        }
+        checkInShoe(defense);
+        if (MoveGenerator.defenseMoves(CardSet.bit(defense), lastAttack, trump) == 0){
+            throw corrupt(defense + " does not beat " + lastAttack);
+        }
+        table.add(defense);
+    }
+
+    // The card must be in the shoe, and not already on the table as many
+    //      times as the shoe holds it
+    private void checkInShoe(Card card){
+        if ((deckType.getMask() & CardSet.bit(card)) == 0){
+            throw corrupt(card + " is not in a " + deckType + " deck");
+        }
+        if (table.count(card) >= decks){
+            throw corrupt(card + " is already on the table");
+        }
+    }
+
+
+
+
+    /*****************
+     * INPUT METHODS *
+     * **************/
+
+    private Player seat(byte seat){
+        if (seat < 0 || seat >= seats.length){
+            throw corrupt("no seat " + seat);
+        }
+        return seats[seat];
+    }
+
+    private Card card(byte id){
+        if (id < 0 || id >= Card.count()){
+            throw corrupt("no card " + id);
+        }
+        return Card.byId(id);
+    }
+
+    // Makes sure 'n' more bytes are buffered
+    // Returns false if the file ends first
+    private boolean ensure(int n){
+        if (buffer.remaining() >= n){
+            return true;
+        }
+        if (endOfFile){
+            return false;
+        }
+        buffer.compact();
+        try{
+            while (buffer.position() < n){
+                if (channel.read(buffer) < 0){
+                    endOfFile = true;
+                    break;
+                }
+            }
+        }
+        catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+        buffer.flip();
+        return buffer.remaining() >= n;
+    }
+
+    private void require(int n){
+        if (!ensure(n)){
+            throw corrupt("log ends in the middle of a game");
+        }
+    }
+
+    private IllegalStateException corrupt(String why){
+        return new IllegalStateException("Bad game log (game #"
+                + (gamesRead + 1) + "): " + why);
+    }
+
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+
+
+
+
+    /*********************
+     * PROGRAM EXECUTION *
+     * ******************/
+
+    // java GameLogReader <log file> [--print]
+    // Checks every game in the log; --print also replays them to the console
+    public static void main(String[] args) throws IOException{
+        GameEventListener listener = args.length > 1 && args[1].equals("--print")
+            ? new ConsoleListener() : GameEventListener.NONE;
+        long start = System.nanoTime();
+        try (GameLogReader reader = new GameLogReader(Path.of(args[0]))){
+            long games = reader.replayAll(listener);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(games + " games replayed in "
+                    + String.format("%.3f", seconds) + "s");
+        }
+    }
+}
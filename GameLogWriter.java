@@ -0,0 +1,241 @@
+/* Author: Daniel Hammer
+ *
+ * GameLogWriter class
+ *
+ * A GameEventListener that appends every game it hears about to a compact
+ *      binary log file, to be read back later by GameLogReader
+ *
+ * The file starts with MAGIC and VERSION, written when the file is made;
+ *      a writer only appends to a file that starts with them
+ * Each event is one opcode byte followed by a few bytes of operands;
+ *      seats and cards are single bytes (cards by Card.getId()), so a game
+ *      has at most Byte.MAX_VALUE seats and a shoe as many decks
+ * Each game starts with a header holding its seed, player count, and trump
+ *
+ *      GAME    seed(8) players(1) trump(1)
+ *      SHOE    type(1) decks(1)         only if not one STANDARD deck
+ *      ROUND   defender(1)
+ *      ATTACK  attacker(1) card(1)
+ *      DEFEND  defender(1) card(1)      beats the last ATTACK
+ *      PICKUP  defender(1)              takes every card on the table
+ *      MAX     (none)                   defender beat the maximum attacks
+ *      DONE    seat(1)                  player finished
+ *      LOSER   seat(1)
+ *      DRAW    (none)
+ *      STOP    (none)                   stopped at Durak.MAX_ROUNDS
+ *      END     rounds(2) cardsLeft(2)   cardsLeft fits any shoe a game can have
+ *
+ * Events are gathered in a large direct buffer and written to the file in
+ *      big blocks, so logging costs a few byte stores per event
+ * One writer belongs to one thread; give every worker its own file
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class GameLogWriter implements GameEventListener, AutoCloseable{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // File header: "DLOG" and the format version
+    static final int MAGIC = 0x444C4F47;
+    // Version 2 adds STOP, which version 1 logged as DRAW, and widens
+    //      END's cardsLeft to two bytes (a loser can hold more than 255
+    //      cards of a large shoe)
+    static final int VERSION = 2;
+    static final int HEADER = 8;
+
+    // Opcodes
+    static final byte GAME = 1;
+    static final byte ROUND = 2;
+    static final byte ATTACK = 3;
+    static final byte DEFEND = 4;
+    static final byte PICKUP = 5;
+    static final byte MAX = 6;
+    static final byte DONE = 7;
+    static final byte LOSER = 8;
+    static final byte DRAW = 9;
+    static final byte END = 10;
+    static final byte SHOE = 11;
+    static final byte STOP = 12;
+
+    // The largest single record (GAME) is 11 bytes
+    private static final int MAX_RECORD = 16;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long gamesWritten;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    // Appends to 'file', creating it if needed
+    public GameLogWriter(Path file) throws IOException{
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        if (channel.size() == 0){
+            buffer.putInt(MAGIC).putInt(VERSION);
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        channel.read(header, 0);
+        channel.position(channel.size());
+        if (header.hasRemaining() || header.getInt(0) != MAGIC){
+            channel.close();
+            throw new IllegalStateException(file + " is not a game log");
+        }
+        if (header.getInt(4) != VERSION){
+            channel.close();
+            throw new IllegalStateException(file + " is a version " + header.getInt(4)
+                    + " game log; this writer appends version " + VERSION);
+        }
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public long getGamesWritten(){
+        return this.gamesWritten;
+    }
+
+
+
+
+    /*****************
+     * EVENT METHODS *
+     * **************/
+
+    @Override
+    public void gameStarted(long seed, int numPlayers, TrumpContext trump){
+        if (numPlayers > Byte.MAX_VALUE){
+            throw new IllegalArgumentException("a game log holds games of up to "
+                    + Byte.MAX_VALUE + " players, not " + numPlayers);
+        }
+        reserve();
+        buffer.put(GAME).putLong(seed).put((byte) numPlayers)
+            .put((byte) trump.getSuit().ordinal());
+    }
+
+    @Override
+    public void shoeUsed(DeckType deckType, int decks){
+        if (decks < 1 || decks > Byte.MAX_VALUE){
+            throw new IllegalArgumentException("a game log holds shoes of 1 to "
+                    + Byte.MAX_VALUE + " decks, not " + decks);
+        }
+        reserve();
+        buffer.put(SHOE).put((byte) deckType.ordinal()).put((byte) decks);
+    }
+
+    @Override
+    public void roundStarted(int round, Player defender){
+        reserve();
+        buffer.put(ROUND).put((byte) defender.getSeat());
+    }
+
+    @Override
+    public void attackPlayed(int attackNumber, Player attacker, Card card){
+        reserve();
+        buffer.put(ATTACK).put((byte) attacker.getSeat()).put((byte) card.getId());
+    }
+
+    @Override
+    public void defended(Player defender, Card attack, Card defense){
+        reserve();
+        buffer.put(DEFEND).put((byte) defender.getSeat())
+            .put((byte) defense.getId());
+    }
+
+    @Override
+    public void pickedUp(Player defender, CardSet cards){
+        reserve();
+        buffer.put(PICKUP).put((byte) defender.getSeat());
+    }
+
+    @Override
+    public void maxAttacksReached(Player defender){
+        reserve();
+        buffer.put(MAX);
+    }
+
+    @Override
+    public void playerFinished(Player player){
+        reserve();
+        buffer.put(DONE).put((byte) player.getSeat());
+    }
+
+    @Override
+    public void loserDeclared(Player loser){
+        reserve();
+        buffer.put(LOSER).put((byte) loser.getSeat());
+    }
+
+    @Override
+    public void draw(){
+        reserve();
+        buffer.put(DRAW);
+    }
+
+    @Override
+    public void roundLimitReached(int rounds){
+        reserve();
+        buffer.put(STOP);
+    }
+
+    @Override
+    public void gameEnded(GameResult result){
+        reserve();
+        buffer.put(END).putShort((short) result.getRoundsPlayed())
+            .putShort((short) result.getCardsLeft());
+        gamesWritten++;
+    }
+
+
+
+
+    /******************
+     * OUTPUT METHODS *
+     * ***************/
+
+    // Makes sure one more record fits in the buffer
+    private void reserve(){
+        if (buffer.remaining() < MAX_RECORD){
+            flush();
+        }
+    }
+
+    // Writes everything buffered so far to the file
+    public void flush(){
+        buffer.flip();
+        try{
+            while (buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+        }
+        catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException{
+        flush();
+        channel.close();
+    }
+}
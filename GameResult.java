@@ -0,0 +1,110 @@
+/* Author: Daniel Hammer
+ *
+ * GameResult class
+ *
+ * Contains the outcome of a finished game of Durak: who lost (if anyone),
+ *      how many rounds were played, and how many cards the loser was left
+ *      holding
+ * A game with no loser is either a draw, when the last players went out
+ *      together, or was stopped at Durak.MAX_ROUNDS with players still in;
+ *      the two are told apart by isDraw() and isStopped()
+ */
+
+public class GameResult{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // Stands for a stopped game where outcomes are kept as one int (a
+    //      loser's seat, or -1 for a draw), as in BatchResult.record()
+    public static final int STOPPED = -2;
+
+    private final String loserName;
+    private final int loserSeat;
+    private final int roundsPlayed;
+    private final int cardsLeft;
+    private final long seed;
+    private final boolean stopped;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    // A loserSeat of -1 means the game ended in a draw
+    public GameResult(String loserName, int loserSeat,
+            int roundsPlayed, int cardsLeft, long seed){
+        this(loserName, loserSeat, roundsPlayed, cardsLeft, seed, false);
+    }
+
+    // 'stopped' marks a game cut off at Durak.MAX_ROUNDS, which has no loser
+    public GameResult(String loserName, int loserSeat,
+            int roundsPlayed, int cardsLeft, long seed, boolean stopped){
+        if (stopped && loserSeat >= 0){
+            throw new IllegalArgumentException("a stopped game has no loser");
+        }
+        this.loserName = loserName;
+        this.loserSeat = loserSeat;
+        this.roundsPlayed = roundsPlayed;
+        this.cardsLeft = cardsLeft;
+        this.seed = seed;
+        this.stopped = stopped;
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    // Returns null if the game was a draw or was stopped
+    public String getLoserName(){
+        return this.loserName;
+    }
+
+    // Returns the seat (0-based, in dealing order) of the loser,
+    //      or -1 if the game was a draw or was stopped
+    public int getLoserSeat(){
+        return this.loserSeat;
+    }
+
+    // True if the last players went out together, not for a stopped game
+    public boolean isDraw(){
+        return this.loserSeat < 0 && !this.stopped;
+    }
+
+    // True if the game was cut off at Durak.MAX_ROUNDS with no loser
+    public boolean isStopped(){
+        return this.stopped;
+    }
+
+    // The loser's seat, -1 for a draw, or STOPPED
+    public int getOutcome(){
+        return this.stopped ? STOPPED : this.loserSeat;
+    }
+
+    public int getRoundsPlayed(){
+        return this.roundsPlayed;
+    }
+
+    // The number of cards left in the loser's hand, 0 with no loser
+    public int getCardsLeft(){
+        return this.cardsLeft;
+    }
+
+    // The seed the game was played with; replaying it gives the same game
+    public long getSeed(){
+        return this.seed;
+    }
+
+    public String toString(){
+        return isStopped() ? "Stopped after " + roundsPlayed + " rounds"
+            : isDraw() ? "Draw after " + roundsPlayed + " rounds"
+            : loserName + " (seat " + loserSeat + ") lost after "
+                + roundsPlayed + " rounds holding " + cardsLeft + " cards";
+    }
+}
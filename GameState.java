@@ -0,0 +1,578 @@
+/* Author: Daniel Hammer
+ *
+ * GameState class
+ *
+ * A whole game of Durak in a handful of primitive fields, for search:
+ *      one CardSet mask per hand, the deck as an array of card ids with
+ *      a cursor, and a few ints describing the current round
+ *
+ * Moves are ints: a card id (0-51) plays that card, PASS ends the current
+ *      attacker's turn, and TAKE makes the defender pick up the table
+ * legalMoves() returns every legal move as one long mask (card bits, plus
+ *      PASS_BIT and TAKE_BIT), so nothing is allocated while searching
+ *
+ * apply(move) saves the state on an internal undo stack before changing
+ *      it, so undo() puts everything back exactly, including the deal at
+ *      the end of a round
+ *
+ * getKey() is a Zobrist hash of the position, for transposition tables:
+ *      one random number per (hand, card) and (table, card), kept up to
+ *      date as cards move, combined with a mix of the round's ints
+ * The order of the deck is not part of the key, only its size, so two
+ *      states share a key only if they differ in what is left to draw
+ *
+ * A round follows the rules Durak plays by (see TableRound):
+ *      the seat after the defender attacks first and must play a card;
+ *      after each successful defense the first attacker may throw in
+ *      another card of a suit on the table, or pass the offer on to the
+ *      next seat (skipping the defender); the round ends when every
+ *      attacker has passed in turn, six attacks were beaten, the defender
+ *      runs out of cards, or the defender takes
+ * Afterwards everyone draws back up to the hand size one card at a time
+ *      in seat order from the lowest seat still in, pass after pass until
+ *      every hand is full or the deck is empty, as
+ *      Game.dealCardsToAllPlayers() does; players with no cards and no
+ *      deck are out, and the next seat becomes the defender
+ *
+ * Seats are bits of an int mask, so a state holds at most MAX_SEATS (31)
+ *      players
+ */
+
+public final class GameState{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // Moves that are not cards
+    public static final int PASS = 52;
+    public static final int TAKE = 53;
+    public static final long PASS_BIT = 1L << PASS;
+    public static final long TAKE_BIT = 1L << TAKE;
+
+    // Phases
+    public static final int ATTACK = 0;
+    public static final int DEFEND = 1;
+    public static final int OVER = 2;
+
+    public static final int MAX_NUM_ATTACKS = TableRound.MAX_ATTACKS;
+
+    // Frames the undo stack can hold before it grows
+    private static final int INITIAL_DEPTH = 256;
+
+    // Seats are bits of the int 'active' mask, and (1 << 32) - 1 is 0
+    public static final int MAX_SEATS = 31;
+
+    // Zobrist keys: one per card in each seat's hand, and one per card on
+    //      the table
+    private static final long[] HAND_KEYS = new long[MAX_SEATS * 64];
+    private static final long[] TABLE_KEYS = new long[64];
+    static{
+        for (int i = 0; i < HAND_KEYS.length; i++){
+            HAND_KEYS[i] = SplitMix.mix64(0x5A0B15AL + i);
+        }
+        for (int i = 0; i < TABLE_KEYS.length; i++){
+            TABLE_KEYS[i] = SplitMix.mix64(0x7AB1EL + (i << 20));
+        }
+    }
+
+    private final int numPlayers;
+    private final int handSize;
+    private final long[] hands;
+    private final byte[] deck;
+    private int deckSize;
+    private TrumpContext trump;
+
+    // Every card the game is played with (see DeckType.getMask())
+    private long cards = CardSet.ALL;
+
+    // Bit i is set while seat i is still in the game
+    private int active;
+
+    private int defender;
+    private int attacker;
+    private int firstAttacker;
+    private int phase;
+
+    // Every card played this round, and the attack waiting to be beaten
+    private long table;
+    private int pending;
+    private int attacks;
+
+    private int round;
+    private int loser;
+
+    // The card part of the Zobrist key, updated as cards move
+    private long cardKey;
+
+    // Saved states: frameSize longs per apply()
+    private final int frameSize;
+    private long[] undoStack;
+    private int depth;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    public GameState(int numPlayers, int handSize){
+        if (numPlayers > MAX_SEATS){
+            throw new IllegalArgumentException("GameState supports at most "
+                    + MAX_SEATS + " players");
+        }
+        this.numPlayers = numPlayers;
+        this.handSize = handSize;
+        this.hands = new long[numPlayers];
+        this.deck = new byte[Card.count()];
+        this.frameSize = numPlayers + 7;
+        this.undoStack = new long[INITIAL_DEPTH * frameSize];
+        this.loser = -1;
+    }
+
+    public GameState(int numPlayers){
+        this(numPlayers, 6);
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public int getNumPlayers(){
+        return this.numPlayers;
+    }
+
+    public int getHandSize(){
+        return this.handSize;
+    }
+
+    public long getHand(int seat){
+        return this.hands[seat];
+    }
+
+    public void setHand(int seat, long hand){
+        cardKey ^= handKey(seat, hands[seat] ^ hand);
+        this.hands[seat] = hand;
+    }
+
+    public int getDeckSize(){
+        return this.deckSize;
+    }
+
+    // The card id at 'index' in the deck; the next card drawn is at
+    //      getDeckSize() - 1
+    public int getDeckCard(int index){
+        return this.deck[index];
+    }
+
+    public void setDeck(byte[] cards, int size){
+        System.arraycopy(cards, 0, this.deck, 0, size);
+        this.deckSize = size;
+    }
+
+    // A mask of every card the game is played with
+    public long getCards(){
+        return this.cards;
+    }
+
+    // Plays with only the cards in 'cards', as in a 36 card deck
+    public void setCards(long cards){
+        this.cards = cards;
+    }
+
+    // A mask of every card still in the deck
+    public long getDeckMask(){
+        long mask = 0L;
+        for (int i = 0; i < deckSize; i++){
+            mask |= 1L << deck[i];
+        }
+        return mask;
+    }
+
+    public TrumpContext getTrump(){
+        return this.trump;
+    }
+
+    public boolean isActive(int seat){
+        return (active & (1 << seat)) != 0;
+    }
+
+    public int getActiveCount(){
+        return Integer.bitCount(active);
+    }
+
+    public int getDefender(){
+        return this.defender;
+    }
+
+    public int getAttacker(){
+        return this.attacker;
+    }
+
+    public int getPhase(){
+        return this.phase;
+    }
+
+    public boolean isOver(){
+        return this.phase == OVER;
+    }
+
+    // The seat that must move next
+    public int toMove(){
+        return phase == DEFEND ? defender : attacker;
+    }
+
+    public long getTable(){
+        return this.table;
+    }
+
+    // The attack waiting to be beaten, or -1
+    public int getPending(){
+        return this.pending;
+    }
+
+    public int getAttacks(){
+        return this.attacks;
+    }
+
+    public int getRound(){
+        return this.round;
+    }
+
+    // A Zobrist hash of the whole position (see above)
+    public long getKey(){
+        int low = defender << 27 | attacker << 22 | firstAttacker << 17
+            | phase << 15 | attacks << 12 | (pending & 0x3F) << 6 | deckSize;
+        long rounds = (long) active << 32 | (low & 0xFFFFFFFFL);
+        return cardKey ^ SplitMix.mix64(rounds);
+    }
+
+    // The losing seat once the game is over, or -1 for a draw
+    public int getLoser(){
+        return this.loser;
+    }
+
+    // Every card that has left the game for good
+    public long getDiscarded(){
+        long held = table | getDeckMask();
+        for (long h : hands){
+            held |= h;
+        }
+        return cards & ~held;
+    }
+
+
+
+
+    /***************
+     * GAME SET-UP *
+     * ************/
+
+    // Shuffles, picks the trump, and deals the way Durak does:
+    //      the deck starts in suit order (see Game.buildDeck()), is
+    //      shuffled with Fisher-Yates, and a random card names the trump
+    public void deal(RandomSource rand){
+        int i = 0;
+        for (Suit s : Suit.values()){
+            for (Face f : Face.values()){
+                deck[i++] = (byte) Card.of(s, f).getId();
+            }
+        }
+        for (i = deck.length - 1; i > 0; i--){
+            int j = rand.nextInt(i + 1);
+            byte t = deck[i];
+            deck[i] = deck[j];
+            deck[j] = t;
+        }
+        Card trumpCard = Card.byId(deck[rand.nextInt(deck.length)]);
+        start(deck, deck.length, TrumpContext.of(trumpCard.getSuit()));
+    }
+
+    // Starts a game from an ordered deck (drawn from the end)
+    public void start(byte[] cards, int size, TrumpContext trump){
+        setDeck(cards, size);
+        this.trump = trump;
+        for (int s = 0; s < numPlayers; s++){
+            hands[s] = 0L;
+        }
+        this.active = (1 << numPlayers) - 1;
+        this.loser = -1;
+        this.round = 0;
+        this.depth = 0;
+        this.table = 0L;
+        this.cardKey = 0L;
+        refill();
+        // As in Durak, seat 1 defends the first round
+        this.defender = 1 % numPlayers;
+        startRound();
+    }
+
+    // Sets the whole round position directly, for states reconstructed
+    //      from a game in progress
+    public void setPosition(TrumpContext trump, int active, int round,
+            int defender, int attacker, int firstAttacker, int phase,
+            long table, int pending, int attacks){
+        this.trump = trump;
+        this.active = active;
+        this.round = round;
+        this.defender = defender;
+        this.attacker = attacker;
+        this.firstAttacker = firstAttacker;
+        this.phase = phase;
+        this.table = table;
+        this.pending = pending;
+        this.attacks = attacks;
+        this.loser = -1;
+        this.depth = 0;
+        this.cardKey = handKey(-1, table);
+        for (int s = 0; s < numPlayers; s++){
+            cardKey ^= handKey(s, hands[s]);
+        }
+    }
+
+    // Copies this state into 'other', which must have the same number of
+    //      players; the undo history is not copied
+    public void copyInto(GameState other){
+        System.arraycopy(hands, 0, other.hands, 0, numPlayers);
+        System.arraycopy(deck, 0, other.deck, 0, deckSize);
+        other.deckSize = deckSize;
+        other.trump = trump;
+        other.cards = cards;
+        other.active = active;
+        other.defender = defender;
+        other.attacker = attacker;
+        other.firstAttacker = firstAttacker;
+        other.phase = phase;
+        other.table = table;
+        other.pending = pending;
+        other.attacks = attacks;
+        other.round = round;
+        other.loser = loser;
+        other.cardKey = cardKey;
+        other.depth = 0;
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // Every legal move for the seat to move, as a mask
+    public long legalMoves(){
+        if (phase == DEFEND){
+            return MoveGenerator.defenseMoves(hands[defender], pending, trump)
+                | TAKE_BIT;
+        }
+        if (phase == OVER){
+            return 0L;
+        }
+        if (table == 0){
+            return hands[attacker];
+        }
+        if (attacks >= MAX_NUM_ATTACKS || hands[defender] == 0){
+            return PASS_BIT;
+        }
+        return MoveGenerator.attackMoves(hands[attacker], table) | PASS_BIT;
+    }
+
+    public boolean isLegal(int move){
+        return move >= 0 && move < 64 && (legalMoves() & (1L << move)) != 0;
+    }
+
+    // Plays a legal move
+    public void apply(int move){
+        push();
+        if (phase == ATTACK){
+            if (move == PASS){
+                attacker = nextAttacker(attacker);
+                if (attacker == firstAttacker){
+                    endRound();
+                }
+            }
+            else{
+                long b = 1L << move;
+                hands[attacker] &= ~b;
+                table |= b;
+                cardKey ^= HAND_KEYS[attacker << 6 | move] ^ TABLE_KEYS[move];
+                pending = move;
+                attacks++;
+                phase = DEFEND;
+            }
+        }
+        else{
+            if (move == TAKE){
+                hands[defender] |= table;
+                cardKey ^= handKey(defender, table);
+                endRound();
+            }
+            else{
+                long b = 1L << move;
+                hands[defender] &= ~b;
+                table |= b;
+                cardKey ^= HAND_KEYS[defender << 6 | move] ^ TABLE_KEYS[move];
+                pending = -1;
+                if (attacks >= MAX_NUM_ATTACKS || hands[defender] == 0){
+                    endRound();
+                }
+                // Every attacker is offered a throw-in again, in seat order
+                else{
+                    attacker = firstAttacker;
+                    phase = ATTACK;
+                }
+            }
+        }
+    }
+
+    // Takes back the last move applied
+    public void undo(){
+        int f = --depth * frameSize;
+        long[] st = undoStack;
+        System.arraycopy(st, f, hands, 0, numPlayers);
+        f += numPlayers;
+        table = st[f];
+        cardKey = st[f + 6];
+        long a = st[f + 1];
+        long b = st[f + 2];
+        long c = st[f + 3];
+        deckSize = (int) st[f + 4];
+        round = (int) st[f + 5];
+        active = (int) a;
+        defender = (int) (a >>> 32);
+        attacker = (int) b;
+        firstAttacker = (int) (b >>> 32);
+        phase = (int) c & 0xFF;
+        attacks = (int) (c >>> 8) & 0xFF;
+        pending = (int) (c >>> 16) & 0xFF;
+        loser = (int) (c >>> 24) & 0xFF;
+        pending = pending == 0xFF ? -1 : pending;
+        loser = loser == 0xFF ? -1 : loser;
+    }
+
+    // The number of moves that can be undone
+    public int getDepth(){
+        return this.depth;
+    }
+
+    private void push(){
+        if ((depth + 1) * frameSize > undoStack.length){
+            long[] bigger = new long[undoStack.length * 2];
+            System.arraycopy(undoStack, 0, bigger, 0, undoStack.length);
+            undoStack = bigger;
+        }
+        int f = depth++ * frameSize;
+        long[] st = undoStack;
+        System.arraycopy(hands, 0, st, f, numPlayers);
+        f += numPlayers;
+        st[f] = table;
+        st[f + 1] = (active & 0xFFFFFFFFL) | ((long) defender << 32);
+        st[f + 2] = (attacker & 0xFFFFFFFFL) | ((long) firstAttacker << 32);
+        st[f + 3] = (phase & 0xFF) | ((attacks & 0xFF) << 8)
+            | ((pending & 0xFF) << 16) | ((long) (loser & 0xFF) << 24);
+        st[f + 4] = deckSize;
+        st[f + 5] = round;
+        st[f + 6] = cardKey;
+    }
+
+
+
+
+    /*****************
+     * ROUND METHODS *
+     * **************/
+
+    // Clears the table, deals, removes finished players, and either ends
+    //      the game or starts the next round
+    private void endRound(){
+        cardKey ^= handKey(-1, table);
+        table = 0L;
+        pending = -1;
+        refill();
+        for (int s = 0; s < numPlayers; s++){
+            if (isActive(s) && hands[s] == 0 && deckSize == 0){
+                active &= ~(1 << s);
+            }
+        }
+        int left = Integer.bitCount(active);
+        if (left <= 1){
+            loser = left == 1 ? Integer.numberOfTrailingZeros(active) : -1;
+            phase = OVER;
+            return;
+        }
+        defender = nextActive(defender);
+        startRound();
+    }
+
+    private void startRound(){
+        round++;
+        attacker = nextActive(defender);
+        firstAttacker = attacker;
+        attacks = 0;
+        pending = -1;
+        phase = ATTACK;
+    }
+
+    // Deals one card at a time in seat order until every hand is full or
+    //      the deck is empty
+    private void refill(){
+        boolean dealt = true;
+        while (dealt && deckSize > 0){
+            dealt = false;
+            for (int s = 0; s < numPlayers && deckSize > 0; s++){
+                if (isActive(s) && Long.bitCount(hands[s]) < handSize){
+                    int card = deck[--deckSize];
+                    hands[s] |= 1L << card;
+                    cardKey ^= HAND_KEYS[s << 6 | card];
+                    dealt = true;
+                }
+            }
+        }
+    }
+
+    // The XOR of the keys of every card in 'cards', held by 'seat'
+    //      (or on the table, for seat -1)
+    private static long handKey(int seat, long cards){
+        long key = 0L;
+        for (; cards != 0; cards &= cards - 1){
+            int c = Long.numberOfTrailingZeros(cards);
+            key ^= seat < 0 ? TABLE_KEYS[c] : HAND_KEYS[seat << 6 | c];
+        }
+        return key;
+    }
+
+    // The next seat after 'seat' that is still in the game
+    private int nextActive(int seat){
+        int s = seat;
+        do{
+            s = s + 1 == numPlayers ? 0 : s + 1;
+        } while (!isActive(s) && s != seat);
+        return s;
+    }
+
+    // The next seat after 'seat' that may attack this round
+    private int nextAttacker(int seat){
+        int s = nextActive(seat);
+        return s == defender ? nextActive(s) : s;
+    }
+
+    public String toString(){
+        StringBuilder sb = new StringBuilder();
+        sb.append("Round ").append(round).append(", ").append(trump)
+            .append(", deck ").append(deckSize).append('\n');
+        for (int s = 0; s < numPlayers; s++){
+            CardSet hand = new CardSet();
+            hand.setBits(hands[s]);
+            sb.append(s == defender ? " D " : s == toMove() ? " > " : "   ")
+                .append("seat ").append(s).append(isActive(s) ? ": " : " (out): ")
+                .append(hand).append('\n');
+        }
+        CardSet onTable = new CardSet();
+        onTable.setBits(table);
+        return sb.append("   table: ").append(onTable).toString();
+    }
+}
@@ -0,0 +1,164 @@
+/* Author: Daniel Hammer
+ *
+ * Histogram class
+ *
+ * Counts values into a fixed set of equal-width buckets, plus one
+ *      overflow bucket for everything past the last
+ * Every bucket is a LongAdder, so any number of threads can record into
+ *      the same histogram without contending on one counter
+ *
+ * Two histograms with the same buckets can be merged, so workers (or
+ *      whole batches) can keep their own and add them up at the end
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Histogram{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    private final int bucketWidth;
+    private final LongAdder[] buckets;
+    private final LongAdder count;
+    private final LongAdder sum;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    // Buckets [0, w), [w, 2w), ... up to 'numBuckets' * w, then overflow
+    // Negative values are counted in the first bucket
+    public Histogram(int numBuckets, int bucketWidth){
+        if (numBuckets < 1 || bucketWidth < 1){
+            throw new IllegalArgumentException("a histogram needs at least one"
+                    + " bucket of width at least 1");
+        }
+        this.bucketWidth = bucketWidth;
+        this.buckets = new LongAdder[numBuckets + 1];
+        for (int i = 0; i < buckets.length; i++){
+            buckets[i] = new LongAdder();
+        }
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    // The number of buckets, not counting overflow
+    public int getNumBuckets(){
+        return this.buckets.length - 1;
+    }
+
+    public int getBucketWidth(){
+        return this.bucketWidth;
+    }
+
+    // The lowest value counted in bucket 'i'
+    public long getBucketStart(int i){
+        return (long) i * bucketWidth;
+    }
+
+    // Bucket getNumBuckets() is the overflow bucket
+    public long getBucketCount(int i){
+        return this.buckets[i].sum();
+    }
+
+    public long getCount(){
+        return this.count.sum();
+    }
+
+    public long getSum(){
+        return this.sum.sum();
+    }
+
+    public double getMean(){
+        long n = getCount();
+        return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    public void record(long value){
+        long i = Math.max(0, value / bucketWidth);
+        buckets[(int) Math.min(i, buckets.length - 1)].increment();
+        count.increment();
+        sum.add(value);
+    }
+
+    // Adds every count of 'other', which must have the same buckets
+    public void merge(Histogram other){
+        if (other.bucketWidth != bucketWidth || other.buckets.length != buckets.length){
+            throw new IllegalArgumentException("cannot merge histograms with"
+                    + " different buckets");
+        }
+        for (int i = 0; i < buckets.length; i++){
+            buckets[i].add(other.buckets[i].sum());
+        }
+        count.add(other.count.sum());
+        sum.add(other.sum.sum());
+    }
+
+    // The start of the bucket holding the p-th fraction of the values
+    //      (0 <= p <= 1), or -1 if it is the overflow bucket
+    public long percentile(double p){
+        long n = getCount();
+        long target = (long) Math.ceil(p * n);
+        long seen = 0;
+        for (int i = 0; i < buckets.length - 1; i++){
+            seen += buckets[i].sum();
+            if (seen >= target && seen > 0){
+                return getBucketStart(i);
+            }
+        }
+        return n == 0 ? 0 : -1;
+    }
+
+    public void reset(){
+        for (LongAdder b : buckets){
+            b.reset();
+        }
+        count.reset();
+        sum.reset();
+    }
+
+    // Writes every count, for readState() to add back (see BatchRunner)
+    public void writeState(DataOutput out) throws IOException{
+        out.writeInt(buckets.length);
+        out.writeInt(bucketWidth);
+        for (LongAdder b : buckets){
+            out.writeLong(b.sum());
+        }
+        out.writeLong(count.sum());
+        out.writeLong(sum.sum());
+    }
+
+    // Adds counts written by writeState() for the same buckets
+    public void readState(DataInput in) throws IOException{
+        if (in.readInt() != buckets.length || in.readInt() != bucketWidth){
+            throw new IllegalArgumentException("saved histogram has different buckets");
+        }
+        for (LongAdder b : buckets){
+            b.add(in.readLong());
+        }
+        count.add(in.readLong());
+        sum.add(in.readLong());
+    }
+}
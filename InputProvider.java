@@ -0,0 +1,36 @@
+/* Author: Daniel Hammer
+ *
+ * InputProvider interface
+ *
+ * Where a console game reads what the user types: the settings, the user's
+ *      name, every card the user plays, and the display delay
+ * The game and the user's Player share one InputProvider, so every line is
+ *      read from the same place in the order the prompts were shown
+ *
+ * ConsoleInput reads System.in, ScriptedInput replays lines given up front
+ *      (see SessionReplay), and anything else can be given as a lambda
+ */
+
+import java.util.List;
+
+public interface InputProvider{
+
+    // Returns the next line the user entered, without its line terminator
+    // Throws IllegalStateException once there is no more input
+    String nextLine();
+
+    // Reads the next line as a number
+    default int nextInt(){
+        return Integer.parseInt(nextLine().trim());
+    }
+
+    // Passes every line read from 'in' on, after adding it to 'lines',
+    //      so a console session can be saved and replayed later
+    static InputProvider recording(InputProvider in, List<String> lines){
+        return () -> {
+            String line = in.nextLine();
+            lines.add(line);
+            return line;
+        };
+    }
+}
@@ -0,0 +1,418 @@
+/* Author: Daniel Hammer
+ *
+ * IsmctsStrategy class
+ *
+ * A Strategy that searches for its moves with Information Set Monte Carlo
+ *      Tree Search (single observer)
+ *
+ * The player cannot see the other hands or the deck, so every iteration
+ *      first deals the unseen cards out again at random (a determinization),
+ *      keeping every hand and the deck at its real size
+ * Cards the game's CardTracker knows to be in a hand (picked up and not
+ *      played since) stay in that hand; only the rest are dealt
+ * One tree is shared by all determinizations: a move's statistics are
+ *      kept per node no matter which deal it was tried in, and a child's
+ *      exploration term counts how often it was available rather than how
+ *      often its parent was visited
+ * Below the tree the game is played out with a cheap policy (defend with
+ *      the lowest card that beats, usually; throw in the lowest card, or
+ *      pass), and the result is scored for every player on the path:
+ *      1 for getting out, 0 for losing, 1/2 for a draw
+ *
+ * Each decision runs for a fixed wall-clock budget
+ * The search is root-parallel: every thread grows its own tree from its
+ *      own random stream, and the root visit counts are summed at the end
+ *
+ * Usage: java IsmctsStrategy [games] [millis] [players] [seed]
+ *      plays seat 0 with this strategy against the default NPCs
+ */
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IsmctsStrategy implements Strategy{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    public static final long DEFAULT_BUDGET_MILLIS = 20;
+
+    // UCB exploration constant, for rewards between 0 and 1
+    private static final double EXPLORATION = 0.7;
+
+    // Playouts can go round in circles (two players passing the same
+    //      cards back and forth), so one this many rounds past the root
+    //      is cut off and scored as a draw
+    private static final int MAX_PLAYOUT_ROUNDS = 200;
+
+    private final long budgetNanos;
+    private final int threads;
+
+    // Totals over every decision, for reporting
+    private final AtomicLong decisions = new AtomicLong();
+    private final AtomicLong playouts = new AtomicLong();
+    private final AtomicLong searchNanos = new AtomicLong();
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    // Searches for 'budgetMillis' per decision on 'threads' threads
+    public IsmctsStrategy(long budgetMillis, int threads){
+        if (budgetMillis < 1){
+            throw new IllegalArgumentException("budget must be at least 1 ms");
+        }
+        if (threads < 1){
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.budgetNanos = budgetMillis * 1_000_000L;
+        this.threads = threads;
+    }
+
+    // Searches on every core
+    public IsmctsStrategy(long budgetMillis){
+        this(budgetMillis, Runtime.getRuntime().availableProcessors());
+    }
+
+    public IsmctsStrategy(){
+        this(DEFAULT_BUDGET_MILLIS);
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public long getDecisions(){
+        return this.decisions.get();
+    }
+
+    public long getPlayouts(){
+        return this.playouts.get();
+    }
+
+    // Playouts per second of search, over all threads
+    public double getPlayoutsPerSecond(){
+        long nanos = searchNanos.get();
+        return nanos == 0 ? 0 : playouts.get() * 1e9 / nanos;
+    }
+
+
+
+
+    /********************
+     * STRATEGY METHODS *
+     * *****************/
+
+    @Override
+    public Card chooseAttack(Player self, TableView table, long legal,
+            boolean mustPlay){
+        long allowed = mustPlay ? legal : legal | GameState.PASS_BIT;
+        int move = search(self, table, table.snapshot(self, null), allowed);
+        return move == GameState.PASS ? null : Card.byId(move);
+    }
+
+    @Override
+    public Card chooseDefense(Player self, TableView table, Card attack,
+            long legal){
+        int move = search(self, table, table.snapshot(self, attack),
+                legal | GameState.TAKE_BIT);
+        return move == GameState.TAKE ? null : Card.byId(move);
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // Returns the most visited root move that is in 'allowed'
+    private int search(Player self, TableView table, GameState root, long allowed){
+        if (Long.bitCount(allowed) == 1){
+            return Long.numberOfTrailingZeros(allowed);
+        }
+
+        // The cards known to be in every other hand, from public events
+        //      only; the real hands just check that the tracker is right
+        long[] known = new long[root.getNumPlayers()];
+        CardTracker tracker = table.getTracker();
+        if (tracker != null && tracker.isTracking()){
+            for (int s = 0; s < known.length; s++){
+                if (s != self.getSeat()){
+                    known[s] = tracker.getKnown(s);
+                    if ((known[s] & ~root.getHand(s)) != 0){
+                        throw new IllegalStateException("seat " + s
+                                + " is tracked with cards it does not hold");
+                    }
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        RandomSource rand = self.getRandom().split();
+
+        Searcher[] searchers = new Searcher[threads];
+        for (int i = 0; i < threads; i++){
+            searchers[i] = new Searcher(root, self.getSeat(), known, rand.split());
+        }
+        ArrayList<ForkJoinTask<?>> forks = new ArrayList<ForkJoinTask<?>>();
+        for (int i = 1; i < threads; i++){
+            Searcher s = searchers[i];
+            forks.add(ForkJoinPool.commonPool().submit(() -> s.run(deadline)));
+        }
+        searchers[0].run(deadline);
+
+        long[] visits = new long[64];
+        long total = 0;
+        for (int i = 0; i < threads; i++){
+            if (i > 0){
+                forks.get(i - 1).join();
+            }
+            searchers[i].addRootVisits(visits);
+            total += searchers[i].playouts;
+        }
+        decisions.incrementAndGet();
+        playouts.addAndGet(total);
+        searchNanos.addAndGet(System.nanoTime() - start);
+
+        int best = Long.numberOfTrailingZeros(allowed);
+        for (long m = allowed; m != 0; m &= m - 1){
+            int move = Long.numberOfTrailingZeros(m);
+            if (visits[move] > visits[best]){
+                best = move;
+            }
+        }
+        return best;
+    }
+
+
+
+
+    /************
+     * SEARCHER *
+     * *********/
+
+    // One node per move sequence, shared by every determinization
+    private static final class Node{
+        final int move;
+        final int mover;
+        final Node parent;
+        Node child;
+        Node sibling;
+        int visits;
+        int available;
+        double reward;
+
+        Node(int move, int mover, Node parent){
+            this.move = move;
+            this.mover = mover;
+            this.parent = parent;
+        }
+    }
+
+    // One thread's tree, and the buffers it searches with
+    private static final class Searcher{
+        private final GameState root;
+        private final GameState work;
+        private final int seat;
+        private final long[] known;
+        private final long allKnown;
+        private final RandomSource rand;
+        private final Node tree;
+        private final byte[] unseen;
+        private long playouts;
+
+        Searcher(GameState root, int seat, long[] known, RandomSource rand){
+            this.root = root;
+            this.work = new GameState(root.getNumPlayers(), root.getHandSize());
+            this.seat = seat;
+            this.known = known;
+            long all = 0;
+            for (long k : known){
+                all |= k;
+            }
+            this.allKnown = all;
+            this.rand = rand;
+            this.tree = new Node(-1, -1, null);
+            this.unseen = new byte[Card.count()];
+        }
+
+        // Always completes at least one playout
+        void run(long deadline){
+            do{
+                iterate();
+                playouts++;
+            } while (System.nanoTime() < deadline);
+        }
+
+        void addRootVisits(long[] visits){
+            for (Node c = tree.child; c != null; c = c.sibling){
+                visits[c.move] += c.visits;
+            }
+        }
+
+        private void iterate(){
+            determinize();
+
+            // Selection, then one expansion
+            Node node = tree;
+            while (!work.isOver()){
+                long legal = work.legalMoves();
+                long tried = 0;
+                Node best = null;
+                double bestScore = -1;
+                for (Node c = node.child; c != null; c = c.sibling){
+                    long b = 1L << c.move;
+                    if ((legal & b) != 0){
+                        tried |= b;
+                        c.available++;
+                        double score = c.reward / c.visits + EXPLORATION
+                            * Math.sqrt(Math.log(c.available) / c.visits);
+                        if (score > bestScore){
+                            bestScore = score;
+                            best = c;
+                        }
+                    }
+                }
+                long untried = legal & ~tried;
+                if (untried != 0){
+                    int move = pick(untried);
+                    Node child = new Node(move, work.toMove(), node);
+                    child.available = 1;
+                    child.sibling = node.child;
+                    node.child = child;
+                    work.apply(move);
+                    node = child;
+                    break;
+                }
+                work.apply(best.move);
+                node = best;
+            }
+
+            // Playout
+            int lastRound = root.getRound() + MAX_PLAYOUT_ROUNDS;
+            while (!work.isOver() && work.getRound() < lastRound){
+                work.apply(playoutMove(work.legalMoves()));
+            }
+
+            // Every node is scored for the player who made its move
+            int loser = work.isOver() ? work.getLoser() : -1;
+            for (Node n = node; n != tree; n = n.parent){
+                n.visits++;
+                n.reward += loser == -1 ? 0.5 : n.mover == loser ? 0 : 1;
+            }
+            tree.visits++;
+        }
+
+        // Deals every card this player cannot see at random, keeping the
+        //      deck and every other hand at its real size, and the cards
+        //      known to be in a hand in it
+        private void determinize(){
+            root.copyInto(work);
+            long seen = root.getHand(seat) | root.getTable() | root.getDiscarded()
+                | allKnown;
+            int n = 0;
+            for (long m = root.getCards() & ~seen; m != 0; m &= m - 1){
+                unseen[n++] = (byte) Long.numberOfTrailingZeros(m);
+            }
+            for (int i = n - 1; i > 0; i--){
+                int j = rand.nextInt(i + 1);
+                byte t = unseen[i];
+                unseen[i] = unseen[j];
+                unseen[j] = t;
+            }
+
+            int k = root.getDeckSize();
+            work.setDeck(unseen, k);
+            for (int s = 0; s < root.getNumPlayers(); s++){
+                if (s != seat){
+                    long hand = known[s];
+                    for (int c = Long.bitCount(root.getHand(s) & ~hand); c > 0; c--){
+                        hand |= 1L << unseen[k++];
+                    }
+                    work.setHand(s, hand);
+                }
+            }
+        }
+
+        // Defends with the lowest card that beats, usually;
+        //      attacks with the lowest card, or passes half the time
+        private int playoutMove(long legal){
+            long cards = legal & CardSet.ALL;
+            if (work.getPhase() == GameState.DEFEND){
+                if (cards == 0 || rand.nextInt(8) == 0){
+                    return GameState.TAKE;
+                }
+                return cheapest(cards);
+            }
+            if (cards == 0){
+                return GameState.PASS;
+            }
+            if ((legal & GameState.PASS_BIT) != 0 && rand.nextInt(2) == 0){
+                return GameState.PASS;
+            }
+            return cheapest(cards);
+        }
+
+        // Card ids are ordered by face, so the lowest bit is the lowest card
+        private int cheapest(long cards){
+            long plain = cards & ~work.getTrump().getTrumpMask();
+            return Long.numberOfTrailingZeros(plain != 0 ? plain : cards);
+        }
+
+        // A uniformly random move from the mask
+        private int pick(long moves){
+            for (int r = rand.nextInt(Long.bitCount(moves)); r > 0; r--){
+                moves &= moves - 1;
+            }
+            return Long.numberOfTrailingZeros(moves);
+        }
+    }
+
+
+
+
+    /*********************
+     * PROGRAM EXECUTION *
+     * ******************/
+
+    public static void main(String[] args){
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_BUDGET_MILLIS;
+        int numPlayers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1L;
+
+        IsmctsStrategy ismcts = new IsmctsStrategy(millis);
+        GameConfig config = new GameConfig(numPlayers, 6, false, seed);
+        int losses = 0;
+        int draws = 0;
+        for (int i = 0; i < games; i++){
+            GameResult result = DurakEngine.play(config.withSeed(seed + i),
+                    GameEventListener.NONE, ismcts);
+            if (result.isDraw()){
+                draws++;
+            }
+            else if (result.getLoserSeat() == 0){
+                losses++;
+            }
+        }
+
+        System.out.println("Seat 0 (ISMCTS, " + millis + " ms, " + ismcts.threads
+                + " threads) lost " + losses + " of " + games + " games ("
+                + String.format("%.1f", 100.0 * losses / games) + "%, "
+                + String.format("%.1f", 100.0 / numPlayers) + "% by chance)");
+        System.out.println("Draws: " + draws);
+        System.out.println(ismcts.getDecisions() + " decisions, "
+                + String.format("%.0f", ismcts.getPlayoutsPerSecond()) + " playouts/s");
+    }
+}
@@ -0,0 +1,454 @@
+/* Author: Daniel Hammer
+ *
+ * LockstepSimulator class
+ *
+ * A second engine for headless batches of default NPCs, built for speed:
+ *      a block of games (512 by default) is kept in flat primitive arrays,
+ *      one entry per game (struct of arrays), and played in lockstep:
+ *      one round of every game still going, then the refill of every
+ *      one, then the end-of-game check of every one, until all are done
+ * There are no objects per game, per card, or per move, and no listeners
+ *
+ * Every hand and the table are card masks (see CardSet), so each rule is a
+ *      few bitwise operations on all 52 cards at once (SWAR): "can beat"
+ *      is the hand ANDed with the attack's beaters, "any matching suit"
+ *      the hand ANDed with MoveGenerator.suitCover() of the table
+ *
+ * The rules, and every draw from each game's SplitMix stream, follow
+ *      Durak.round(), Player.attack(), Player.defend() and
+ *      Game.dealCardsToAllPlayers()
+ *      exactly, so a game plays out the same as in the object engine from
+ *      the same seed; check() plays both and compares every result
+ * Games are seeded as BatchRunner seeds them, so a batch gives the same
+ *      totals from either engine
+ *
+ * Only one deck (STANDARD or SHORT) and no fixed deal are supported
+ *
+ * Usage: java LockstepSimulator [games] [players] [seed] [block]
+ *          [--check=<games>]
+ */
+
+import java.util.ArrayList;
+
+public class LockstepSimulator{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    public static final int DEFAULT_BLOCK = 512;
+
+    // One bit in every nibble: all thirteen cards of suit 0
+    private static final long SUIT_0 = 0x1111111111111L;
+
+    // As in Durak: attacks per round
+    private static final int MAX_ATTACKS = TableRound.MAX_ATTACKS;
+
+    // Default NPCs attack and defend when a draw in [1, 100] is below this
+    private static final int PERCENT = 100;
+
+    // The cards that beat each card, by trump suit (see TrumpContext)
+    private static final long[][] BEATERS = new long[Suit.values().length][];
+
+    static{
+        for (Suit s : Suit.values()){
+            long[] b = new long[Card.count()];
+            for (int id = 0; id < b.length; id++){
+                b[id] = TrumpContext.of(s).beaters(Card.byId(id));
+            }
+            BEATERS[s.ordinal()] = b;
+        }
+    }
+
+    private final GameConfig config;
+    private final int numPlayers;
+    private final int shoeSize;
+    private final int handSize;
+    private final int blockSize;
+
+    // The unshuffled shoe, as Game.buildDeck() builds it
+    private final byte[] shoe;
+
+    // Per game; hands has numPlayers entries per game and deck shoeSize
+    private final long[] rng;
+    private final long[] hands;
+    private final byte[] deck;
+    private final int[] deckLeft;
+    private final int[] trump;
+    private final long[] seated;
+    private final int[] defender;
+    private final int[] rounds;
+    private final int[] loser;
+    private final int[] cardsLeft;
+
+    // The games of the block still being played
+    private final int[] active;
+    private int numActive;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    public LockstepSimulator(GameConfig config, int blockSize){
+        if (config.getDecks() != 1 || config.getDeal() != null){
+            throw new IllegalArgumentException("the lockstep engine plays one"
+                    + " shuffled deck only, not " + config);
+        }
+        if (blockSize < 1){
+            throw new IllegalArgumentException("block size must be positive");
+        }
+        this.config = config;
+        this.numPlayers = config.getNumPlayers();
+        this.shoeSize = config.getShoeSize();
+        this.handSize = Math.min(config.getInitialHandSize(), shoeSize / numPlayers);
+        this.blockSize = blockSize;
+
+        this.shoe = new byte[shoeSize];
+        Face[] faces = Face.values();
+        int n = 0;
+        for (Suit s : Suit.values()){
+            for (int f = config.getDeckType().getLowest().ordinal(); f < faces.length; f++){
+                shoe[n++] = (byte) Card.of(s, faces[f]).getId();
+            }
+        }
+
+        this.rng = new long[blockSize];
+        this.hands = new long[blockSize * numPlayers];
+        this.deck = new byte[blockSize * shoeSize];
+        this.deckLeft = new int[blockSize];
+        this.trump = new int[blockSize];
+        this.seated = new long[blockSize];
+        this.defender = new int[blockSize];
+        this.rounds = new int[blockSize];
+        this.loser = new int[blockSize];
+        this.cardsLeft = new int[blockSize];
+        this.active = new int[blockSize];
+    }
+
+    public LockstepSimulator(GameConfig config){
+        this(config, DEFAULT_BLOCK);
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public int getBlockSize(){
+        return this.blockSize;
+    }
+
+    // The outcome of game 'g' of the last block played
+    // A loser seat of -1 is a draw, and GameResult.STOPPED a game stopped
+    //      at Durak.MAX_ROUNDS
+    public int getLoserSeat(int g){
+        return this.loser[g];
+    }
+
+    public int getRoundsPlayed(int g){
+        return this.rounds[g];
+    }
+
+    public int getCardsLeft(int g){
+        return this.cardsLeft[g];
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // Plays games 0 to 'games' - 1 of the batch and returns the totals
+    public BatchResult run(long games){
+        BatchResult result = new BatchResult(numPlayers);
+        long start = System.nanoTime();
+        for (long first = 0; first < games; first += blockSize){
+            int n = (int) Math.min(blockSize, games - first);
+            playBlock(first, n);
+            for (int g = 0; g < n; g++){
+                result.record(loser[g], rounds[g], cardsLeft[g]);
+            }
+        }
+        result.setElapsedNanos(System.nanoTime() - start);
+        return result;
+    }
+
+    // Plays games 'first' to 'first' + n - 1 of the batch in lockstep
+    public void playBlock(long first, int n){
+        if (n > blockSize){
+            throw new IllegalArgumentException("a block holds at most "
+                    + blockSize + " games");
+        }
+        for (int g = 0; g < n; g++){
+            rng[g] = BatchRunner.seedFor(config.getSeed(), first + g);
+            setUp(g);
+            refill(g);
+            active[g] = g;
+        }
+        numActive = n;
+        while (numActive > 0){
+            for (int k = 0; k < numActive; k++){
+                playRound(active[k]);
+            }
+            for (int k = 0; k < numActive; k++){
+                refill(active[k]);
+            }
+            int kept = 0;
+            for (int k = 0; k < numActive; k++){
+                if (!isOver(active[k])){
+                    active[kept++] = active[k];
+                }
+            }
+            numActive = kept;
+        }
+    }
+
+    // Shuffles the game's deck and draws its trump, as Game.shuffle()
+    //      and Durak.setTrumpSuit() do
+    private void setUp(int g){
+        int off = g * shoeSize;
+        System.arraycopy(shoe, 0, deck, off, shoeSize);
+        for (int i = shoeSize - 1; i > 0; i--){
+            int j = nextInt(g, i + 1);
+            byte c = deck[off + i];
+            deck[off + i] = deck[off + j];
+            deck[off + j] = c;
+        }
+        trump[g] = deck[off + nextInt(g, shoeSize)] & 3;
+        deckLeft[g] = shoeSize;
+        for (int s = 0; s < numPlayers; s++){
+            hands[g * numPlayers + s] = 0;
+        }
+        seated[g] = numPlayers == 64 ? -1L : (1L << numPlayers) - 1;
+        defender[g] = 0;
+        rounds[g] = 0;
+    }
+
+    // One round of Durak.round(), with Player.attack() and Player.defend()
+    //      inlined for default NPCs
+    private void playRound(int g){
+        rounds[g]++;
+        int d = next(g, defender[g]);
+        int a = next(g, d);
+        defender[g] = d;
+        int hb = g * numPlayers;
+        long[] beat = BEATERS[trump[g]];
+        long trumps = SUIT_0 << trump[g];
+        int size = Long.bitCount(seated[g]);
+
+        // The first attacker leads with a random card
+        long hand = hands[hb + a];
+        int c = select(hand, nextInt(g, Long.bitCount(hand)));
+        hands[hb + a] = hand & ~(1L << c);
+        long table = 1L << c;
+        int attacks = 1;
+
+        while (true){
+            // willDefend() is only asked if the defender can beat it
+            long beaters = hands[hb + d] & beat[c];
+            if (beaters == 0 || nextInt(g, 100) + 1 >= PERCENT){
+                hands[hb + d] |= table;
+                return;
+            }
+            table |= defend(g, hb + d, beaters, c);
+            if (attacks >= MAX_ATTACKS || hands[hb + d] == 0){
+                return;
+            }
+
+            // Once round the table from the first attacker, leaving out
+            //      the defender, until someone can and will throw in
+            long pick = 0;
+            int seat = a;
+            for (int i = size - 1; i > 0; i--, seat = next(g, seat)){
+                long legal = hands[hb + seat] & MoveGenerator.suitCover(table);
+                if (legal != 0 && nextInt(g, 100) + 1 < PERCENT){
+                    pick = legal & ~trumps;
+                    pick = Long.lowestOneBit(pick != 0 ? pick : legal);
+                    break;
+                }
+            }
+            if (pick == 0){
+                return;
+            }
+            hands[hb + seat] &= ~pick;
+            table |= pick;
+            c = Long.numberOfTrailingZeros(pick);
+            attacks++;
+        }
+    }
+
+    // Plays the defender's lowest beater of the attack's suit, or else
+    //      their lowest trump, and returns it
+    private long defend(int g, int h, long beaters, int attack){
+        long same = beaters & (SUIT_0 << (attack & 3));
+        long card = Long.lowestOneBit(same != 0 ? same : beaters);
+        hands[h] &= ~card;
+        return card;
+    }
+
+    // Game.dealCardsToAllPlayers(): passes in seat order until one deals
+    //      nothing or the deck is empty
+    private void refill(int g){
+        int size = Long.bitCount(seated[g]);
+        int hb = g * numPlayers;
+        int off = g * shoeSize;
+        boolean dealt = true;
+        while (dealt && deckLeft[g] != 0){
+            dealt = false;
+            int s = Long.numberOfTrailingZeros(seated[g]);
+            for (int i = size; i > 0; i--, s = next(g, s)){
+                if (Long.bitCount(hands[hb + s]) < handSize && deckLeft[g] != 0){
+                    hands[hb + s] |= 1L << deck[off + --deckLeft[g]];
+                    dealt = true;
+                }
+            }
+        }
+    }
+
+    // Game.removeFinishedPlayers() and Durak.isGameOver()
+    // Returns true, and fills in the outcome, once the game is over
+    private boolean isOver(int g){
+        int hb = g * numPlayers;
+        if (deckLeft[g] == 0){
+            for (long m = seated[g]; m != 0; m &= m - 1){
+                int s = Long.numberOfTrailingZeros(m);
+                if (hands[hb + s] == 0){
+                    seated[g] &= ~(1L << s);
+                }
+            }
+        }
+        int size = Long.bitCount(seated[g]);
+        if (size == 1){
+            loser[g] = Long.numberOfTrailingZeros(seated[g]);
+            cardsLeft[g] = Long.bitCount(hands[hb + loser[g]]);
+            return true;
+        }
+        if (size == 0 || rounds[g] >= Durak.MAX_ROUNDS){
+            loser[g] = size == 0 ? -1 : GameResult.STOPPED;
+            cardsLeft[g] = 0;
+            return true;
+        }
+        return false;
+    }
+
+    // The next seat after 'seat' still in the game (see SeatRing)
+    private int next(int g, int seat){
+        long higher = seated[g] & (-2L << seat);
+        return Long.numberOfTrailingZeros(higher != 0 ? higher : seated[g]);
+    }
+
+    // The id of the n-th lowest card (0-based) in 'mask'
+    private static int select(long mask, int n){
+        for (int i = 0; i < n; i++){
+            mask &= mask - 1;
+        }
+        return Long.numberOfTrailingZeros(mask);
+    }
+
+    // SplitMix.nextInt() on game g's stream
+    private int nextInt(int g, int bound){
+        int r = (int) (nextLong(g) >>> 33);
+        int m = bound - 1;
+        if ((bound & m) == 0){
+            return (int) ((bound * (long) r) >> 31);
+        }
+        int u = r;
+        while (u - (r = u % bound) + m < 0){
+            u = (int) (nextLong(g) >>> 33);
+        }
+        return r;
+    }
+
+    private long nextLong(int g){
+        return SplitMix.mix64(rng[g] += SplitMix.GOLDEN_GAMMA);
+    }
+
+
+
+
+    /*********************
+     * DIFFERENTIAL TEST *
+     * ******************/
+
+    // Plays games 0 to 'games' - 1 of the batch on both engines and
+    //      returns the number whose results differ, printing the first few
+    //      and how fast each engine played
+    public static long check(GameConfig config, long games){
+        LockstepSimulator sim = new LockstepSimulator(config);
+        long mismatches = 0;
+        long engineNanos = 0;
+        long lockstepNanos = 0;
+        GameResult[] results = new GameResult[sim.blockSize];
+        for (long first = 0; first < games; first += sim.blockSize){
+            int n = (int) Math.min(sim.blockSize, games - first);
+            long start = System.nanoTime();
+            for (int g = 0; g < n; g++){
+                results[g] = DurakEngine.play(config.withSeed(
+                            BatchRunner.seedFor(config.getSeed(), first + g)));
+            }
+            long mid = System.nanoTime();
+            sim.playBlock(first, n);
+            lockstepNanos += System.nanoTime() - mid;
+            engineNanos += mid - start;
+            for (int g = 0; g < n; g++){
+                GameResult r = results[g];
+                if (r.getOutcome() != sim.loser[g] || r.getRoundsPlayed() != sim.rounds[g]
+                        || r.getCardsLeft() != sim.cardsLeft[g]){
+                    if (mismatches++ < 10){
+                        System.out.println("game " + (first + g) + ": engine " + r
+                                + ", lockstep loser " + sim.loser[g] + " after "
+                                + sim.rounds[g] + " rounds with " + sim.cardsLeft[g]
+                                + " cards");
+                    }
+                }
+            }
+        }
+        System.out.println(String.format("object engine %.0f games/s, lockstep %.0f games/s",
+                    games / (engineNanos / 1e9), games / (lockstepNanos / 1e9)));
+        return mismatches;
+    }
+
+
+
+
+    /*********************
+     * PROGRAM EXECUTION *
+     * ******************/
+
+    public static void main(String[] args){
+        long check = 0;
+        ArrayList<String> positional = new ArrayList<String>();
+        for (String arg : args){
+            if (arg.startsWith("--check=")){
+                check = Long.parseLong(arg.substring("--check=".length()));
+            }
+            else{
+                positional.add(arg);
+            }
+        }
+        args = positional.toArray(new String[0]);
+
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000L;
+        int numPlayers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+        int block = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_BLOCK;
+        GameConfig config = new GameConfig(numPlayers, 6, false, seed);
+
+        if (check > 0){
+            long mismatches = check(config, check);
+            System.out.println(check + " games checked against the object engine, "
+                    + mismatches + " differ");
+            if (mismatches != 0){
+                System.exit(1);
+            }
+        }
+        System.out.println(new LockstepSimulator(config, block).run(games));
+    }
+}
@@ -0,0 +1,78 @@
+/* Author: Daniel Hammer
+ *
+ * MoveGenerator class
+ *
+ * The one place that decides which cards may legally be played
+ * Moves are returned as CardSet masks (one bit per playable card), so
+ *      generating them never allocates and costs a handful of
+ *      bit operations
+ *
+ * Attacking: the first card of a round may be anything in the hand;
+ *      after that, only cards whose suit is already on the table
+ * Defending: a higher card of the attacked suit, or any trump if the
+ *      attack is not a trump (see TrumpContext)
+ */
+
+public final class MoveGenerator{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // One bit in every nibble: all thirteen cards of suit 0
+    private static final long SUIT_0 = 0x1111111111111L;
+
+    private MoveGenerator(){
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // The cards in 'hand' that may be thrown in when 'table' holds every
+    //      card played so far this round (attacks and defenses)
+    public static long attackMoves(long hand, long table){
+        return table == 0 ? hand : hand & suitCover(table);
+    }
+
+    // The cards in 'hand' that beat 'attack'
+    public static long defenseMoves(long hand, Card attack, TrumpContext trump){
+        return hand & trump.beaters(attack);
+    }
+
+    // Same as above, for a card given by id
+    public static long defenseMoves(long hand, int attackId, TrumpContext trump){
+        return hand & trump.beaters(Card.byId(attackId));
+    }
+
+    // Returns a mask of every card whose suit appears in 'cards'
+    // Folds all thirteen nibbles onto the lowest one, then copies that
+    //      suit pattern back into every nibble
+    public static long suitCover(long cards){
+        long x = cards;
+        x |= x >>> 4;
+        x |= x >>> 8;
+        x |= x >>> 16;
+        x |= x >>> 32;
+        return SUIT_0 * (x & 0xF);
+    }
+
+    // Writes the card ids in 'moves' to 'out', lowest first
+    // Returns the number of moves written
+    public static int toArray(long moves, byte[] out){
+        int n = 0;
+        while (moves != 0){
+            out[n++] = (byte) Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+        }
+        return n;
+    }
+
+    // The number of moves in the mask
+    public static int count(long moves){
+        return Long.bitCount(moves);
+    }
+}
@@ -0,0 +1,137 @@
+/* Author: Daniel Hammer
+ *
+ * MulticastListener class
+ *
+ * A GameEventListener that passes every event on to several others,
+ *      in the order they were given, so one game can be logged, counted,
+ *      and printed at the same time
+ */
+
+public class MulticastListener implements GameEventListener{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    private final GameEventListener[] listeners;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    public MulticastListener(GameEventListener... listeners){
+        this.listeners = listeners.clone();
+    }
+
+    // Skips NONE, and does without a MulticastListener where it can
+    public static GameEventListener of(GameEventListener a, GameEventListener b){
+        if (a == GameEventListener.NONE){
+            return b;
+        }
+        if (b == GameEventListener.NONE){
+            return a;
+        }
+        return new MulticastListener(a, b);
+    }
+
+
+
+
+    /*****************
+     * EVENT METHODS *
+     * **************/
+
+    @Override
+    public void gameStarted(long seed, int numPlayers, TrumpContext trump){
+        for (GameEventListener l : listeners){
+            l.gameStarted(seed, numPlayers, trump);
+        }
+    }
+
+    @Override
+    public void shoeUsed(DeckType deckType, int decks){
+        for (GameEventListener l : listeners){
+            l.shoeUsed(deckType, decks);
+        }
+    }
+
+    @Override
+    public void startingHandDealt(Player player){
+        for (GameEventListener l : listeners){
+            l.startingHandDealt(player);
+        }
+    }
+
+    @Override
+    public void roundStarted(int round, Player defender){
+        for (GameEventListener l : listeners){
+            l.roundStarted(round, defender);
+        }
+    }
+
+    @Override
+    public void attackPlayed(int attackNumber, Player attacker, Card card){
+        for (GameEventListener l : listeners){
+            l.attackPlayed(attackNumber, attacker, card);
+        }
+    }
+
+    @Override
+    public void defended(Player defender, Card attack, Card defense){
+        for (GameEventListener l : listeners){
+            l.defended(defender, attack, defense);
+        }
+    }
+
+    @Override
+    public void pickedUp(Player defender, CardSet cards){
+        for (GameEventListener l : listeners){
+            l.pickedUp(defender, cards);
+        }
+    }
+
+    @Override
+    public void maxAttacksReached(Player defender){
+        for (GameEventListener l : listeners){
+            l.maxAttacksReached(defender);
+        }
+    }
+
+    @Override
+    public void playerFinished(Player player){
+        for (GameEventListener l : listeners){
+            l.playerFinished(player);
+        }
+    }
+
+    @Override
+    public void loserDeclared(Player loser){
+        for (GameEventListener l : listeners){
+            l.loserDeclared(loser);
+        }
+    }
+
+    @Override
+    public void draw(){
+        for (GameEventListener l : listeners){
+            l.draw();
+        }
+    }
+
+    @Override
+    public void roundLimitReached(int rounds){
+        for (GameEventListener l : listeners){
+            l.roundLimitReached(rounds);
+        }
+    }
+
+    @Override
+    public void gameEnded(GameResult result){
+        for (GameEventListener l : listeners){
+            l.gameEnded(result);
+        }
+    }
+}
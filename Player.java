@@ -8,9 +8,6 @@
  */
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Random;
-import java.util.Scanner;
 
 public class Player{
     
@@ -21,11 +18,30 @@ public class Player{
     private String playerName;
     private boolean isVictorious;
     private boolean isUser;
-    private ArrayList<Card> hand;
-    private final int PERCENT_TO_ATTACK;
-    private final int PERCENT_TO_DEFEND;
+    private int seat;
+    private CardSet hand;
+    private TrumpContext trump;
+    private RandomSource rand;
+    private GameEventListener listener;
 
-    private Scanner sc = new Scanner(System.in);
+    // Makes this NPC's decisions, when set (see Strategy)
+    // 'plannedAttack' holds the card chosen in willAttack() until attack()
+    private Strategy strategy;
+    private TableView table;
+    private Card plannedAttack;
+
+    // Chances (out of 100) that this NPC attacks or defends when it can
+    private int percentToAttack;
+    private int percentToDefend;
+
+    // NPC decisions made so far, for sampling them in EngineMetrics
+    private int decisions;
+
+    // Where the user's card choices are read from
+    private InputProvider input = ConsoleInput.get();
+
+    // The hand in display order, filled by sortHand() and reused
+    private Card[] sorted = new Card[0];
 
 
 
@@ -37,9 +53,11 @@ public class Player{
     public Player(String playerName, int atk, int def){
         this.playerName = playerName;
         this.isVictorious = false;
-        this.hand = new ArrayList<Card>();
-        this.PERCENT_TO_ATTACK = atk;
-        this.PERCENT_TO_DEFEND = def;
+        this.hand = new CardSet();
+        this.percentToAttack = atk;
+        this.percentToDefend = def;
+        this.listener = GameEventListener.NONE;
+        this.rand = new SplitMix(System.nanoTime());
     }
 
     // User constructor
@@ -47,9 +65,11 @@ public class Player{
         this.playerName = "User";
         this.isVictorious = false;
         this.isUser = true;
-        this.hand = new ArrayList<Card>();
-        this.PERCENT_TO_ATTACK = 100;
-        this.PERCENT_TO_DEFEND = 100;
+        this.hand = new CardSet();
+        this.percentToAttack = 100;
+        this.percentToDefend = 100;
+        this.listener = GameEventListener.NONE;
+        this.rand = new SplitMix(System.nanoTime());
     }
 
     
@@ -66,10 +86,45 @@ public class Player{
         this.playerName = playerName;
     }
     
-    public ArrayList<Card> getHand(){
+    public CardSet getHand(){
         return this.hand;
     }
 
+    // Sets where the player's random decisions come from
+    // Normally the game's own RandomSource, so the game can be replayed
+    public void setRandom(RandomSource rand){
+        this.rand = rand;
+    }
+
+    public RandomSource getRandom(){
+        return this.rand;
+    }
+
+    // Hands this NPC's decisions to a Strategy; null restores the default
+    public void setStrategy(Strategy strategy){
+        this.strategy = strategy;
+    }
+
+    public Strategy getStrategy(){
+        return this.strategy;
+    }
+
+    // Changes this NPC's chances to attack and to defend, out of 100
+    public void setChances(int atk, int def){
+        this.percentToAttack = atk;
+        this.percentToDefend = def;
+    }
+
+    // Sets the game a Strategy may look at when deciding
+    public void setTableView(TableView table){
+        this.table = table;
+    }
+
+    // Tells the player which suit is trump for the current game
+    public void setTrump(TrumpContext trump){
+        this.trump = trump;
+    }
+
     public boolean getVictory(){
         return this.isVictorious;
     }
@@ -86,18 +141,40 @@ public class Player{
         this.isUser = bool;
     }
 
+    // Sets where a user's card choices are read from (the console by default)
+    public void setInput(InputProvider input){
+        this.input = input;
+    }
+
+    // The player's position in dealing order, fixed for the whole game
+    public int getSeat(){
+        return this.seat;
+    }
+
+    public void setSeat(int seat){
+        this.seat = seat;
+    }
+
+    // Sets who is told about this player's plays
+    public void setListener(GameEventListener listener){
+        this.listener = listener;
+    }
+
     public void removeCard(Card card){
         this.hand.remove(card);
     }
 
     public void addCard(Card card){
         this.hand.add(card);
-        Collections.sort(hand);
+    }
+
+    // Adds every card in the pile to the player's hand
+    public void addCards(CardSet pile){
+        this.hand.addAll(pile);
     }
     
     public void drawCard(ArrayList<Card> pile){
         this.hand.add(pile.remove(pile.size() - 1));
-        Collections.sort(hand);
     }
 
 
@@ -111,18 +188,51 @@ public class Player{
     // Generates a random number between 1 and 100
     // If the number is less than the percent needed, return true
     // else return false
+    // A player with a Strategy asks it instead, and remembers its card
     public boolean willAttack(){
-        Random rand = new Random();
+        if (EngineMetrics.ENABLED && sampleDecision()){
+            long start = System.nanoTime();
+            boolean will = decideToAttack();
+            EngineMetrics.get().decided(start);
+            return will;
+        }
+        return decideToAttack();
+    }
+
+    // True for the NPC decisions EngineMetrics should time (see there)
+    private boolean sampleDecision(){
+        return !isUser && (++decisions & EngineMetrics.DECISION_SAMPLE_MASK) == 0;
+    }
+
+    private boolean decideToAttack(){
+        // A user decides when asked for a card, and may pass there
+        if (isUser){
+            return true;
+        }
+        if (strategy != null){
+            // The first attack of a round is always made, in playAnAttack()
+            if (table.getTable() == 0){
+                return true;
+            }
+            long legal = MoveGenerator.attackMoves(hand.getBits(), table.getTable());
+            plannedAttack = legal == 0 ? null
+                : strategy.chooseAttack(this, table, legal, false);
+            return plannedAttack != null;
+        }
         int r = rand.nextInt(100) + 1;
 
-        return (r < PERCENT_TO_ATTACK) ? true : false;
+        return (r < percentToAttack) ? true : false;
     }
 
+    // A player with a Strategy, or the user, decides in returnHigherCard()
+    //      instead
     public boolean willDefend(){
-        Random rand = new Random();
+        if (strategy != null || isUser){
+            return true;
+        }
         int r = rand.nextInt(100) + 1;
 
-        return (r < PERCENT_TO_DEFEND) ? true : false;
+        return (r < percentToDefend) ? true : false;
     }
 
 
@@ -135,106 +245,132 @@ public class Player{
     // Returns true if the player has a card with the same suit as any card
     // in the passed pile (usually the 'defended' pile)
     // else returns false
-    public boolean canPlay(ArrayList<Card> pile){
-        if (pile.size() == 0){
+    public boolean canPlay(CardSet pile){
+        if (pile.isEmpty()){
             return true;
         }
-        for (Card c : this.hand){
-            for (Card def : pile){
-                if (c.getSuit().equals(def.getSuit())){
-                    return true;
-                }
-            }
-        }
-        return false;
+        return MoveGenerator.attackMoves(hand.getBits(), pile.getBits()) != 0;
     }
 
 
 
 
     // Plays a card from the player's hand
-    public Card playAnAttack(ArrayList<Card> pile){
+    public Card playAnAttack(CardSet pile){
+        if (EngineMetrics.ENABLED && sampleDecision()){
+            long start = System.nanoTime();
+            Card c = chooseAttack(pile);
+            EngineMetrics.get().decided(start);
+            return c;
+        }
+        return chooseAttack(pile);
+    }
+
+    private Card chooseAttack(CardSet pile){
 
         if (isUser){
 
             Card currentAttack = null;
             int handIndex = 0;
-            ArrayList<Integer> legalCardChoices = new ArrayList<Integer>();
+            int size = sortHand();
 
             // If the user is initiating the attack, let the user pick from any
             //      card in his/her hand
-            if (pile.size() == 0){
+            if (pile.isEmpty()){
                     System.out.println("\tYou may attack with any card from your hand");
                     System.out.println("\n\tEnter a number to play that card");
 
-                    for (Card c : this.hand){
-                        System.out.println("\t" + (handIndex + 1) + " | " + c);
-                        handIndex++;
+                    for (; handIndex < size; handIndex++){
+                        System.out.println("\t" + (handIndex + 1) + " | "
+                                + trump.display(sorted[handIndex]));
                     }
                     // Get a valid card choice from the user
                 do{
                     System.out.print("\n\t> ");
-                    handIndex = Integer.parseInt(sc.nextLine()) - 1;
-                } while (handIndex >= this.hand.size() || handIndex < 0);
+                    handIndex = input.nextInt() - 1;
+                } while (handIndex >= size || handIndex < 0);
 
-                currentAttack = this.hand.get(handIndex);
+                currentAttack = sorted[handIndex];
                 this.removeCard(currentAttack);
             }
 
             // If the user is joining a pre-existing attack, let the user pick from
             //      any card in his/her hand that is legal for the attack
             else{
-                ArrayList<Suit> legalSuitsToPlay = new ArrayList<Suit>();
-
-                // Compile a list of legal suits
-                for (Card c : pile){
-                    if (!(legalSuitsToPlay.contains(c.getSuit()))){
-                        legalSuitsToPlay.add(c.getSuit());
-                    }
-                }
+                // Every card of a suit already on the table is legal
+                long legalCardsToPlay = MoveGenerator.attackMoves(
+                        hand.getBits(), pile.getBits());
 
                 System.out.println("\n\tYou may attack with any of the following cards"
                             + " or press '0' to pass");
 
-                for (Card c : this.hand){
-                    if(legalSuitsToPlay.contains(c.getSuit())){
-                        System.out.println("\t" + (handIndex + 1)+ " | " + c);
-                        legalCardChoices.add(handIndex);
+                for (; handIndex < size; handIndex++){
+                    if (isChoice(handIndex, size, legalCardsToPlay)){
+                        System.out.println("\t" + (handIndex + 1)+ " | "
+                                + trump.display(sorted[handIndex]));
                     }
-                    handIndex++;
                 }
 
                 // Get a valid card choice from the user
                 do{
                     System.out.print("\n\t> ");
-                    handIndex = Integer.parseInt(sc.nextLine()) - 1;
+                    handIndex = input.nextInt() - 1;
                     if (handIndex == -1){
                         return null;
                     }
-                } while (!(legalCardChoices.contains(handIndex)));
+                } while (!isChoice(handIndex, size, legalCardsToPlay));
 
-                currentAttack = this.hand.get(handIndex);
+                currentAttack = sorted[handIndex];
                 this.removeCard(currentAttack);
             }
             System.out.println();
             return currentAttack;
         }
 
+        // If a Strategy plays for this player, let it pick
+        else if (strategy != null && pile.isEmpty()){
+            Card c = strategy.chooseAttack(this, table, hand.getBits(), true);
+            this.removeCard(c);
+            return c;
+        }
+
         // If the player is NOT the user, randomly pick a card from the hand
         else{
-            Random rand = new Random();
             int r = rand.nextInt(this.hand.size());
-            System.out.println(this.getName() + " played " + this.hand.get(r));
-            return this.hand.remove(r);
+            Card c = this.hand.select(CardSet.ALL, r);
+            this.removeCard(c);
+            return c;
         }
     }
 
 
 
 
-    // Sorts a player's hand
-    public void sortHand(){
-        Collections.sort(this.hand);
+    // Puts the player's hand in 'sorted' lowest rank first, with trumps
+    //      last, and returns how many cards it holds
+    private int sortHand(){
+        int size = this.hand.size();
+        if (sorted.length < size){
+            sorted = new Card[Math.max(size, 2 * sorted.length)];
+        }
+        int i = 0;
+        for (Card c : this.hand){
+            if (!trump.isTrump(c)){
+                sorted[i++] = c;
+            }
+        }
+        for (Card c : this.hand){
+            if (trump.isTrump(c)){
+                sorted[i++] = c;
+            }
+        }
+        return size;
+    }
+
+    // Whether the user may pick the card at 'index' of the sorted hand,
+    //      one of the 'legal' cards
+    private boolean isChoice(int index, int size, long legal){
+        return index >= 0 && index < size && (legal & CardSet.bit(sorted[index])) != 0;
     }
 
 
@@ -244,236 +380,161 @@ public class Player{
     // or if the player has a trump card and, if the card being played is also
     // a trump, the player's card is higher, return true, else return false
     public boolean hasHigherCard(Card toBeat){
-        for (Card c : this.hand){
-            if (c.getSuit().equals(toBeat.getSuit())){
-                if (c.getRank() > toBeat.getRank()){
-                    return true;
-                }
-            }
-            else if (c.isTrump()){
-                if (toBeat.isTrump() && c.getRank() < toBeat.getRank()){
-                    return false;
-                }
-                return true;
-            }
-        }
-        return false;
+        return MoveGenerator.defenseMoves(hand.getBits(), toBeat, trump) != 0;
     }
 
 
 
 
-    // Loops through the player's cards
+    // Looks through the player's cards
     // If the player has a higher card than the one being played, return it
     // If the player has a trump card and, if the card being played
     //      is also a trump, the player's card is higher, return it
-    // The double loop ensures that players will retain trump cards if possible
+    // Cards of the same suit are tried first so that players will retain
+    //      trump cards if possible
     public Card returnHigherCard(Card toBeat){
+        if (EngineMetrics.ENABLED && sampleDecision()){
+            long start = System.nanoTime();
+            Card c = chooseDefense(toBeat);
+            EngineMetrics.get().decided(start);
+            return c;
+        }
+        return chooseDefense(toBeat);
+    }
+
+    private Card chooseDefense(Card toBeat){
+
+        long beaters = MoveGenerator.defenseMoves(hand.getBits(), toBeat, trump);
 
         if (isUser){
 
             Card currentDefense;
             int handIndex = 0;
-            ArrayList<Integer> legalCardChoices = new ArrayList<Integer>(0);
+            int size = sortHand();
 
             System.out.println("\n\tYou may defend with any of the following cards"
                             + " or press '0' to forfeit and pick up the attack");
 
             // Build a list of legal cards to play
-            for (Card c : this.hand){
-                if ((c.getSuit().equals(toBeat.getSuit())
-                        || (c.isTrump() && toBeat.isTrump()))
-                        && (c.getRank() > toBeat.getRank())
-                        || (c.isTrump() && !(toBeat.isTrump()))){
-
-                    System.out.println("\t" + (handIndex + 1) + " | " + c);
-                    legalCardChoices.add(handIndex);
+            for (; handIndex < size; handIndex++){
+                if (isChoice(handIndex, size, beaters)){
+                    System.out.println("\t" + (handIndex + 1) + " | "
+                            + trump.display(sorted[handIndex]));
                 }
-                handIndex++;
             }
 
             // Get a valid card choice from the user
             do{
                 System.out.print("\n\t> ");
-                handIndex = Integer.parseInt(sc.nextLine()) - 1;
+                handIndex = input.nextInt() - 1;
                 if (handIndex == -1){
                     return null;
                 }
-            } while (!(legalCardChoices.contains(handIndex)));
+            } while (!isChoice(handIndex, size, beaters));
 
-            currentDefense = this.hand.get(handIndex);
+            currentDefense = sorted[handIndex];
             this.removeCard(currentDefense);
             return currentDefense;
         }
 
+        // If a Strategy plays for this player, it may also pick up
+        else if (strategy != null){
+            Card c = strategy.chooseDefense(this, table, toBeat, beaters);
+            if (c != null){
+                this.removeCard(c);
+            }
+            return c;
+        }
+
         // If the player is NOT the user
         else{
-            // Randomly choose a higher-ranking card to play
-            for (Card c : this.hand){
-                if (c.getSuit().equals(toBeat.getSuit())){
-                    if (c.getRank() > toBeat.getRank()){
-                        this.hand.remove(c);
-                        return c;
-                    }
-                }
-            }
+            // Play the lowest higher-ranking card of the same suit
+            Card c = this.hand.lowest(beaters
+                    & CardSet.suitMask(toBeat.getSuit()));
             // If a higher ranking card cannot be found,
-            // randomly choose a valid trump
-            for (Card c : this.hand){
-                if (c.isTrump()){
-                    if (toBeat.isTrump() && c.getRank() < toBeat.getRank()){
-                        return null;
-                    }
-                    this.hand.remove(c);
-                    return c;
-                }
+            // play the lowest trump
+            if (c == null){
+                c = this.hand.lowest(beaters);
+            }
+            if (c != null){
+                this.removeCard(c);
             }
+            return c;
         }
-        return null;
     }
 
 
 
 
-    // Returns true if the attack was defended, false if not
-    public boolean attack(Player defender, ArrayList<Card> defended,
-            ArrayList<Card> attack, int atk){
+    // Plays this player's next card onto the table: the lead, which must be
+    //      made, when the table is empty, otherwise a throw-in
+    // Returns the card played, or null if the player passed
+    public Card attack(TableRound table){
+        Card c;
 
-        Card currentAttack;
-        Card currentDefense;
-        boolean hasPlayed = false;
-
-        // If this IS the first attack of the round
-        if (atk == 1){
-            System.out.print("\t");
-
-            currentAttack = this.playAnAttack(defended);
-
-            // If the defender has a higher card than the one being played,
-            // AND the defender chooses to attack, then attack
-            if (defender.hasHigherCard(currentAttack)
-                    && defender.willDefend()){
-
-                // Set the current defense to a higher card from the defender's hand
-                currentDefense = defender.returnHigherCard(currentAttack);
-                if (currentDefense == null){
-                    defender.addCard(currentAttack);
-                    return false;
-                }
-                System.out.print("\tBut " + defender.getName()
-                        + " has a higher card of ");
-                System.out.println(currentDefense);
-
-                // Attack successfully defended,
-                // So add those cards to the defended pile
-                defended.add(currentAttack);
-                defended.add(currentDefense);
-            }
-            // If either the defender cannot counter the attack or chose not to
-            // Pick up the attack card and end the turn
-            else{
-                System.out.println("\t" + defender.getName()
-                        + " will not fight the attack");
-                defender.addCard(currentAttack);
-                return false;
-            }
+        // The lead, and every card a user plays, is picked in playAnAttack()
+        if (table.isEmpty() || isUser){
+            c = this.playAnAttack(table.getCards());
         }
 
-        // If this is NOT the first attack of the round
+        // If the attacker is NOT the user
         else{
-
-            if (isUser){
-                currentAttack = this.playAnAttack(defended);
-
-                // If the user entered '0' to pass on an attack
-                if (currentAttack == null)
-                {
-                    return false;
-                }
-                attack.add(currentAttack);
+            long start = EngineMetrics.ENABLED && sampleDecision()
+                ? System.nanoTime() : 0;
+            // A Strategy already picked the card in willAttack()
+            if (strategy != null){
+                c = plannedAttack;
+                plannedAttack = null;
             }
-            
-            // If the attacker is NOT the user
+            // Play the lowest card with the same suit as one that has
+            //      already been played, keeping trumps if possible
             else{
-                // Loop through the attackers hand, returning a card with the same suit
-                //      as one that has already been played
-                for (Card c : this.hand){
-                    for (Card def : defended){
-                        if (hasPlayed == false){
-                            if (c.getSuit().equals(def.getSuit())){
-                                System.out.println("\t" + this.getName()
-                                        + " played " + c);
-                                attack.add(c);
-                                hasPlayed = true;
-                            }
-                        }
-                    }
+                long legal = MoveGenerator.attackMoves(
+                        hand.getBits(), table.getBits());
+                c = this.hand.lowest(legal & ~trump.getTrumpMask());
+                if (c == null){
+                    c = this.hand.lowest(legal);
                 }
+            }
+            if (EngineMetrics.ENABLED && start != 0){
+                EngineMetrics.get().decided(start);
+            }
+            if (c != null){
                 // Remove the played card from the attacker's hand
-                for (Card c : attack){
-                    if (this.getHand().contains(c)){
-                        this.removeCard(c);
-                    }
-                }
+                this.removeCard(c);
             }
         }
 
+        if (c != null){
+            table.attack(c);
+            listener.attackPlayed(table.size(), this, c);
+        }
+        return c;
+    }
 
 
 
-        // The defender must now defend, if the attack list is not empty
-        if (attack.size() != 0){
-            currentAttack = attack.remove(0);
-
-            if (!(defended.contains(currentAttack))){
-
-                // If the defender has a higher card, play it
-                // and add to the pile of successfully defended cards
-                if (defender.hasHigherCard(currentAttack)){
-                    currentDefense = defender.returnHigherCard(currentAttack);
 
-                    // If the user entered '0' and chose to pick up the attack
-                    if (currentDefense == null){
-                        defender.addCard(currentAttack);
+    // Answers the attack waiting on the table
+    // If the player has a higher card and chooses to defend, it is played
+    //      on the attack; otherwise the player picks up every card on the
+    //      table
+    // Returns true if the attack was beaten, false if not
+    public boolean defend(TableRound table){
+        Card currentAttack = table.getPending();
+        if (this.hasHigherCard(currentAttack) && this.willDefend()){
+            Card currentDefense = this.returnHigherCard(currentAttack);
 
-                        for (Card pickUp : attack){
-                            if (!(defender.getHand().contains(pickUp))){
-                                defender.addCard(pickUp);
-                            }
-                        }
-                        for (Card pickUp : defended){
-                            if (!(defender.getHand().contains(pickUp))){
-                                defender.addCard(pickUp);
-                            }
-                        }
-                        return false;
-                    }
-                    System.out.print("\tBut " + defender.getName()
-                            + " has a higher card of ");
-                    System.out.println(currentDefense);
-                    defended.add(currentDefense);
-                    defended.add(currentAttack);
-                }
-                // Otherwise, pick up all the cards on the table
-                else{
-                    System.out.println("\t" + defender.getName()
-                            + " will not fight the attack");
-                    defender.addCard(currentAttack);
-                    for (Card pickUp : attack){
-                        if (!(defender.getHand().contains(pickUp))){
-                            defender.addCard(pickUp);
-                        }
-                    }
-                    for (Card pickUp : defended){
-                        if (!(defender.getHand().contains(pickUp))){
-                            defender.addCard(pickUp);
-                        }
-                    }
-                    return false;
-                }
+            // A user who entered '0' (or a Strategy) may still pick up
+            if (currentDefense != null){
+                table.beat(currentDefense);
+                listener.defended(this, currentAttack, currentDefense);
+                return true;
             }
         }
-        return true;
+        listener.pickedUp(this, table.getCards());
+        this.addCards(table.getCards());
+        return false;
     }
 
 
@@ -486,8 +547,9 @@ public class Player{
     // Displays the player's name and all cards in his/her hand
     public void displayHand(){
         System.out.println(playerName + "'s hand: " + hand.size());
-        for (Card c : this.hand){
-            System.out.println("\t" + c);
+        int size = sortHand();
+        for (int i = 0; i < size; i++){
+            System.out.println("\t" + trump.display(sorted[i]));
         }
     }
 
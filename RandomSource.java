@@ -0,0 +1,28 @@
+/* Author: Daniel Hammer
+ *
+ * RandomSource interface
+ *
+ * Where every random decision in a game comes from: shuffling, picking the
+ *      trump, and whether (and with what) NPCs attack and defend
+ *
+ * A game is given one RandomSource and passes it to everything that needs
+ *      it, so a game started from the same seed plays out exactly the same
+ * split() returns an independent stream, for handing to another thread
+ *      or another game without sharing (and contending on) one generator
+ */
+
+public interface RandomSource{
+
+    // Returns a uniformly distributed int in [0, bound)
+    int nextInt(int bound);
+
+    // Returns a uniformly distributed long
+    long nextLong();
+
+    // Returns a new source whose values are independent of this one's
+    // Advances this source
+    RandomSource split();
+
+    // The seed this source was created from
+    long getSeed();
+}
@@ -0,0 +1,767 @@
+/* Author: Daniel Hammer
+ *
+ * ResultStore class
+ *
+ * A summary of every simulated game, kept off the heap in a directory of
+ *      memory-mapped column files, one value per game in each:
+ *      the seed, the number of players, the trump suit, the loser's seat
+ *      (-1 on a draw, GameResult.STOPPED for a game stopped at
+ *      Durak.MAX_ROUNDS), the rounds played, how many rounds ended with the
+ *      maximum number of attacks beaten, and every seat's starting hand as
+ *      a card mask (see CardSet.getBits(); a hand dealt from a shoe only
+ *      shows which cards it holds, not how many of each)
+ * The outcome is what Durak.isGameOver() left behind: the loser it found
+ *      (the one player who never had setVictory(true)), a draw, or a stop
+ *
+ * Each column file is mapped in segments of up to SEGMENT_BYTES, mapped
+ *      on first use and mapped again twice as large whenever a write runs
+ *      past the end, so a file is never more than twice the rows written
+ *      and a store holds billions of rows with nothing on the heap but
+ *      the segment tables
+ * Workers write in parallel: append() reserves the next row with one
+ *      atomic add, and put() writes a row chosen by the caller (BatchRunner
+ *      uses the game's index, so a resumed batch rewrites the same rows)
+ * A row's player count is written last, and a row whose count is still 0
+ *      was never finished; queries skip it
+ * The row count and number of seats are kept in a small "meta" file,
+ *      rewritten by flush() and close()
+ *
+ * Queries are sequential scans: aggregate() splits the rows into ranges
+ *      on the common ForkJoinPool, and each range walks its rows in order,
+ *      reading only the columns the query touches, through a Row cursor
+ *
+ * Usage: java ResultStore <directory> [--seat=<seat>] [--min-trumps=<n>]
+ *      [--group=trumps|suit|players|none]
+ *      prints the loss rate of the seat (0 by default) in the rows where it
+ *      was dealt at least n trumps, grouped as asked (by trumps by default)
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public final class ResultStore implements AutoCloseable{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    private static final int MAGIC = 0x44525331;
+    private static final int VERSION = 1;
+
+    // Every value in a column is 1, 2 or 8 bytes, so none straddles two
+    //      segments
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_BYTES = 1L << SEGMENT_SHIFT;
+    private static final int MAX_SEGMENTS = 1 << 10;
+
+    // The first mapping of a segment
+    private static final long MIN_MAPPING = 1L << 16;
+
+    // Rows per range of a query; a leaf scans this many in order
+    private static final long SCAN_LEAF = 1 << 20;
+
+    private static final Suit[] SUITS = Suit.values();
+    private static final long[] SUIT_MASKS = new long[SUITS.length];
+    static{
+        for (Suit s : SUITS){
+            SUIT_MASKS[s.ordinal()] = CardSet.suitMask(s);
+        }
+    }
+
+    // Groups a query may have (keys 0 to MAX_GROUPS - 1)
+    public static final int MAX_GROUPS = 1 << 16;
+
+    private final Path directory;
+    private final boolean write;
+    private final int seats;
+
+    // One past the highest row written
+    private final AtomicLong rows;
+
+    private final Column seed;
+    private final Column players;
+    private final Column trump;
+    private final Column loser;
+    private final Column rounds;
+    private final Column maxAttacks;
+    private final Column[] hands;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    private ResultStore(Path directory, boolean write, int seats, long rows)
+            throws IOException{
+        this.directory = directory;
+        this.write = write;
+        this.seats = seats;
+        this.rows = new AtomicLong(rows);
+        this.seed = new Column("seed", 3);
+        this.players = new Column("players", 0);
+        this.trump = new Column("trump", 0);
+        this.loser = new Column("loser", 0);
+        this.rounds = new Column("rounds", 1);
+        this.maxAttacks = new Column("max-attacks", 1);
+        this.hands = new Column[seats];
+        for (int s = 0; s < seats; s++){
+            hands[s] = new Column("hand-" + s, 3);
+        }
+    }
+
+    // Opens the store in 'directory' for writing, making it (with room for
+    //      games of up to 'seats' players) if it does not exist yet
+    public static ResultStore create(Path directory, int seats) throws IOException{
+        if (seats < 2 || seats > Byte.MAX_VALUE){
+            throw new IllegalArgumentException("a store holds games of 2 to "
+                    + Byte.MAX_VALUE + " seats, not " + seats);
+        }
+        Path meta = directory.resolve("meta");
+        if (Files.exists(meta)){
+            ResultStore existing = open(directory, true);
+            if (existing.seats != seats){
+                existing.close();
+                throw new IllegalArgumentException(directory + " holds games of up to "
+                        + existing.seats + " seats, not " + seats);
+            }
+            return existing;
+        }
+        Files.createDirectories(directory);
+        ResultStore store = new ResultStore(directory, true, seats, 0);
+        store.flush();
+        return store;
+    }
+
+    // Opens an existing store for queries
+    public static ResultStore open(Path directory) throws IOException{
+        return open(directory, false);
+    }
+
+    private static ResultStore open(Path directory, boolean write) throws IOException{
+        try (DataInputStream in = new DataInputStream(
+                    Files.newInputStream(directory.resolve("meta")))){
+            if (in.readInt() != MAGIC || in.readInt() != VERSION){
+                throw new IllegalArgumentException(directory + " is not a result store");
+            }
+            int seats = in.readInt();
+            long rows = in.readLong();
+            return new ResultStore(directory, write, seats, rows);
+        }
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public Path getDirectory(){
+        return this.directory;
+    }
+
+    // The most players a game in this store can have
+    public int getSeats(){
+        return this.seats;
+    }
+
+    // One past the highest row written; unfinished rows below it are
+    //      skipped by queries
+    public long getRows(){
+        return this.rows.get();
+    }
+
+
+
+
+    /*****************
+     * WRITE METHODS *
+     * **************/
+
+    // Writes a game to the next free row and returns the row
+    public long append(long gameSeed, int numPlayers, Suit trumpSuit, int loserSeat,
+            int roundsPlayed, int maxAttacksReached, long[] startingHands){
+        long row = rows.getAndIncrement();
+        write(row, gameSeed, numPlayers, trumpSuit, loserSeat, roundsPlayed,
+                maxAttacksReached, startingHands);
+        return row;
+    }
+
+    // Writes a game to 'row', which may be past the end; rows skipped
+    //      over stay unfinished until something is put there
+    public void put(long row, long gameSeed, int numPlayers, Suit trumpSuit,
+            int loserSeat, int roundsPlayed, int maxAttacksReached,
+            long[] startingHands){
+        write(row, gameSeed, numPlayers, trumpSuit, loserSeat, roundsPlayed,
+                maxAttacksReached, startingHands);
+        rows.accumulateAndGet(row + 1, Math::max);
+    }
+
+    private void write(long row, long gameSeed, int numPlayers, Suit trumpSuit,
+            int loserSeat, int roundsPlayed, int maxAttacksReached,
+            long[] startingHands){
+        if (!write){
+            throw new IllegalStateException("store was opened for queries only");
+        }
+        if (numPlayers < 2 || numPlayers > seats){
+            throw new IllegalArgumentException("store holds games of 2 to " + seats
+                    + " players, not " + numPlayers);
+        }
+        if (row < 0){
+            throw new IllegalArgumentException("row " + row);
+        }
+        seed.putLong(row, gameSeed);
+        trump.putByte(row, trumpSuit.ordinal());
+        loser.putByte(row, loserSeat);
+        rounds.putShort(row, Math.min(roundsPlayed, Character.MAX_VALUE));
+        maxAttacks.putShort(row, Math.min(maxAttacksReached, Character.MAX_VALUE));
+        for (int s = 0; s < seats; s++){
+            hands[s].putLong(row, s < numPlayers ? startingHands[s] : 0);
+        }
+        players.putByte(row, numPlayers);
+    }
+
+    // Forces every column to disk, then saves the row count
+    // Only rows whose put() or append() has returned are sure to be whole
+    public synchronized void flush() throws IOException{
+        if (!write){
+            return;
+        }
+        seed.force();
+        players.force();
+        trump.force();
+        loser.force();
+        rounds.force();
+        maxAttacks.force();
+        for (Column c : hands){
+            c.force();
+        }
+        Path temp = directory.resolve("meta.tmp");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(seats);
+            out.writeLong(rows.get());
+        }
+        Files.move(temp, directory.resolve("meta"), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Flushes, and trims the column files to the rows written
+    @Override
+    public void close() throws IOException{
+        flush();
+        long n = rows.get();
+        for (Column c : allColumns()){
+            c.close(n);
+        }
+    }
+
+    private Column[] allColumns(){
+        Column[] all = Arrays.copyOf(hands, seats + 6);
+        all[seats] = seed;
+        all[seats + 1] = players;
+        all[seats + 2] = trump;
+        all[seats + 3] = loser;
+        all[seats + 4] = rounds;
+        all[seats + 5] = maxAttacks;
+        return all;
+    }
+
+    // A new listener that writes every game it hears about to the store
+    public Recorder newRecorder(){
+        return new Recorder();
+    }
+
+
+
+
+    /*****************
+     * QUERY METHODS *
+     * **************/
+
+    // Which rows a query counts
+    public interface Filter{
+        Filter ALL = row -> true;
+
+        boolean test(Row row);
+    }
+
+    // The group a row is counted in, from 0 to MAX_GROUPS - 1
+    public interface Key{
+        Key NONE = row -> 0;
+
+        int of(Row row);
+    }
+
+    // What a query adds up; a 0 or 1 value makes the mean a rate
+    public interface Value{
+        long of(Row row);
+    }
+
+    // Counts the rows that pass 'where' in each group of 'groupBy', and
+    //      adds up 'value' over them, scanning every row
+    public Aggregate aggregate(Filter where, Key groupBy, Value value){
+        return ForkJoinPool.commonPool().invoke(
+                new Scan(0, rows.get(), where, groupBy, value));
+    }
+
+    // The loss rate of 'seat' among the rows where it was dealt at least
+    //      'minTrumps' trumps, grouped by 'groupBy'
+    public Aggregate lossRate(int seat, int minTrumps, Key groupBy){
+        return aggregate(row -> row.players() > seat && row.trumps(seat) >= minTrumps,
+                groupBy, row -> row.loser() == seat ? 1 : 0);
+    }
+
+    private class Scan extends RecursiveTask<Aggregate>{
+
+        private static final long serialVersionUID = 1L;
+
+        private final long from;
+        private final long to;
+        private final Filter where;
+        private final Key groupBy;
+        private final Value value;
+
+        Scan(long from, long to, Filter where, Key groupBy, Value value){
+            this.from = from;
+            this.to = to;
+            this.where = where;
+            this.groupBy = groupBy;
+            this.value = value;
+        }
+
+        @Override
+        protected Aggregate compute(){
+            if (to - from <= SCAN_LEAF){
+                Aggregate result = new Aggregate();
+                Row row = new Row();
+                for (long r = from; r < to; r++){
+                    row.row = r;
+                    if (row.players() != 0 && where.test(row)){
+                        result.add(groupBy.of(row), value.of(row));
+                    }
+                }
+                return result;
+            }
+            long mid = (from + to) >>> 1;
+            Scan left = new Scan(from, mid, where, groupBy, value);
+            left.fork();
+            Aggregate result = new Scan(mid, to, where, groupBy, value).compute();
+            result.merge(left.join());
+            return result;
+        }
+    }
+
+
+
+
+    /*******
+     * ROW *
+     * ****/
+
+    // A cursor on one row; only valid during the call it is passed to
+    public final class Row{
+
+        private long row;
+
+        private Row(){
+        }
+
+        public long index(){
+            return this.row;
+        }
+
+        public long seed(){
+            return seed.getLong(row);
+        }
+
+        public int players(){
+            return players.getByte(row);
+        }
+
+        public Suit trump(){
+            return SUITS[trumpOrdinal()];
+        }
+
+        public int trumpOrdinal(){
+            return trump.getByte(row);
+        }
+
+        // -1 on a draw, GameResult.STOPPED for a stopped game
+        public int loser(){
+            return loser.getByte(row);
+        }
+
+        public boolean isDraw(){
+            return loser() == -1;
+        }
+
+        public boolean isStopped(){
+            return loser() == GameResult.STOPPED;
+        }
+
+        public int rounds(){
+            return rounds.getShort(row);
+        }
+
+        public int maxAttacks(){
+            return maxAttacks.getShort(row);
+        }
+
+        public long hand(int seat){
+            return hands[seat].getLong(row);
+        }
+
+        // Trumps in the seat's starting hand
+        public int trumps(int seat){
+            return Long.bitCount(hand(seat) & SUIT_MASKS[trumpOrdinal()]);
+        }
+    }
+
+
+
+
+    /*************
+     * AGGREGATE *
+     * **********/
+
+    // Rows and the sum of the value in every group of a query
+    public static final class Aggregate{
+
+        private long[] count = new long[16];
+        private long[] sum = new long[16];
+        private int groups;
+
+        void add(int key, long value){
+            grow(key);
+            count[key]++;
+            sum[key] += value;
+        }
+
+        void merge(Aggregate other){
+            if (other.groups > 0){
+                grow(other.groups - 1);
+            }
+            for (int k = 0; k < other.groups; k++){
+                count[k] += other.count[k];
+                sum[k] += other.sum[k];
+            }
+        }
+
+        private void grow(int key){
+            if (key < 0 || key >= MAX_GROUPS){
+                throw new IllegalArgumentException("group key " + key + " is not in 0 to "
+                        + (MAX_GROUPS - 1));
+            }
+            if (key >= count.length){
+                int size = Math.min(Integer.highestOneBit(key) << 1, MAX_GROUPS);
+                count = Arrays.copyOf(count, size);
+                sum = Arrays.copyOf(sum, size);
+            }
+            groups = Math.max(groups, key + 1);
+        }
+
+        // One past the highest key with any rows
+        public int getGroups(){
+            return this.groups;
+        }
+
+        public long getCount(int key){
+            return key < groups ? this.count[key] : 0;
+        }
+
+        public long getSum(int key){
+            return key < groups ? this.sum[key] : 0;
+        }
+
+        public double getMean(int key){
+            long n = getCount(key);
+            return n == 0 ? 0 : (double) getSum(key) / n;
+        }
+
+        public long getTotalCount(){
+            long n = 0;
+            for (int k = 0; k < groups; k++){
+                n += count[k];
+            }
+            return n;
+        }
+
+        public String toString(){
+            StringBuilder sb = new StringBuilder("group       rows        sum     mean\n");
+            for (int k = 0; k < groups; k++){
+                if (count[k] != 0){
+                    sb.append(String.format("%5d %10d %10d %8.4f%n", k, count[k], sum[k],
+                                getMean(k)));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+
+
+
+    /************
+     * RECORDER *
+     * *********/
+
+    // Follows one game at a time and writes it to the store when it ends
+    // Not thread-safe; every thread needs its own
+    public class Recorder implements GameEventListener{
+
+        private final long[] startingHands = new long[seats];
+        private int numPlayers;
+        private Suit trumpSuit;
+        private int maxAttacksReached;
+
+        // Where the next game goes, or -1 to append it
+        private long nextRow = -1;
+
+        private Recorder(){
+        }
+
+        // Puts the next game in 'row' instead of appending it
+        public void setNextRow(long row){
+            this.nextRow = row;
+        }
+
+        @Override
+        public void gameStarted(long seed, int numPlayers, TrumpContext trump){
+            if (numPlayers > seats){
+                throw new IllegalArgumentException("store holds games of up to " + seats
+                        + " players, game has " + numPlayers);
+            }
+            this.numPlayers = numPlayers;
+            this.trumpSuit = trump.getSuit();
+            this.maxAttacksReached = 0;
+            Arrays.fill(startingHands, 0);
+        }
+
+        @Override
+        public void startingHandDealt(Player player){
+            startingHands[player.getSeat()] = player.getHand().getBits();
+        }
+
+        @Override
+        public void maxAttacksReached(Player defender){
+            maxAttacksReached++;
+        }
+
+        @Override
+        public void gameEnded(GameResult result){
+            if (nextRow < 0){
+                append(result.getSeed(), numPlayers, trumpSuit, result.getOutcome(),
+                        result.getRoundsPlayed(), maxAttacksReached, startingHands);
+            }
+            else{
+                put(nextRow, result.getSeed(), numPlayers, trumpSuit, result.getOutcome(),
+                        result.getRoundsPlayed(), maxAttacksReached, startingHands);
+                nextRow = -1;
+            }
+        }
+    }
+
+
+
+
+    /**********
+     * COLUMN *
+     * *******/
+
+    // One file of fixed-width values, mapped a segment at a time
+    private final class Column{
+
+        private final Path file;
+        private final int shift;
+        private final AtomicReferenceArray<MappedByteBuffer> segments =
+            new AtomicReferenceArray<MappedByteBuffer>(MAX_SEGMENTS);
+
+        // Values are 1 << shift bytes wide
+        Column(String name, int shift){
+            this.file = directory.resolve(name + ".col");
+            this.shift = shift;
+        }
+
+        // The mapping that holds the value at 'offset'
+        private MappedByteBuffer segment(long offset){
+            int i = (int) (offset >>> SEGMENT_SHIFT);
+            if (i >= MAX_SEGMENTS){
+                throw new IllegalArgumentException(file + " cannot hold more than "
+                        + ((long) MAX_SEGMENTS << SEGMENT_SHIFT >> shift) + " rows");
+            }
+            MappedByteBuffer b = segments.get(i);
+            return b != null && at(offset) < b.capacity() ? b : map(i, at(offset) + 1);
+        }
+
+        // Maps segment 'i' again, for writing at least 'needed' bytes of it
+        //      rounded up to a power of two, or as much of it as the file
+        //      holds for reading
+        // A replaced mapping still sees the same file, so a thread writing
+        //      through it loses nothing
+        private synchronized MappedByteBuffer map(int i, long needed){
+            MappedByteBuffer b = segments.get(i);
+            if (b != null && needed <= b.capacity()){
+                return b;
+            }
+            long start = (long) i << SEGMENT_SHIFT;
+            try (FileChannel channel = write
+                    ? FileChannel.open(file, StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE)
+                    : FileChannel.open(file, StandardOpenOption.READ)){
+                if (write){
+                    long size = Math.max(MIN_MAPPING, Long.highestOneBit(needed - 1) << 1);
+                    b = channel.map(FileChannel.MapMode.READ_WRITE, start,
+                            Math.min(size, SEGMENT_BYTES));
+                }
+                else{
+                    long size = Math.min(SEGMENT_BYTES, channel.size() - start);
+                    b = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(size, 0));
+                }
+            }
+            catch (IOException e){
+                throw new UncheckedIOException(e);
+            }
+            segments.set(i, b);
+            return b;
+        }
+
+        private int at(long offset){
+            return (int) (offset & (SEGMENT_BYTES - 1));
+        }
+
+        void putLong(long row, long v){
+            long offset = row << shift;
+            segment(offset).putLong(at(offset), v);
+        }
+
+        void putShort(long row, int v){
+            long offset = row << shift;
+            segment(offset).putShort(at(offset), (short) v);
+        }
+
+        void putByte(long row, int v){
+            long offset = row << shift;
+            segment(offset).put(at(offset), (byte) v);
+        }
+
+        long getLong(long row){
+            long offset = row << shift;
+            return segment(offset).getLong(at(offset));
+        }
+
+        // Unsigned, as rounds never go negative
+        int getShort(long row){
+            long offset = row << shift;
+            return segment(offset).getShort(at(offset)) & 0xFFFF;
+        }
+
+        int getByte(long row){
+            long offset = row << shift;
+            return segment(offset).get(at(offset));
+        }
+
+        void force(){
+            for (int i = 0; i < MAX_SEGMENTS; i++){
+                MappedByteBuffer b = segments.get(i);
+                if (b != null){
+                    b.force();
+                }
+            }
+        }
+
+        // Cuts the file down to 'rows' values; the column is not used again
+        // The mappings are dropped first, so none is left over the part cut
+        void close(long rows) throws IOException{
+            for (int i = 0; i < MAX_SEGMENTS; i++){
+                segments.set(i, null);
+            }
+            if (!write){
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE)){
+                channel.truncate(rows << shift);
+            }
+        }
+    }
+
+
+
+
+    /*********************
+     * PROGRAM EXECUTION *
+     * ******************/
+
+    public static void main(String[] args) throws IOException{
+        if (args.length < 1){
+            System.out.println("Usage: java ResultStore <directory> [--seat=<seat>]"
+                    + " [--min-trumps=<n>] [--group=trumps|suit|players|none]");
+            return;
+        }
+        int seat = 0;
+        int minTrumps = 0;
+        String group = "trumps";
+        for (int i = 1; i < args.length; i++){
+            String arg = args[i];
+            if (arg.startsWith("--seat=")){
+                seat = Integer.parseInt(arg.substring("--seat=".length()));
+            }
+            else if (arg.startsWith("--min-trumps=")){
+                minTrumps = Integer.parseInt(arg.substring("--min-trumps=".length()));
+            }
+            else if (arg.startsWith("--group=")){
+                group = arg.substring("--group=".length());
+            }
+            else{
+                throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+        int s = seat;
+        Key key;
+        switch (group){
+            case "trumps":
+                key = row -> row.trumps(s);
+                break;
+            case "suit":
+                key = row -> row.trumpOrdinal();
+                break;
+            case "players":
+                key = row -> row.players();
+                break;
+            case "none":
+                key = Key.NONE;
+                break;
+            default:
+                throw new IllegalArgumentException("cannot group by " + group);
+        }
+
+        try (ResultStore store = open(Path.of(args[0]))){
+            long start = System.nanoTime();
+            Aggregate result = store.lossRate(seat, minTrumps, key);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println("Loss rate of seat " + seat + " dealt at least " + minTrumps
+                    + " trumps, by " + group + " (mean is the loss rate):");
+            System.out.print(result);
+            System.out.println(result.getTotalCount() + " of " + store.getRows()
+                    + " rows matched; scanned in " + String.format("%.3f", seconds) + "s ("
+                    + String.format("%.0f", store.getRows() / seconds) + " rows/s)");
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/* Author: Daniel Hammer
+ *
+ * ScriptedInput class
+ *
+ * Plays back a fixed list of input lines, one per prompt, as if the user
+ *      had typed them
+ * Used to replay recorded console sessions (see SessionReplay) and to
+ *      drive the interactive code paths from code
+ * Not thread-safe; every game needs its own
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class ScriptedInput implements InputProvider{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    private final List<String> lines;
+    private int next;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    public ScriptedInput(List<String> lines){
+        this.lines = lines;
+    }
+
+    public ScriptedInput(String... lines){
+        this(List.of(lines));
+    }
+
+    // Every line of the file, in order
+    public static ScriptedInput load(Path file) throws IOException{
+        return new ScriptedInput(Files.readAllLines(file));
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    // The number of lines read so far
+    public int getLinesRead(){
+        return this.next;
+    }
+
+    public int getLinesLeft(){
+        return this.lines.size() - this.next;
+    }
+
+    // Starts again from the first line
+    public void rewind(){
+        this.next = 0;
+    }
+
+
+
+
+    /*****************
+     * INPUT METHODS *
+     * **************/
+
+    @Override
+    public String nextLine(){
+        if (next == lines.size()){
+            throw new IllegalStateException("script ran out after "
+                    + lines.size() + " lines");
+        }
+        return lines.get(next++);
+    }
+}
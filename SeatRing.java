@@ -0,0 +1,105 @@
+/* Author: Daniel Hammer
+ *
+ * SeatRing class
+ *
+ * The seats still in a game, in seating order around the table
+ * Seats are linked to their neighbours, so finding the next seat and
+ *      removing a finished player are O(1) however big the table is
+ *
+ * A removed seat keeps its links, so next() still works from it: the
+ *      defender who just went out passes the turn on to the seat after
+ *      them, as if they were still sitting there
+ */
+
+public class SeatRing{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    private final int[] next;
+    private final int[] prev;
+    private final boolean[] seated;
+    private int size;
+    private int first;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    // Seats 0 to numSeats - 1, all seated
+    public SeatRing(int numSeats){
+        this.next = new int[numSeats];
+        this.prev = new int[numSeats];
+        this.seated = new boolean[numSeats];
+        for (int s = 0; s < numSeats; s++){
+            next[s] = s + 1 == numSeats ? 0 : s + 1;
+            prev[s] = s == 0 ? numSeats - 1 : s - 1;
+            seated[s] = true;
+        }
+        this.size = numSeats;
+        this.first = 0;
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    // The number of seats still in the game
+    public int size(){
+        return this.size;
+    }
+
+    public boolean contains(int seat){
+        return this.seated[seat];
+    }
+
+    // The lowest-numbered seat still in the game, or -1 if there is none
+    public int first(){
+        return size == 0 ? -1 : this.first;
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // The next seat after 'seat' that is still in the game, or -1 if
+    //      there is none
+    // 'seat' itself may already have been removed
+    public int next(int seat){
+        if (size == 0){
+            return -1;
+        }
+        int s = next[seat];
+        while (!seated[s]){
+            s = next[s];
+        }
+        return s;
+    }
+
+    // Takes a seat out of the ring; returns false if it was already out
+    public boolean remove(int seat){
+        if (!seated[seat]){
+            return false;
+        }
+        seated[seat] = false;
+        next[prev[seat]] = next[seat];
+        prev[next[seat]] = prev[seat];
+        size--;
+        // The ring runs up through the seat numbers, so the seat after
+        //      the lowest is the next lowest
+        if (seat == first){
+            first = next[seat];
+        }
+        return true;
+    }
+}
@@ -0,0 +1,250 @@
+/* Author: Daniel Hammer
+ *
+ * SessionReplay class
+ *
+ * Plays recorded console sessions back at full speed, through the same
+ *      code paths a user at the keyboard goes through (the settings, the
+ *      card prompts and their re-prompts, hints, and the console output),
+ *      to benchmark and soak-test them
+ *
+ * A session file holds "seed <n>" on its first line, then every line the
+ *      user typed, in order (see Durak --record)
+ * A replay must read exactly the lines that were recorded; one that runs
+ *      out of input, is left with lines over, or throws has diverged
+ *
+ * Sessions can also be generated, by a user who answers every card prompt
+ *      with a random number (often an illegal one, which is re-prompted)
+ *
+ * Usage: java SessionReplay <file or directory> [repeat]
+ *        java SessionReplay --generate <directory> [sessions] [players] [seed]
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class SessionReplay{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    private static final String SEED = "seed ";
+
+    // Generated users pick from 0 (pass / pick up) to this
+    private static final int MAX_CHOICE = 12;
+
+    // Microseconds, in 100 us buckets up to 1 s
+    private final Histogram sessionTime = new Histogram(10_000, 100);
+    private long sessions;
+    private long linesRead;
+    private long diverged;
+    private final List<String> failures = new ArrayList<String>();
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public long getSessions(){
+        return this.sessions;
+    }
+
+    public long getLinesRead(){
+        return this.linesRead;
+    }
+
+    public long getDiverged(){
+        return this.diverged;
+    }
+
+    // What went wrong in each diverged session, by file
+    public List<String> getFailures(){
+        return this.failures;
+    }
+
+    public Histogram getSessionTime(){
+        return this.sessionTime;
+    }
+
+
+
+
+    /****************
+     * FILE METHODS *
+     * *************/
+
+    // One recorded session: the seed of its game and what the user typed
+    public static final class Session{
+        private final long seed;
+        private final List<String> lines;
+
+        public Session(long seed, List<String> lines){
+            this.seed = seed;
+            this.lines = lines;
+        }
+
+        public long getSeed(){
+            return this.seed;
+        }
+
+        public List<String> getLines(){
+            return this.lines;
+        }
+    }
+
+    public static void save(Path file, long seed, List<String> lines) throws IOException{
+        ArrayList<String> out = new ArrayList<String>(lines.size() + 1);
+        out.add(SEED + seed);
+        out.addAll(lines);
+        Files.write(file, out);
+    }
+
+    public static Session load(Path file) throws IOException{
+        List<String> lines = Files.readAllLines(file);
+        if (lines.isEmpty() || !lines.get(0).startsWith(SEED)){
+            throw new IllegalArgumentException(file + " is not a session file");
+        }
+        return new Session(Long.parseLong(lines.get(0).substring(SEED.length())),
+                lines.subList(1, lines.size()));
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // Plays one session, and returns null if it read exactly the lines
+    //      that were recorded, or what went wrong
+    // Everything the game prints goes to System.out
+    public static String play(Session session){
+        ScriptedInput input = new ScriptedInput(session.getLines());
+        try{
+            new Durak(input, session.getSeed()).playGame();
+        }
+        catch (RuntimeException e){
+            return "after " + input.getLinesRead() + " lines: " + e;
+        }
+        if (input.getLinesLeft() != 0){
+            return input.getLinesLeft() + " lines left over";
+        }
+        return null;
+    }
+
+    // Replays every session 'repeat' times, throwing the console output away
+    public void run(List<Path> files, int repeat) throws IOException{
+        ArrayList<Session> loaded = new ArrayList<Session>(files.size());
+        for (Path f : files){
+            loaded.add(load(f));
+        }
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try{
+            for (int r = 0; r < repeat; r++){
+                for (int i = 0; i < loaded.size(); i++){
+                    Session s = loaded.get(i);
+                    long start = System.nanoTime();
+                    String failure = play(s);
+                    sessionTime.record((System.nanoTime() - start) / 1000);
+                    sessions++;
+                    linesRead += s.getLines().size();
+                    if (failure != null){
+                        diverged++;
+                        failures.add(files.get(i) + ": " + failure);
+                    }
+                }
+            }
+        }
+        finally{
+            System.setOut(console);
+        }
+    }
+
+    // Plays 'count' games with a generated user at tables of 'numPlayers',
+    //      and saves each as a session in 'dir'
+    public static void generate(Path dir, int count, int numPlayers, long seed)
+            throws IOException{
+        Files.createDirectories(dir);
+        SplitMix rand = new SplitMix(seed);
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try{
+            for (int i = 0; i < count; i++){
+                long gameSeed = rand.nextLong();
+                ArrayList<String> lines = new ArrayList<String>();
+                new Durak(InputProvider.recording(randomUser(numPlayers, rand.split()),
+                        lines), gameSeed).playGame();
+                save(dir.resolve(String.format("session-%05d.txt", i)), gameSeed, lines);
+            }
+        }
+        finally{
+            System.setOut(console);
+        }
+    }
+
+    // Lets a user play without hints or delay, then answers at random
+    private static InputProvider randomUser(int numPlayers, RandomSource rand){
+        ScriptedInput settings = new ScriptedInput("1", "0", "0",
+                String.valueOf(numPlayers), "Replay");
+        return () -> settings.getLinesLeft() > 0 ? settings.nextLine()
+                : String.valueOf(rand.nextInt(MAX_CHOICE + 1));
+    }
+
+
+
+
+    /*********************
+     * PROGRAM EXECUTION *
+     * ******************/
+
+    public static void main(String[] args) throws IOException{
+        if (args.length > 0 && args[0].equals("--generate")){
+            Path dir = Path.of(args.length > 1 ? args[1] : "sessions");
+            int count = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+            int numPlayers = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+            long seed = args.length > 4 ? Long.parseLong(args[4]) : 1L;
+            generate(dir, count, numPlayers, seed);
+            System.out.println("Wrote " + count + " sessions to " + dir);
+            return;
+        }
+
+        Path path = Path.of(args.length > 0 ? args[0] : "sessions");
+        int repeat = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        List<Path> files;
+        if (Files.isDirectory(path)){
+            try (Stream<Path> s = Files.list(path)){
+                files = s.filter(Files::isRegularFile).sorted().toList();
+            }
+        }
+        else{
+            files = List.of(path);
+        }
+
+        SessionReplay replay = new SessionReplay();
+        long start = System.nanoTime();
+        replay.run(files, repeat);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(replay.getSessions() + " sessions, " + replay.getLinesRead()
+                + " lines in " + String.format("%.3f", seconds) + "s ("
+                + String.format("%.0f", replay.getSessions() / seconds) + " sessions/s, "
+                + String.format("%.0f", replay.getLinesRead() / seconds) + " lines/s); "
+                + "session p50 " + replay.getSessionTime().percentile(0.5) + " us, p99 "
+                + replay.getSessionTime().percentile(0.99) + " us");
+        System.out.println(replay.getDiverged() + " diverged");
+        for (int i = 0; i < Math.min(10, replay.getFailures().size()); i++){
+            System.out.println("\t" + replay.getFailures().get(i));
+        }
+        if (replay.getDiverged() != 0){
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,424 @@
+/* Author: Daniel Hammer
+ *
+ * SimulationStats class
+ *
+ * Aggregate statistics over any number of games, kept as they are played
+ *      instead of storing the games themselves:
+ *      the loss rate of every seat, how often games are drawn, and how
+ *      often they are stopped at Durak.MAX_ROUNDS (not counted as draws),
+ *      a histogram of game length in rounds,
+ *      a histogram of the number of attacks in a round,
+ *      and the loss rate of a player by the number of trumps in their
+ *      starting hand
+ *
+ * Every counter is a LongAdder (and every histogram is made of them), so
+ *      all the workers of a batch can record into one SimulationStats
+ *      without contending, and it can be read at any time while they do
+ * Games are fed in through a Recorder, a GameEventListener that follows
+ *      one game at a time; give every thread its own
+ * Two SimulationStats for the same number of players can be merged
+ *
+ * The totals can be written out as CSV or JSON
+ */
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SimulationStats{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // Starting hands with more trumps than this are counted with it
+    public static final int MAX_TRUMPS = 12;
+
+    // Game length buckets: 100 of 10 rounds each, then overflow
+    private static final int LENGTH_BUCKETS = 100;
+    private static final int LENGTH_WIDTH = 10;
+
+    // A round holds at most six attacks (see TableRound)
+    private static final int MAX_ATTACKS = TableRound.MAX_ATTACKS;
+
+    private final int numPlayers;
+    private final LongAdder games = new LongAdder();
+    private final LongAdder draws = new LongAdder();
+    private final LongAdder stopped = new LongAdder();
+    private final LongAdder[] losses;
+    private final Histogram gameLength = new Histogram(LENGTH_BUCKETS, LENGTH_WIDTH);
+    private final Histogram attacksPerRound = new Histogram(MAX_ATTACKS + 1, 1);
+
+    // Starting hands dealt with, and lost with, each number of trumps
+    private final LongAdder[] handsByTrumps = adders(MAX_TRUMPS + 1);
+    private final LongAdder[] lossesByTrumps = adders(MAX_TRUMPS + 1);
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    public SimulationStats(int numPlayers){
+        this.numPlayers = numPlayers;
+        this.losses = adders(numPlayers);
+    }
+
+    private static LongAdder[] adders(int n){
+        LongAdder[] a = new LongAdder[n];
+        for (int i = 0; i < n; i++){
+            a[i] = new LongAdder();
+        }
+        return a;
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public int getNumPlayers(){
+        return this.numPlayers;
+    }
+
+    public long getGames(){
+        return this.games.sum();
+    }
+
+    public long getDraws(){
+        return this.draws.sum();
+    }
+
+    // Games cut off at Durak.MAX_ROUNDS with no loser
+    public long getStopped(){
+        return this.stopped.sum();
+    }
+
+    public long getLosses(int seat){
+        return this.losses[seat].sum();
+    }
+
+    public Histogram getGameLength(){
+        return this.gameLength;
+    }
+
+    public Histogram getAttacksPerRound(){
+        return this.attacksPerRound;
+    }
+
+    public long getHandsWithTrumps(int trumps){
+        return this.handsByTrumps[trumps].sum();
+    }
+
+    public long getLossesWithTrumps(int trumps){
+        return this.lossesByTrumps[trumps].sum();
+    }
+
+    public double getDrawRate(){
+        return rate(getDraws(), getGames());
+    }
+
+    public double getStoppedRate(){
+        return rate(getStopped(), getGames());
+    }
+
+    public double getLossRate(int seat){
+        return rate(getLosses(seat), getGames());
+    }
+
+    // How often a player dealt 'trumps' trumps went on to lose
+    public double getLossRateWithTrumps(int trumps){
+        return rate(getLossesWithTrumps(trumps), getHandsWithTrumps(trumps));
+    }
+
+    private static double rate(long count, long total){
+        return total == 0 ? 0 : (double) count / total;
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // A new listener that records the games it hears about into these stats
+    public Recorder newRecorder(){
+        return new Recorder();
+    }
+
+    // Adds all of the other stats' totals into these
+    public void merge(SimulationStats other){
+        if (other.numPlayers != numPlayers){
+            throw new IllegalArgumentException("cannot merge stats for "
+                    + other.numPlayers + " players into stats for " + numPlayers);
+        }
+        games.add(other.getGames());
+        draws.add(other.getDraws());
+        stopped.add(other.getStopped());
+        for (int i = 0; i < numPlayers; i++){
+            losses[i].add(other.getLosses(i));
+        }
+        gameLength.merge(other.gameLength);
+        attacksPerRound.merge(other.attacksPerRound);
+        for (int k = 0; k <= MAX_TRUMPS; k++){
+            handsByTrumps[k].add(other.getHandsWithTrumps(k));
+            lossesByTrumps[k].add(other.getLossesWithTrumps(k));
+        }
+    }
+
+
+
+
+    // Writes every total, for readState() to add back (see BatchRunner)
+    public void writeState(DataOutput out) throws IOException{
+        out.writeInt(numPlayers);
+        out.writeLong(getGames());
+        out.writeLong(getDraws());
+        out.writeLong(getStopped());
+        for (int i = 0; i < numPlayers; i++){
+            out.writeLong(getLosses(i));
+        }
+        gameLength.writeState(out);
+        attacksPerRound.writeState(out);
+        for (int k = 0; k <= MAX_TRUMPS; k++){
+            out.writeLong(getHandsWithTrumps(k));
+            out.writeLong(getLossesWithTrumps(k));
+        }
+    }
+
+    // Adds totals written by writeState() for the same number of players
+    public void readState(DataInput in) throws IOException{
+        if (in.readInt() != numPlayers){
+            throw new IllegalArgumentException("saved stats are for a different"
+                    + " number of players");
+        }
+        games.add(in.readLong());
+        draws.add(in.readLong());
+        stopped.add(in.readLong());
+        for (int i = 0; i < numPlayers; i++){
+            losses[i].add(in.readLong());
+        }
+        gameLength.readState(in);
+        attacksPerRound.readState(in);
+        for (int k = 0; k <= MAX_TRUMPS; k++){
+            handsByTrumps[k].add(in.readLong());
+            lossesByTrumps[k].add(in.readLong());
+        }
+    }
+
+
+
+
+    /************
+     * RECORDER *
+     * *********/
+
+    // Follows one game at a time and adds it to the stats when it ends
+    // Not thread-safe; every thread needs its own
+    public class Recorder implements GameEventListener{
+
+        private TrumpContext trump;
+        private final int[] trumps = new int[numPlayers];
+        private int attacks;
+        private boolean inRound;
+
+        // False for a game replayed from a log, which has no starting hands
+        private boolean handsDealt;
+
+        private Recorder(){
+        }
+
+        @Override
+        public void gameStarted(long seed, int numPlayers, TrumpContext trump){
+            if (numPlayers != SimulationStats.this.numPlayers){
+                throw new IllegalArgumentException("stats are for "
+                        + SimulationStats.this.numPlayers + " players, game has "
+                        + numPlayers);
+            }
+            this.trump = trump;
+            this.inRound = false;
+            this.handsDealt = false;
+        }
+
+        @Override
+        public void startingHandDealt(Player player){
+            int n = 0;
+            for (Card c : player.getHand()){
+                if (trump.isTrump(c)){
+                    n++;
+                }
+            }
+            trumps[player.getSeat()] = Math.min(n, MAX_TRUMPS);
+            handsDealt = true;
+        }
+
+        @Override
+        public void roundStarted(int round, Player defender){
+            endRound();
+            inRound = true;
+        }
+
+        @Override
+        public void attackPlayed(int attackNumber, Player attacker, Card card){
+            attacks++;
+        }
+
+        @Override
+        public void gameEnded(GameResult result){
+            endRound();
+            games.increment();
+            gameLength.record(result.getRoundsPlayed());
+            int loser = result.getLoserSeat();
+            if (result.isStopped()){
+                stopped.increment();
+            }
+            else if (result.isDraw()){
+                draws.increment();
+            }
+            else{
+                losses[loser].increment();
+            }
+            for (int s = 0; s < numPlayers && handsDealt; s++){
+                handsByTrumps[trumps[s]].increment();
+                if (s == loser){
+                    lossesByTrumps[trumps[s]].increment();
+                }
+            }
+        }
+
+        private void endRound(){
+            if (inRound){
+                attacksPerRound.record(attacks);
+            }
+            attacks = 0;
+            inRound = false;
+        }
+    }
+
+
+
+
+    /******************
+     * OUTPUT METHODS *
+     * ***************/
+
+    // One row per number: statistic,key,count,total,rate
+    //      (rate is count / total)
+    public String toCsv(){
+        StringBuilder sb = new StringBuilder("statistic,key,count,total,rate\n");
+        long n = getGames();
+        csv(sb, "games", "all", n, n);
+        csv(sb, "draws", "all", getDraws(), n);
+        csv(sb, "stopped", "all", getStopped(), n);
+        for (int s = 0; s < numPlayers; s++){
+            csv(sb, "losses", "seat" + s, getLosses(s), n);
+        }
+        histogramCsv(sb, "game_length", gameLength);
+        histogramCsv(sb, "attacks_per_round", attacksPerRound);
+        for (int k = 0; k <= MAX_TRUMPS; k++){
+            csv(sb, "losses_by_trumps", k == MAX_TRUMPS ? k + "+" : String.valueOf(k),
+                    getLossesWithTrumps(k), getHandsWithTrumps(k));
+        }
+        return sb.toString();
+    }
+
+    private static void csv(StringBuilder sb, String statistic, String key,
+            long count, long total){
+        sb.append(statistic).append(',').append(key).append(',').append(count)
+            .append(',').append(total).append(',')
+            .append(String.format("%.6f", rate(count, total))).append('\n');
+    }
+
+    // Keys are the bucket starts; the overflow bucket's key ends with '+'
+    private static void histogramCsv(StringBuilder sb, String statistic, Histogram h){
+        long n = h.getCount();
+        for (int i = 0; i <= h.getNumBuckets(); i++){
+            String key = h.getBucketStart(i) + (i == h.getNumBuckets() ? "+" : "");
+            csv(sb, statistic, key, h.getBucketCount(i), n);
+        }
+    }
+
+    public String toJson(){
+        StringBuilder sb = new StringBuilder("{\n");
+        long n = getGames();
+        sb.append("  \"players\": ").append(numPlayers).append(",\n");
+        sb.append("  \"games\": ").append(n).append(",\n");
+        sb.append("  \"draws\": ").append(getDraws()).append(",\n");
+        sb.append("  \"drawRate\": ").append(json(getDrawRate())).append(",\n");
+        sb.append("  \"stopped\": ").append(getStopped()).append(",\n");
+        sb.append("  \"stoppedRate\": ").append(json(getStoppedRate())).append(",\n");
+        sb.append("  \"losses\": [");
+        for (int s = 0; s < numPlayers; s++){
+            sb.append(s == 0 ? "" : ", ").append(getLosses(s));
+        }
+        sb.append("],\n  \"lossRate\": [");
+        for (int s = 0; s < numPlayers; s++){
+            sb.append(s == 0 ? "" : ", ").append(json(getLossRate(s)));
+        }
+        sb.append("],\n");
+        sb.append("  \"gameLength\": ").append(histogramJson(gameLength)).append(",\n");
+        sb.append("  \"attacksPerRound\": ").append(histogramJson(attacksPerRound))
+            .append(",\n");
+        sb.append("  \"lossByTrumps\": [");
+        for (int k = 0; k <= MAX_TRUMPS; k++){
+            sb.append(k == 0 ? "\n" : ",\n").append("    {\"trumps\": ").append(k)
+                .append(", \"hands\": ").append(getHandsWithTrumps(k))
+                .append(", \"losses\": ").append(getLossesWithTrumps(k))
+                .append(", \"lossRate\": ").append(json(getLossRateWithTrumps(k)))
+                .append('}');
+        }
+        sb.append("\n  ]\n}\n");
+        return sb.toString();
+    }
+
+    // The last count is the overflow bucket
+    private static String histogramJson(Histogram h){
+        StringBuilder sb = new StringBuilder("{\"bucketWidth\": ")
+            .append(h.getBucketWidth()).append(", \"count\": ").append(h.getCount())
+            .append(", \"mean\": ").append(json(h.getMean()))
+            .append(", \"counts\": [");
+        for (int i = 0; i <= h.getNumBuckets(); i++){
+            sb.append(i == 0 ? "" : ", ").append(h.getBucketCount(i));
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String json(double x){
+        return String.format("%.6f", x);
+    }
+
+    // Writes JSON if the file name ends in .json, CSV otherwise
+    public void writeTo(Path file) throws IOException{
+        Files.writeString(file, file.toString().endsWith(".json") ? toJson() : toCsv());
+    }
+
+    public String toString(){
+        StringBuilder sb = new StringBuilder();
+        sb.append(getGames()).append(" games, ")
+            .append(String.format("%.2f", 100 * getDrawRate())).append("% drawn, ")
+            .append(String.format("%.2f", gameLength.getMean()))
+            .append(" rounds and ")
+            .append(String.format("%.2f", attacksPerRound.getMean()))
+            .append(" attacks per round on average\n");
+        for (int s = 0; s < numPlayers; s++){
+            sb.append("Seat ").append(s).append(" loss rate ")
+                .append(String.format("%.2f", 100 * getLossRate(s))).append("%\n");
+        }
+        sb.append("Loss rate by trumps in the starting hand:");
+        for (int k = 0; k <= MAX_TRUMPS; k++){
+            if (getHandsWithTrumps(k) > 0){
+                sb.append(' ').append(k).append(k == MAX_TRUMPS ? "+" : "").append(": ")
+                    .append(String.format("%.1f", 100 * getLossRateWithTrumps(k)))
+                    .append('%');
+            }
+        }
+        return sb.toString();
+    }
+}
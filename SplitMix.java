@@ -0,0 +1,128 @@
+/* Author: Daniel Hammer
+ *
+ * SplitMix class
+ *
+ * A small, fast RandomSource based on the SplitMix64 generator
+ *      (the algorithm behind java.util.SplittableRandom)
+ * The whole state is two longs, so drawing a number never allocates and
+ *      the state can be saved and restored exactly
+ */
+
+public final class SplitMix implements RandomSource{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // The default increment: the odd integer closest to 2^64 / phi
+    static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+    private long state;
+    private final long gamma;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    public SplitMix(long seed){
+        this(seed, seed, GOLDEN_GAMMA);
+    }
+
+    private SplitMix(long seed, long state, long gamma){
+        this.seed = seed;
+        this.state = state;
+        this.gamma = gamma;
+    }
+
+    // Recreates a source saved with getState() and getGamma()
+    public static SplitMix restore(long seed, long state, long gamma){
+        return new SplitMix(seed, state, gamma | 1L);
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    @Override
+    public long getSeed(){
+        return this.seed;
+    }
+
+    public long getState(){
+        return this.state;
+    }
+
+    public long getGamma(){
+        return this.gamma;
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    @Override
+    public long nextLong(){
+        return mix64(state += gamma);
+    }
+
+    // Unbiased: draws again when the draw falls in the uneven tail
+    @Override
+    public int nextInt(int bound){
+        if (bound <= 0){
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        int r = (int) (nextLong() >>> 33);
+        int m = bound - 1;
+        if ((bound & m) == 0){
+            return (int) ((bound * (long) r) >> 31);
+        }
+        int u = r;
+        while (u - (r = u % bound) + m < 0){
+            u = (int) (nextLong() >>> 33);
+        }
+        return r;
+    }
+
+    @Override
+    public SplitMix split(){
+        long s = nextLong();
+        return new SplitMix(s, s, mixGamma(state += gamma));
+    }
+
+    public String toString(){
+        return "SplitMix[seed=" + seed + "]";
+    }
+
+
+
+
+    /******************
+     * STATIC HELPERS *
+     * ***************/
+
+    // The SplitMix64 finalizer
+    public static long mix64(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Derives a well-mixed, odd increment for a split stream
+    private static long mixGamma(long z){
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
+    }
+}
@@ -0,0 +1,24 @@
+/* Author: Daniel Hammer
+ *
+ * Strategy interface
+ *
+ * Makes a player's attack and defense decisions
+ * A Player with no Strategy plays the original way: randomly deciding
+ *      whether to attack or defend (percentToAttack / percentToDefend)
+ *      and playing its lowest legal card
+ * A Player given a Strategy asks it instead, passing a view of the table
+ *      so that the Strategy can look at (or search) the game
+ *
+ * Moves are offered as CardSet masks built by MoveGenerator
+ */
+
+public interface Strategy{
+
+    // Picks a card from 'legal' (never empty) to attack with
+    // Returns null to pass; must not return null when 'mustPlay' is set
+    Card chooseAttack(Player self, TableView table, long legal, boolean mustPlay);
+
+    // Picks a card from 'legal' (never empty) that beats 'attack'
+    // Returns null to pick up the table instead
+    Card chooseDefense(Player self, TableView table, Card attack, long legal);
+}
@@ -0,0 +1,264 @@
+/* Author: Daniel Hammer
+ *
+ * TableClient class
+ *
+ * Simple bots that play on a TableServer, for load and end-to-end tests
+ * Every bot is one connection; all of them are driven by one thread with
+ *      a Selector, so thousands can play at once
+ *
+ * A bot joins a table, answers every prompt at once (its lowest legal
+ *      card when it must play or can beat the attack, otherwise PASS or
+ *      TAKE), and joins again when the game ends, until it has played its
+ *      games
+ * The time from sending an answer to the server's next line is recorded,
+ *      which is how long the server takes to act on a move
+ *
+ * Usage: java TableClient <host> <port> [clients] [players] [games]
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+public class TableClient{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // Give up if nothing at all arrives for this long
+    private static final long STALL_MILLIS = 30_000;
+
+    private final InetSocketAddress address;
+    private long gamesFinished;
+    private long moves;
+    private long errors;
+
+    // Microseconds, in 10 us buckets up to 100 ms
+    private final Histogram latency = new Histogram(10_000, 10);
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    public TableClient(InetSocketAddress address){
+        this.address = address;
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public long getGamesFinished(){
+        return this.gamesFinished;
+    }
+
+    public long getMoves(){
+        return this.moves;
+    }
+
+    // ERROR lines received, and connections lost early
+    public long getErrors(){
+        return this.errors;
+    }
+
+    public Histogram getLatency(){
+        return this.latency;
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // Connects 'clients' bots that each play 'games' games at tables of
+    //      'numPlayers', and returns once they are done (or stalled)
+    public void run(int clients, int numPlayers, int games) throws IOException{
+        try (Selector selector = Selector.open()){
+            for (int i = 0; i < clients; i++){
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+                channel.connect(address);
+                channel.register(selector, SelectionKey.OP_CONNECT,
+                        new Bot(channel, numPlayers, games));
+            }
+            int done = 0;
+            long lastProgress = System.nanoTime();
+            while (done < clients
+                    && System.nanoTime() - lastProgress < STALL_MILLIS * 1_000_000L){
+                if (selector.select(1000) > 0){
+                    lastProgress = System.nanoTime();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Bot bot = (Bot) key.attachment();
+                    try{
+                        if (key.isConnectable()){
+                            bot.channel.finishConnect();
+                            key.interestOps(SelectionKey.OP_READ);
+                            bot.send(key, "JOIN " + numPlayers, false);
+                        }
+                        else{
+                            if (key.isWritable()){
+                                bot.flush(key);
+                            }
+                            if (key.isReadable() && bot.read(key)){
+                                done++;
+                            }
+                        }
+                    }
+                    catch (IOException e){
+                        errors++;
+                        done++;
+                        key.cancel();
+                        bot.channel.close();
+                    }
+                }
+            }
+            for (SelectionKey key : selector.keys()){
+                key.channel().close();
+            }
+        }
+    }
+
+
+
+
+    /*******
+     * BOT *
+     * ****/
+
+    private final class Bot{
+        private final SocketChannel channel;
+        private final int numPlayers;
+        private int gamesLeft;
+        private final ByteBuffer in = ByteBuffer.allocate(4096);
+        private ByteBuffer out = ByteBuffer.allocate(0);
+        private final StringBuilder line = new StringBuilder();
+        private long sentAt;
+
+        Bot(SocketChannel channel, int numPlayers, int games){
+            this.channel = channel;
+            this.numPlayers = numPlayers;
+            this.gamesLeft = games;
+        }
+
+        // Returns true once the bot has played all its games (or lost
+        //      its connection)
+        boolean read(SelectionKey key) throws IOException{
+            if (channel.read(in) < 0){
+                errors++;
+                channel.close();
+                return true;
+            }
+            in.flip();
+            while (in.hasRemaining()){
+                char ch = (char) (in.get() & 0xFF);
+                if (ch == '\n'){
+                    String message = line.toString();
+                    line.setLength(0);
+                    if (handle(key, message)){
+                        return true;
+                    }
+                }
+                else if (ch != '\r'){
+                    line.append(ch);
+                }
+            }
+            in.clear();
+            return false;
+        }
+
+        private boolean handle(SelectionKey key, String message) throws IOException{
+            if (sentAt != 0){
+                latency.record((System.nanoTime() - sentAt) / 1000);
+                sentAt = 0;
+            }
+            String[] words = message.split(" ");
+            switch (words[0]){
+                case "ATTACK?":
+                    moves++;
+                    send(key, words[1].equals("1") ? "PLAY " + words[2] : "PASS", true);
+                    return false;
+                case "DEFEND?":
+                    moves++;
+                    send(key, words.length > 2 ? "PLAY " + words[2] : "TAKE", true);
+                    return false;
+                case "END":
+                    gamesFinished++;
+                    if (--gamesLeft > 0){
+                        send(key, "JOIN " + numPlayers, false);
+                        return false;
+                    }
+                    send(key, "QUIT", false);
+                    key.cancel();
+                    channel.close();
+                    return true;
+                case "ERROR":
+                    errors++;
+                    return false;
+                default:
+                    return false;
+            }
+        }
+
+        // Writes what the socket takes now, and the rest when it is writable
+        void send(SelectionKey key, String message, boolean timed) throws IOException{
+            byte[] bytes = (message + "\n").getBytes(StandardCharsets.US_ASCII);
+            ByteBuffer next = ByteBuffer.allocate(out.remaining() + bytes.length);
+            next.put(out).put(bytes).flip();
+            out = next;
+            if (timed){
+                sentAt = System.nanoTime();
+            }
+            flush(key);
+        }
+
+        void flush(SelectionKey key) throws IOException{
+            channel.write(out);
+            key.interestOps(out.hasRemaining()
+                    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+    }
+
+
+
+
+    /*********************
+     * PROGRAM EXECUTION *
+     * ******************/
+
+    public static void main(String[] args) throws IOException{
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7777;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int numPlayers = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int games = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+
+        TableClient client = new TableClient(new InetSocketAddress(host, port));
+        long start = System.nanoTime();
+        client.run(clients, numPlayers, games);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(client.getGamesFinished() + " games, " + client.getMoves()
+                + " moves, " + client.getErrors() + " errors in "
+                + String.format("%.3f", seconds) + "s; reply latency p50 "
+                + client.getLatency().percentile(0.5) + " us, p99 "
+                + client.getLatency().percentile(0.99) + " us");
+    }
+}
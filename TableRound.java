@@ -0,0 +1,159 @@
+/* Author: Daniel Hammer
+ *
+ * TableRound class
+ *
+ * The cards on the table during one round: up to MAX_ATTACKS slots, each
+ *      an attack and the card that beat it, kept as card ids in two small
+ *      arrays, along with every card played as one CardSet
+ * One TableRound is made per game and reset() at the start of every round,
+ *      so playing a round allocates nothing
+ *
+ * Who may play is decided here too, so Durak and the simulators follow
+ *      the same rules:
+ *      the first attacker must lead with any card;
+ *      after each attack is beaten, every attacker is offered a throw-in
+ *      in seat order, starting with the first attacker and leaving out
+ *      the defender, and the first to throw in plays;
+ *      the round ends when every attacker has passed, MAX_ATTACKS attacks
+ *      were beaten, the defender has no cards left to beat one with, or
+ *      the defender picks the table up
+ * So attackers take turns: one who passed is asked again after the next
+ *      card is beaten, when there may be new faces to throw in
+ */
+
+import java.util.Arrays;
+
+public final class TableRound{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    public static final int MAX_ATTACKS = 6;
+
+    // No card in a slot
+    private static final byte EMPTY = -1;
+
+    // Card ids of each attack and of the card that beat it
+    private final byte[] attacks = new byte[MAX_ATTACKS];
+    private final byte[] defenses = new byte[MAX_ATTACKS];
+    private int size;
+
+    // Every card in the slots, counting duplicates from a shoe
+    private final CardSet cards = new CardSet();
+
+    private int defender;
+    private int firstAttacker;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    public TableRound(){
+        reset(-1, -1);
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public int getDefender(){
+        return this.defender;
+    }
+
+    public int getFirstAttacker(){
+        return this.firstAttacker;
+    }
+
+    // The number of attacks played so far
+    public int size(){
+        return this.size;
+    }
+
+    public boolean isEmpty(){
+        return this.size == 0;
+    }
+
+    // Every card played this round
+    // Only valid until the next reset()
+    public CardSet getCards(){
+        return this.cards;
+    }
+
+    // A mask of every card played this round
+    public long getBits(){
+        return this.cards.getBits();
+    }
+
+    public Card getAttack(int slot){
+        return Card.byId(attacks[slot]);
+    }
+
+    // Null if the attack in 'slot' has not been beaten
+    public Card getDefense(int slot){
+        return defenses[slot] == EMPTY ? null : Card.byId(defenses[slot]);
+    }
+
+    // The attack waiting to be beaten, or null
+    public Card getPending(){
+        return size > 0 && defenses[size - 1] == EMPTY ? getAttack(size - 1) : null;
+    }
+
+    // True once MAX_ATTACKS attacks have been played
+    public boolean isFull(){
+        return this.size == MAX_ATTACKS;
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // Clears the table for a round in which 'defender' defends and
+    //      'firstAttacker' leads
+    public void reset(int defender, int firstAttacker){
+        this.defender = defender;
+        this.firstAttacker = firstAttacker;
+        Arrays.fill(attacks, EMPTY);
+        Arrays.fill(defenses, EMPTY);
+        size = 0;
+        cards.clear();
+    }
+
+    // Lays an attack in the next slot
+    public void attack(Card card){
+        if (size == MAX_ATTACKS){
+            throw new IllegalStateException("the table already holds "
+                    + MAX_ATTACKS + " attacks");
+        }
+        if (getPending() != null){
+            throw new IllegalStateException("attack while " + getPending()
+                    + " is not beaten");
+        }
+        attacks[size++] = (byte) card.getId();
+        cards.add(card);
+    }
+
+    // Beats the pending attack with 'card'
+    public void beat(Card card){
+        if (getPending() == null){
+            throw new IllegalStateException("nothing to beat");
+        }
+        defenses[size - 1] = (byte) card.getId();
+        cards.add(card);
+    }
+
+    // Whether another card can be thrown in to a defender holding
+    //      'defenderCards' cards
+    public boolean isOpen(int defenderCards){
+        return size < MAX_ATTACKS && defenderCards > 0 && getPending() == null;
+    }
+}
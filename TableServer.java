@@ -0,0 +1,721 @@
+/* Author: Daniel Hammer
+ *
+ * TableServer class
+ *
+ * Hosts games of Durak for human players connecting over TCP
+ * A client sends "JOIN <players>" and is seated at a table of that size;
+ *      once the table is full, or has waited long enough for more humans,
+ *      NPCs take the empty seats and the game starts
+ *
+ * All sockets are served by one thread with a Selector, which never
+ *      blocks on a client
+ * Every table plays its game on a thread of its own, using the normal
+ *      Durak rules; humans play through a RemoteStrategy that sends them a
+ *      prompt and waits for the answer the selector thread hands over
+ * Tables use virtual threads where the JVM has them, and small platform
+ *      threads otherwise, so one JVM can hold thousands of tables
+ *
+ * The protocol is one line of ASCII text per message
+ * Cards are written as face and suit, e.g. "TH" (ten of hearts), "QS", "2C"
+ *
+ *      client:   JOIN <players>         sit down at a table of that size
+ *                PLAY <card>            answer a prompt with a card
+ *                PASS                   answer ATTACK? 0 without attacking
+ *                TAKE                   answer DEFEND? by picking up
+ *                QUIT
+ *      server:   WELCOME <table> <seat> <players>
+ *                START <trump suit> <players>
+ *                HAND <card> ...
+ *                ROUND <round> <defender>
+ *                ATTACK <seat> <card>   DEFEND <seat> <card>
+ *                PICKUP <seat>          MAX <seat>         OUT <seat>
+ *                LOSER <seat>           DRAW               STOPPED <rounds>
+ *                END <rounds> <loser seat or -1>
+ *                ATTACK? <must> <card> ...   (must is 1 if PASS is not allowed)
+ *                DEFEND? <attack> <card> ...
+ *                ERROR <reason>
+ *
+ * A human who does not answer in time, or disconnects, passes, picks up,
+ *      or plays their lowest legal card, as the prompt allows
+ *
+ * Usage: java TableServer [port] [fill millis]
+ *        java TableServer --selftest [tables] [players] [games per client]
+ *      the self-test starts a server on the loopback interface and plays
+ *      it with TableClient bots, one per table
+ */
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TableServer implements AutoCloseable{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    public static final int MAX_TABLE_SIZE = 8;
+    public static final long DEFAULT_MOVE_TIMEOUT_MILLIS = 30_000;
+
+    // Longer lines are not part of the protocol; the client is dropped
+    private static final int MAX_LINE = 256;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int BACKLOG = 4096;
+
+    private static final String FACES = "23456789TJQKA";
+    private static final String SUITS = "DHSC";
+
+    // Handed to a RemoteStrategy waiting on a client that has gone
+    private static final String GONE = "";
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final ThreadFactory tableThreads;
+    private final long fillNanos;
+    private volatile long moveTimeoutMillis = DEFAULT_MOVE_TIMEOUT_MILLIS;
+
+    // Connections with lines waiting to be written, for the selector thread
+    private final ConcurrentLinkedQueue<Connection> pendingWrites =
+        new ConcurrentLinkedQueue<Connection>();
+
+    // Tables still waiting for humans, by size; selector thread only
+    private final HashMap<Integer, Table> openTables = new HashMap<Integer, Table>();
+
+    private final AtomicLong tableIds = new AtomicLong();
+    private final AtomicLong gamesFinished = new AtomicLong();
+    private volatile boolean running;
+    private Thread loop;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    // Listens on 'address' (port 0 picks a free port)
+    // A table waits up to 'fillMillis' for more humans before NPCs sit down
+    public TableServer(InetSocketAddress address, long fillMillis) throws IOException{
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        this.server.bind(address, BACKLOG);
+        this.server.configureBlocking(false);
+        this.server.register(selector, SelectionKey.OP_ACCEPT);
+        this.tableThreads = tableThreads();
+        this.fillNanos = fillMillis * 1_000_000L;
+    }
+
+    // Virtual threads if this JVM has them, otherwise daemon platform
+    //      threads with a small stack
+    private static ThreadFactory tableThreads(){
+        try{
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                .getMethod("factory").invoke(builder);
+        }
+        catch (ReflectiveOperationException | RuntimeException e){
+            return r -> {
+                Thread t = new Thread(null, r, "durak-table", 256 * 1024);
+                t.setDaemon(true);
+                return t;
+            };
+        }
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public int getPort(){
+        return server.socket().getLocalPort();
+    }
+
+    public long getTablesStarted(){
+        return this.tableIds.get();
+    }
+
+    public long getGamesFinished(){
+        return this.gamesFinished.get();
+    }
+
+    // How long a human has to answer a prompt
+    public void setMoveTimeoutMillis(long millis){
+        this.moveTimeoutMillis = millis;
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // Starts serving on a thread of its own
+    public void start(){
+        running = true;
+        loop = new Thread(this::serve, "durak-server");
+        loop.start();
+    }
+
+    @Override
+    public void close() throws IOException{
+        running = false;
+        selector.wakeup();
+        if (loop != null){
+            try{
+                loop.join();
+            }
+            catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (SelectionKey key : selector.keys()){
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    // The selector loop: accepts, reads, writes, and starts tables whose
+    //      wait for humans is over
+    private void serve(){
+        try{
+            while (running){
+                selector.select(nextDeadlineMillis());
+                for (Connection c; (c = pendingWrites.poll()) != null;){
+                    if (c.key.isValid()){
+                        c.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()){
+                        continue;
+                    }
+                    if (key.isAcceptable()){
+                        accept();
+                        continue;
+                    }
+                    Connection c = (Connection) key.attachment();
+                    try{
+                        if (key.isReadable()){
+                            c.read();
+                        }
+                        if (key.isValid() && key.isWritable()){
+                            c.write();
+                        }
+                    }
+                    catch (IOException e){
+                        c.close();
+                    }
+                }
+                startDueTables();
+            }
+        }
+        catch (IOException e){
+            throw new java.io.UncheckedIOException(e);
+        }
+    }
+
+    private void accept() throws IOException{
+        SocketChannel channel;
+        while ((channel = server.accept()) != null){
+            channel.configureBlocking(false);
+            channel.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+            Connection c = new Connection(channel);
+            c.key = channel.register(selector, SelectionKey.OP_READ, c);
+        }
+    }
+
+    // Milliseconds until the next open table must start (0 means none)
+    private long nextDeadlineMillis(){
+        long next = Long.MAX_VALUE;
+        for (Table t : openTables.values()){
+            next = Math.min(next, t.deadline);
+        }
+        if (next == Long.MAX_VALUE){
+            return 0;
+        }
+        return Math.max(1, (next - System.nanoTime()) / 1_000_000L + 1);
+    }
+
+    private void startDueTables(){
+        long now = System.nanoTime();
+        Iterator<Table> tables = openTables.values().iterator();
+        while (tables.hasNext()){
+            Table t = tables.next();
+            if (now >= t.deadline){
+                tables.remove();
+                t.start();
+            }
+        }
+    }
+
+    // Handles one line from a client, on the selector thread
+    private void handle(Connection c, String line){
+        String[] words = line.trim().split(" +");
+        switch (words[0]){
+            case "JOIN":
+                if (c.table != null){
+                    c.send("ERROR already at a table");
+                    return;
+                }
+                int size;
+                try{
+                    size = words.length > 1 ? Integer.parseInt(words[1]) : 4;
+                }
+                catch (NumberFormatException e){
+                    c.send("ERROR bad table size");
+                    return;
+                }
+                if (size < 2 || size > MAX_TABLE_SIZE){
+                    c.send("ERROR tables hold 2 to " + MAX_TABLE_SIZE + " players");
+                    return;
+                }
+                join(c, size);
+                return;
+            case "PLAY":
+            case "PASS":
+            case "TAKE":
+                if (c.table == null){
+                    c.send("ERROR not at a table");
+                    return;
+                }
+                c.replies.offer(line.trim());
+                return;
+            case "QUIT":
+                c.close();
+                return;
+            default:
+                c.send("ERROR unknown command " + words[0]);
+        }
+    }
+
+    private void join(Connection c, int size){
+        Table t = openTables.get(size);
+        if (t == null){
+            t = new Table(tableIds.incrementAndGet(), size, System.nanoTime() + fillNanos);
+            openTables.put(size, t);
+        }
+        c.table = t;
+        t.humans.add(c);
+        if (t.humans.size() == size || fillNanos == 0){
+            openTables.remove(size);
+            t.start();
+        }
+    }
+
+
+
+
+    /**************
+     * CONNECTION *
+     * ***********/
+
+    // One client; read and written only by the selector thread, except
+    //      for send(), which any thread may call
+    private final class Connection{
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final StringBuilder line = new StringBuilder();
+        private final ConcurrentLinkedQueue<String> outbox = new ConcurrentLinkedQueue<String>();
+        private final AtomicBoolean writeScheduled = new AtomicBoolean();
+
+        // The message being copied into 'out', with its newline, and how
+        //      much of it is copied; a message longer than the buffer goes
+        //      out over several writes
+        private byte[] message;
+        private int copied;
+
+        // Answers to prompts, for the table's RemoteStrategy
+        private final LinkedBlockingQueue<String> replies = new LinkedBlockingQueue<String>();
+        private volatile Table table;
+        private volatile boolean closed;
+
+        Connection(SocketChannel channel){
+            this.channel = channel;
+            this.out.flip();
+        }
+
+        void send(String message){
+            if (closed){
+                return;
+            }
+            outbox.add(message);
+            if (writeScheduled.compareAndSet(false, true)){
+                pendingWrites.add(this);
+                selector.wakeup();
+            }
+        }
+
+        void read() throws IOException{
+            int n = channel.read(in);
+            if (n < 0){
+                close();
+                return;
+            }
+            in.flip();
+            while (in.hasRemaining()){
+                char ch = (char) (in.get() & 0xFF);
+                if (ch == '\n'){
+                    String s = line.toString();
+                    line.setLength(0);
+                    if (!s.isBlank()){
+                        handle(this, s);
+                    }
+                }
+                else if (ch != '\r'){
+                    if (line.length() == MAX_LINE){
+                        close();
+                        return;
+                    }
+                    line.append(ch);
+                }
+            }
+            in.clear();
+        }
+
+        // Writes as much as the socket takes; keeps OP_WRITE only while
+        //      something is left
+        void write() throws IOException{
+            while (true){
+                if (!out.hasRemaining()){
+                    out.clear();
+                    while (out.hasRemaining()){
+                        if (message == null){
+                            String s = outbox.poll();
+                            if (s == null){
+                                break;
+                            }
+                            message = (s + '\n').getBytes(StandardCharsets.US_ASCII);
+                            copied = 0;
+                        }
+                        int n = Math.min(out.remaining(), message.length - copied);
+                        out.put(message, copied, n);
+                        copied += n;
+                        if (copied == message.length){
+                            message = null;
+                        }
+                    }
+                    out.flip();
+                    if (!out.hasRemaining()){
+                        break;
+                    }
+                }
+                channel.write(out);
+                if (out.hasRemaining()){
+                    return;
+                }
+            }
+            writeScheduled.set(false);
+            if (!outbox.isEmpty() && writeScheduled.compareAndSet(false, true)){
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+
+        void close(){
+            if (closed){
+                return;
+            }
+            closed = true;
+            replies.offer(GONE);
+            key.cancel();
+            try{
+                channel.close();
+            }
+            catch (IOException e){
+                // Nothing more to do for a client that is gone
+            }
+        }
+    }
+
+
+
+
+    /*********
+     * TABLE *
+     * ******/
+
+    // One game; humans sit in the lowest seats and NPCs fill the rest
+    private final class Table implements GameEventListener{
+        private final long id;
+        private final int size;
+        private final long deadline;
+        private final ArrayList<Connection> humans = new ArrayList<Connection>();
+
+        Table(long id, int size, long deadline){
+            this.id = id;
+            this.size = size;
+            this.deadline = deadline;
+        }
+
+        void start(){
+            tableThreads.newThread(this::play).start();
+        }
+
+        private void play(){
+            long seed = SplitMix.mix64(id ^ System.nanoTime());
+            Durak game = new Durak(new GameConfig(size, 6, false, seed), this);
+            ArrayList<Player> players = game.getGame().getPlayers();
+            for (int i = 0; i < humans.size(); i++){
+                Connection c = humans.get(i);
+                players.get(i).setName("Human #" + (i + 1));
+                players.get(i).setStrategy(new RemoteStrategy(c));
+                c.send("WELCOME " + id + " " + i + " " + size);
+            }
+            game.playGame();
+            gamesFinished.incrementAndGet();
+        }
+
+        private void broadcast(String message){
+            for (Connection c : humans){
+                c.send(message);
+            }
+        }
+
+        @Override
+        public void gameStarted(long seed, int numPlayers, TrumpContext trump){
+            broadcast("START " + SUITS.charAt(trump.getSuit().ordinal()) + " " + numPlayers);
+        }
+
+        @Override
+        public void startingHandDealt(Player player){
+            if (player.getSeat() < humans.size()){
+                humans.get(player.getSeat()).send(hand(player));
+            }
+        }
+
+        @Override
+        public void roundStarted(int round, Player defender){
+            broadcast("ROUND " + round + " " + defender.getSeat());
+        }
+
+        @Override
+        public void attackPlayed(int attackNumber, Player attacker, Card card){
+            broadcast("ATTACK " + attacker.getSeat() + " " + code(card));
+        }
+
+        @Override
+        public void defended(Player defender, Card attack, Card defense){
+            broadcast("DEFEND " + defender.getSeat() + " " + code(defense));
+        }
+
+        @Override
+        public void pickedUp(Player defender, CardSet cards){
+            broadcast("PICKUP " + defender.getSeat());
+        }
+
+        @Override
+        public void maxAttacksReached(Player defender){
+            broadcast("MAX " + defender.getSeat());
+        }
+
+        @Override
+        public void playerFinished(Player player){
+            broadcast("OUT " + player.getSeat());
+        }
+
+        @Override
+        public void loserDeclared(Player loser){
+            broadcast("LOSER " + loser.getSeat());
+        }
+
+        @Override
+        public void draw(){
+            broadcast("DRAW");
+        }
+
+        @Override
+        public void roundLimitReached(int rounds){
+            broadcast("STOPPED " + rounds);
+        }
+
+        // Frees the humans to JOIN again before telling them it is over
+        @Override
+        public void gameEnded(GameResult result){
+            for (Connection c : humans){
+                c.table = null;
+                c.replies.clear();
+            }
+            broadcast("END " + result.getRoundsPlayed() + " " + result.getLoserSeat());
+        }
+    }
+
+
+
+
+    /*******************
+     * REMOTE STRATEGY *
+     * ****************/
+
+    // Plays a seat by asking its client, on the table's thread
+    private final class RemoteStrategy implements Strategy{
+        private final Connection client;
+
+        RemoteStrategy(Connection client){
+            this.client = client;
+        }
+
+        @Override
+        public Card chooseAttack(Player self, TableView table, long legal,
+                boolean mustPlay){
+            String reply = ask(self, "ATTACK? " + (mustPlay ? 1 : 0) + cards(legal),
+                    legal, mustPlay ? null : "PASS");
+            return reply == null ? (mustPlay ? Card.byId(Long.numberOfTrailingZeros(legal))
+                    : null) : play(reply);
+        }
+
+        @Override
+        public Card chooseDefense(Player self, TableView table, Card attack,
+                long legal){
+            String reply = ask(self, "DEFEND? " + code(attack) + cards(legal), legal, "TAKE");
+            return reply == null ? null : play(reply);
+        }
+
+        private Card play(String reply){
+            return reply.startsWith("PLAY") ? parseCard(reply.substring(5)) : null;
+        }
+
+        // Returns a valid reply, or null if the client is gone or too slow
+        private String ask(Player self, String prompt, long legal, String refusal){
+            client.replies.clear();
+            if (client.closed){
+                return null;
+            }
+            client.send(hand(self));
+            client.send(prompt);
+            long deadline = System.nanoTime() + moveTimeoutMillis * 1_000_000L;
+            try{
+                while (true){
+                    long wait = deadline - System.nanoTime();
+                    String reply = wait <= 0 ? null
+                        : client.replies.poll(wait, TimeUnit.NANOSECONDS);
+                    if (reply == null || reply == GONE){
+                        return null;
+                    }
+                    if (reply.equals(refusal)){
+                        return reply;
+                    }
+                    if (reply.startsWith("PLAY ")){
+                        Card c = parseCard(reply.substring(5));
+                        if (c != null && (legal & CardSet.bit(c)) != 0){
+                            return reply;
+                        }
+                    }
+                    client.send("ERROR illegal reply " + reply);
+                    client.send(prompt);
+                }
+            }
+            catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+
+
+
+    /******************
+     * STATIC HELPERS *
+     * ***************/
+
+    // Two characters: face, then suit
+    public static String code(Card c){
+        return "" + FACES.charAt(c.getFace().ordinal()) + SUITS.charAt(c.getSuit().ordinal());
+    }
+
+    // Returns null if 's' is not a card
+    public static Card parseCard(String s){
+        s = s.trim();
+        if (s.length() != 2){
+            return null;
+        }
+        int f = FACES.indexOf(Character.toUpperCase(s.charAt(0)));
+        int u = SUITS.indexOf(Character.toUpperCase(s.charAt(1)));
+        return f < 0 || u < 0 ? null : Card.of(Suit.values()[u], Face.values()[f]);
+    }
+
+    // " XX YY ..." for every card in the mask
+    static String cards(long mask){
+        StringBuilder sb = new StringBuilder();
+        for (; mask != 0; mask &= mask - 1){
+            sb.append(' ').append(code(Card.byId(Long.numberOfTrailingZeros(mask))));
+        }
+        return sb.toString();
+    }
+
+    private static String hand(Player p){
+        return "HAND" + cards(p.getHand().getBits());
+    }
+
+
+
+
+    /*********************
+     * PROGRAM EXECUTION *
+     * ******************/
+
+    public static void main(String[] args) throws Exception{
+        if (args.length > 0 && args[0].equals("--selftest")){
+            int tables = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+            int numPlayers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+            int games = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+            System.exit(selfTest(tables, numPlayers, games) ? 0 : 1);
+        }
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7777;
+        long fillMillis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        TableServer server = new TableServer(new InetSocketAddress(port), fillMillis);
+        server.start();
+        System.out.println("Durak server listening on port " + server.getPort());
+    }
+
+    // Plays 'tables' loopback bots, each alone with NPCs at its own table,
+    //      for 'games' games each; returns true if every game finished
+    public static boolean selfTest(int tables, int numPlayers, int games) throws Exception{
+        try (TableServer server = new TableServer(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0)){
+            server.setMoveTimeoutMillis(10_000);
+            server.start();
+            long start = System.nanoTime();
+            TableClient client = new TableClient(new InetSocketAddress(
+                        InetAddress.getLoopbackAddress(), server.getPort()));
+            client.run(tables, numPlayers, games);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            long expected = (long) tables * games;
+            System.out.println(client.getGamesFinished() + " of " + expected
+                    + " games finished at " + tables + " concurrent tables in "
+                    + String.format("%.3f", seconds) + "s ("
+                    + String.format("%.0f", client.getGamesFinished() / seconds)
+                    + " games/s, server started " + server.getTablesStarted() + " tables)");
+            System.out.println(client.getMoves() + " human moves, server reply latency"
+                    + " p50 " + client.getLatency().percentile(0.5) + " us, p99 "
+                    + client.getLatency().percentile(0.99) + " us, mean "
+                    + String.format("%.0f", client.getLatency().getMean()) + " us");
+            return client.getGamesFinished() == expected && client.getErrors() == 0;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+/* Author: Daniel Hammer
+ *
+ * TableView interface
+ *
+ * What a Strategy may ask about the game it is playing in
+ * Durak implements this for the game it is running
+ */
+
+public interface TableView{
+
+    // A mask of every card played so far this round
+    long getTable();
+
+    // What can be known about every other hand from the game so far
+    // Null if the game is not being tracked
+    CardTracker getTracker();
+
+    // The game as it stands, as seen by 'observer', for searching
+    // If 'pendingAttack' is not null, the observer is defending against it;
+    //      otherwise the observer is about to attack
+    // The state holds every card where it really is, so a searcher must
+    //      treat other players' hands and the deck as hidden (see
+    //      IsmctsStrategy), using only their sizes and union
+    GameState snapshot(Player observer, Card pendingAttack);
+}
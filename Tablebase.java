@@ -0,0 +1,695 @@
+/* Author: Daniel Hammer
+ *
+ * Tablebase class
+ *
+ * Win/draw/loss for every two-player endgame with few cards left, stored
+ *      in a file and read through a MappedByteBuffer, so a lookup is a
+ *      single byte read and opening the file costs nothing on the heap
+ *
+ * Positions are round starts with an empty deck: the attacker's hand and
+ *      the defender's hand, holding at most getMaxCards() cards between
+ *      them; values are for the attacker
+ * Only the trump and the other suits' relation to each other matter, so
+ *      suits are relabelled before every lookup: the trump becomes suit 0
+ *      and the other three are sorted by what each player holds in them
+ *      (see canonical()); only positions already in that form are stored
+ *
+ * Index: positions are grouped by the number of cards n; within a group,
+ *      the set of cards is ranked in the combinatorial number system and
+ *      n more bits say which of them the attacker holds
+ * Each value takes 2 bits: 0 not stored, then WIN, DRAW, LOSS
+ *
+ * Generation goes up one card count at a time, since a round can only
+ *      keep or discard cards
+ * Takes keep the count the same, so a group is solved by repeated passes:
+ *      each position's round is searched with every unsolved round start
+ *      counted first as a loss and then as a win; when both agree the
+ *      position is solved
+ * When a pass solves nothing more, the rest are draws: neither player can
+ *      force the other to lose, so the game goes round forever
+ * Passes are split into chunks and spread over a ForkJoinPool; a bitmap in
+ *      the header marks finished chunks, so a stopped generation picks up
+ *      where it left off
+ *
+ * Rounds are played by GameState, so the rules are exactly the engine's
+ *
+ * Usage: java Tablebase <file> [maxCards] [threads] [--check=<positions>]
+ *      generates the file, or finishes generating it, and prints a summary
+ *      --check compares random positions, with their suits relabelled,
+ *      against EndgameSolver and exits with 1 if any differ
+ */
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class Tablebase implements AutoCloseable{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    public static final int WIN = 1;
+    public static final int DRAW = 0;
+    public static final int LOSS = -1;
+
+    // Returned for positions the tablebase does not cover
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    // Six cards between the players is already a 325 MB file
+    public static final int MAX_CARDS = 6;
+
+    // File layout: header, then the 2-bit values
+    private static final int MAGIC = 0x44544231;
+    // Version 2 offers throw-ins to the attackers in turn (see TableRound)
+    private static final int VERSION = 2;
+    private static final int HEADER = 4096;
+    private static final int LEVELS_DONE = 12;
+    private static final int BITMAP = 64;
+
+    // Entries per chunk of work; every group starts on a chunk boundary
+    private static final int CHUNK = 1 << 16;
+
+    // Stored codes
+    private static final int NONE = 0;
+    private static final int CODE_WIN = 1;
+    private static final int CODE_DRAW = 2;
+    private static final int CODE_LOSS = 3;
+
+    private static final Suit TRUMP = Suit.values()[0];
+    private static final TrumpContext CANONICAL_TRUMP = TrumpContext.of(TRUMP);
+    private static final byte[] NO_DECK = new byte[0];
+
+    // Binomial coefficients, and 13-bit face masks spread onto suit 0
+    private static final long[][] CHOOSE = new long[Card.count() + 1][MAX_CARDS + 2];
+    private static final long[] SPREAD = new long[1 << 13];
+    static{
+        for (int n = 0; n < CHOOSE.length; n++){
+            CHOOSE[n][0] = 1;
+            for (int k = 1; k < CHOOSE[n].length && n > 0; k++){
+                CHOOSE[n][k] = CHOOSE[n - 1][k - 1] + CHOOSE[n - 1][k];
+            }
+        }
+        for (int m = 1; m < SPREAD.length; m++){
+            int f = Integer.numberOfTrailingZeros(m);
+            SPREAD[m] = SPREAD[m & (m - 1)] | 1L << (f * 4);
+        }
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+    private final int maxCards;
+
+    // First entry of each card count; base[maxCards + 1] is the total
+    private final long[] base;
+
+    // Generation state, shared by the chunk tasks
+    private int level;
+    private boolean finishing;
+    private final AtomicBoolean changed = new AtomicBoolean();
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    private Tablebase(Path file, int maxCards, boolean write) throws IOException{
+        if (write){
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        else{
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+        boolean fresh = channel.size() == 0;
+        if (!fresh){
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+            if (header.getInt(0) != MAGIC){
+                channel.close();
+                throw new IllegalStateException(file + " is not a tablebase");
+            }
+            if (header.getInt(4) != VERSION){
+                channel.close();
+                throw new IllegalStateException(file + " was generated under other"
+                        + " rules; delete it and generate it again");
+            }
+            int stored = header.getInt(8);
+            if (maxCards > 0 && stored != maxCards){
+                channel.close();
+                throw new IllegalArgumentException(file + " holds up to " + stored
+                        + " cards, not " + maxCards);
+            }
+            maxCards = stored;
+        }
+        if (maxCards < 2 || maxCards > MAX_CARDS){
+            channel.close();
+            throw new IllegalArgumentException("maxCards must be between 2 and " + MAX_CARDS);
+        }
+        this.maxCards = maxCards;
+
+        this.base = new long[maxCards + 2];
+        for (int n = 2; n <= maxCards; n++){
+            long entries = CHOOSE[Card.count()][n] << n;
+            base[n + 1] = base[n] + (entries + CHUNK - 1) / CHUNK * CHUNK;
+        }
+
+        long size = HEADER + base[maxCards + 1] / 4;
+        this.data = channel.map(write ? FileChannel.MapMode.READ_WRITE
+                : FileChannel.MapMode.READ_ONLY, 0, size);
+        if (fresh){
+            data.putInt(0, MAGIC);
+            data.putInt(4, VERSION);
+            data.putInt(8, maxCards);
+            data.putInt(LEVELS_DONE, 1);
+        }
+    }
+
+    // Opens a finished tablebase for lookups
+    public static Tablebase open(Path file) throws IOException{
+        Tablebase tb = new Tablebase(file, 0, false);
+        if (tb.getLevelsDone() < tb.maxCards){
+            tb.close();
+            throw new IllegalStateException(file + " is not finished; generate it again to resume");
+        }
+        return tb;
+    }
+
+    // Generates a tablebase for up to 'maxCards' cards on 'threads' threads,
+    //      resuming from whatever 'file' already holds
+    public static Tablebase generate(Path file, int maxCards, int threads) throws IOException{
+        Tablebase tb = new Tablebase(file, maxCards, true);
+        tb.build(threads);
+        return tb;
+    }
+
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public int getMaxCards(){
+        return this.maxCards;
+    }
+
+    // The largest card count already solved
+    public int getLevelsDone(){
+        return data.getInt(LEVELS_DONE);
+    }
+
+
+
+
+    /******************
+     * LOOKUP METHODS *
+     * ***************/
+
+    // The value for the attacker of a round start with an empty deck,
+    //      or UNKNOWN if it holds too many cards or is not solved yet
+    public int probe(long attacker, long defender, Suit trump){
+        long cards = attacker | defender;
+        int n = Long.bitCount(cards);
+        if (n > maxCards || attacker == 0 || defender == 0 || (attacker & defender) != 0){
+            return UNKNOWN;
+        }
+        int perm = canonical(attacker, defender, trump.ordinal());
+        return decode(code(index(permute(attacker, perm), permute(defender, perm))));
+    }
+
+    // The value for the seat to move of a two-player state with an empty
+    //      deck, at any point in a round, or UNKNOWN if it is not covered
+    public int value(GameState state){
+        if (!covers(state)){
+            return UNKNOWN;
+        }
+        return roundValue(state, state.toMove(), state.getRound(), UNKNOWN);
+    }
+
+    // The best move in 'allowed' for the seat to move, or -1 if the state
+    //      is not covered
+    // Moves of equal value are ranked cheap cards first, then PASS, then TAKE
+    public int bestMove(GameState state, long allowed){
+        if (!covers(state)){
+            return -1;
+        }
+        int seat = state.toMove();
+        int round = state.getRound();
+        long moves = state.legalMoves() & allowed;
+        long trumps = state.getTrump().getTrumpMask();
+        long[] groups = {moves & CardSet.ALL & ~trumps, moves & trumps, moves & ~CardSet.ALL};
+        int best = -1;
+        int bestValue = LOSS - 1;
+        for (long group : groups){
+            for (; group != 0 && bestValue < WIN; group &= group - 1){
+                int move = Long.numberOfTrailingZeros(group);
+                state.apply(move);
+                int v = roundValue(state, seat, round, UNKNOWN);
+                state.undo();
+                if (v != UNKNOWN && v > bestValue){
+                    bestValue = v;
+                    best = move;
+                }
+            }
+        }
+        return best;
+    }
+
+    private boolean covers(GameState state){
+        if (state.getDeckSize() != 0 || state.getActiveCount() != 2 || state.isOver()){
+            return false;
+        }
+        long cards = state.getTable();
+        for (int s = 0; s < state.getNumPlayers(); s++){
+            cards |= state.getHand(s);
+        }
+        return Long.bitCount(cards) <= maxCards && getLevelsDone() >= Long.bitCount(cards);
+    }
+
+    // The value for 'seat' of playing out the current round, with the
+    //      next round start looked up; round starts that are not solved
+    //      count as 'unsolved'
+    private int roundValue(GameState s, int seat, int round, int unsolved){
+        if (s.isOver()){
+            int loser = s.getLoser();
+            return loser == -1 ? DRAW : loser == seat ? LOSS : WIN;
+        }
+        if (s.getRound() != round){
+            int a = s.getAttacker();
+            int v = probe(s.getHand(a), s.getHand(s.getDefender()), s.getTrump().getSuit());
+            if (v == UNKNOWN){
+                return unsolved;
+            }
+            return a == seat ? v : -v;
+        }
+
+        boolean max = s.toMove() == seat;
+        int best = max ? LOSS - 1 : WIN + 1;
+        for (long moves = s.legalMoves(); moves != 0; moves &= moves - 1){
+            s.apply(Long.numberOfTrailingZeros(moves));
+            int v = roundValue(s, seat, round, unsolved);
+            s.undo();
+            if (v == UNKNOWN){
+                return UNKNOWN;
+            }
+            if (max ? v > best : v < best){
+                best = v;
+                if (best == (max ? WIN : LOSS)){
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+
+
+
+    /*****************
+     * INDEX METHODS *
+     * **************/
+
+    // The suit relabelling that puts a position in canonical form, as the
+    //      new suit of each old suit, two bits each
+    // The trump becomes suit 0; the others are ordered by their faces in
+    //      the attacker's hand, then in the defender's (equal suits are
+    //      interchangeable, so their order does not matter)
+    static int canonical(long attacker, long defender, int trump){
+        long[] sig = new long[4];
+        int[] order = new int[3];
+        int k = 0;
+        for (int s = 0; s < 4; s++){
+            sig[s] = (long) faces(attacker, s) << 13 | faces(defender, s);
+            if (s != trump){
+                order[k++] = s;
+            }
+        }
+        for (int i = 1; i < 3; i++){
+            for (int j = i; j > 0 && sig[order[j]] > sig[order[j - 1]]; j--){
+                int t = order[j];
+                order[j] = order[j - 1];
+                order[j - 1] = t;
+            }
+        }
+        int perm = 0;
+        for (int i = 0; i < 3; i++){
+            perm |= (i + 1) << (order[i] * 2);
+        }
+        return perm;
+    }
+
+    // Moves every card to its new suit
+    static long permute(long cards, int perm){
+        long out = 0L;
+        for (int s = 0; s < 4; s++){
+            out |= SPREAD[faces(cards, s)] << ((perm >>> (s * 2)) & 3);
+        }
+        return out;
+    }
+
+    // The faces held in suit 's', as a 13-bit mask
+    private static int faces(long cards, int s){
+        int m = 0;
+        for (long c = (cards >>> s) & 0x1111111111111L; c != 0; c &= c - 1){
+            m |= 1 << (Long.numberOfTrailingZeros(c) >>> 2);
+        }
+        return m;
+    }
+
+    private long index(long attacker, long defender){
+        long cards = attacker | defender;
+        int n = Long.bitCount(cards);
+        long rank = 0;
+        int held = 0;
+        int i = 0;
+        for (long c = cards; c != 0; c &= c - 1, i++){
+            int p = Long.numberOfTrailingZeros(c);
+            rank += CHOOSE[p][i + 1];
+            if ((attacker & (1L << p)) != 0){
+                held |= 1 << i;
+            }
+        }
+        return base[n] + (rank << n) + held;
+    }
+
+    // The set of 'n' cards with the passed rank
+    private static long unrank(long rank, int n){
+        long cards = 0L;
+        int p = Card.count();
+        for (int i = n; i > 0; i--){
+            do{
+                p--;
+            } while (CHOOSE[p][i] > rank);
+            rank -= CHOOSE[p][i];
+            cards |= 1L << p;
+        }
+        return cards;
+    }
+
+    private int code(long i){
+        int b = data.get(HEADER + (int) (i >>> 2));
+        return (b >>> ((int) (i & 3) * 2)) & 3;
+    }
+
+    private void setCode(long i, int code){
+        int pos = HEADER + (int) (i >>> 2);
+        int shift = (int) (i & 3) * 2;
+        int b = data.get(pos) & ~(3 << shift);
+        data.put(pos, (byte) (b | code << shift));
+    }
+
+    private static int decode(int code){
+        switch (code){
+            case CODE_WIN: return WIN;
+            case CODE_DRAW: return DRAW;
+            case CODE_LOSS: return LOSS;
+            default: return UNKNOWN;
+        }
+    }
+
+    private static int encode(int value){
+        return value == WIN ? CODE_WIN : value == DRAW ? CODE_DRAW : CODE_LOSS;
+    }
+
+
+
+
+    /**********************
+     * GENERATION METHODS *
+     * *******************/
+
+    private void build(int threads){
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try{
+            for (int n = getLevelsDone() + 1; n <= maxCards; n++){
+                level = n;
+                int chunks = (int) ((base[n + 1] - base[n]) / CHUNK);
+                finishing = false;
+                do{
+                    changed.set(false);
+                    pool.invoke(new ChunkRange(0, chunks));
+                } while (changed.get());
+
+                // Whatever is left is a draw
+                finishing = true;
+                pool.invoke(new ChunkRange(0, chunks));
+                for (int i = BITMAP; i < HEADER; i++){
+                    data.put(i, (byte) 0);
+                }
+                data.putInt(LEVELS_DONE, n);
+                data.force();
+            }
+        }
+        finally{
+            pool.shutdown();
+        }
+    }
+
+    // Splits a range of chunks until one is left, then solves it
+    private class ChunkRange extends RecursiveAction{
+        private static final long serialVersionUID = 1L;
+
+        private final int lo;
+        private final int hi;
+
+        ChunkRange(int lo, int hi){
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute(){
+            if (hi - lo > 1){
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new ChunkRange(lo, mid), new ChunkRange(mid, hi));
+            }
+            else if (hi > lo && !isChunkDone(lo)){
+                solveChunk(lo);
+            }
+        }
+    }
+
+    // One pass over one chunk of the current level
+    private void solveChunk(int chunk){
+        int n = level;
+        long first = base[n] + (long) chunk * CHUNK;
+        long end = Math.min(first + CHUNK, base[n] + (CHOOSE[Card.count()][n] << n));
+        int full = (1 << n) - 1;
+        GameState state = new GameState(2);
+        boolean left = false;
+
+        long cards = 0L;
+        long lastRank = -1;
+        for (long i = first; i < end; i++){
+            long local = i - base[n];
+            int held = (int) (local & full);
+            if (held == 0 || held == full || code(i) != NONE){
+                continue;
+            }
+            long rank = local >>> n;
+            if (rank != lastRank){
+                cards = unrank(rank, n);
+                lastRank = rank;
+            }
+            long attacker = 0L;
+            int b = 0;
+            for (long c = cards; c != 0; c &= c - 1, b++){
+                if ((held & (1 << b)) != 0){
+                    attacker |= c & -c;
+                }
+            }
+            long defender = cards & ~attacker;
+            int perm = canonical(attacker, defender, 0);
+            if (permute(attacker, perm) != attacker || permute(defender, perm) != defender){
+                continue;
+            }
+
+            if (finishing){
+                setCode(i, CODE_DRAW);
+                continue;
+            }
+            state.setHand(0, attacker);
+            state.setHand(1, defender);
+            state.setDeck(NO_DECK, 0);
+            state.setPosition(CANONICAL_TRUMP, 3, 1, 1, 0, 0, GameState.ATTACK,
+                    0L, -1, 0);
+            int low = roundValue(state, 0, 1, LOSS);
+            int high = roundValue(state, 0, 1, WIN);
+            if (low == high){
+                setCode(i, encode(low));
+                changed.set(true);
+            }
+            else{
+                left = true;
+            }
+        }
+        if (!left && !finishing){
+            markChunkDone(chunk);
+        }
+    }
+
+    private boolean isChunkDone(int chunk){
+        return (data.get(BITMAP + (chunk >>> 3)) & (1 << (chunk & 7))) != 0;
+    }
+
+    private synchronized void markChunkDone(int chunk){
+        int pos = BITMAP + (chunk >>> 3);
+        data.put(pos, (byte) (data.get(pos) | 1 << (chunk & 7)));
+    }
+
+
+
+
+    /*********************
+     * DIFFERENTIAL TEST *
+     * ******************/
+
+    // Solves 'positions' random round starts with EndgameSolver and
+    //      returns the number whose value differs from this table's, or
+    //      whose value changes when the suits are relabelled, printing the
+    //      first few
+    public long check(long positions, long seed){
+        RandomSource rand = new SplitMix(seed);
+        EndgameSolver solver = new EndgameSolver();
+        GameState state = new GameState(2);
+        Suit[] suits = Suit.values();
+        int[] ids = new int[Card.count()];
+        int[] perm = new int[suits.length];
+        long mismatches = 0;
+        for (long p = 0; p < positions; p++){
+            for (int i = 0; i < ids.length; i++){
+                ids[i] = i;
+            }
+            for (int i = ids.length - 1; i > 0; i--){
+                int j = rand.nextInt(i + 1);
+                int x = ids[i];
+                ids[i] = ids[j];
+                ids[j] = x;
+            }
+            int n = 2 + rand.nextInt(maxCards - 1);
+            int held = 1 + rand.nextInt(n - 1);
+            long attacker = 0;
+            long defender = 0;
+            for (int i = 0; i < n; i++){
+                if (i < held){
+                    attacker |= 1L << ids[i];
+                }
+                else{
+                    defender |= 1L << ids[i];
+                }
+            }
+            Suit trump = suits[rand.nextInt(suits.length)];
+
+            // The same position with the suits shuffled
+            for (int i = 0; i < perm.length; i++){
+                perm[i] = i;
+            }
+            for (int i = perm.length - 1; i > 0; i--){
+                int j = rand.nextInt(i + 1);
+                int x = perm[i];
+                perm[i] = perm[j];
+                perm[j] = x;
+            }
+            long attacker2 = 0;
+            long defender2 = 0;
+            for (long c = attacker | defender; c != 0; c &= c - 1){
+                int id = Long.numberOfTrailingZeros(c);
+                long bit = 1L << ((id & ~3) | perm[id & 3]);
+                if ((attacker & (1L << id)) != 0){
+                    attacker2 |= bit;
+                }
+                else{
+                    defender2 |= bit;
+                }
+            }
+
+            state.setHand(0, attacker);
+            state.setHand(1, defender);
+            state.setDeck(NO_DECK, 0);
+            state.setPosition(TrumpContext.of(trump), 3, 1, 1, 0, 0, GameState.ATTACK,
+                    0L, -1, 0);
+            int v = value(state);
+            int relabelled = probe(attacker2, defender2, suits[perm[trump.ordinal()]]);
+            // Keys leave out the trump, so nothing is kept between positions
+            solver.getTable().clear();
+            int solved = solver.solve(state, 0, EndgameSolver.DEFAULT_NODE_LIMIT);
+            if (solved != EndgameSolver.UNKNOWN && (v != solved || relabelled != v)){
+                if (mismatches++ < 10){
+                    System.out.println(state + "\n   table " + v + ", relabelled "
+                            + relabelled + ", solver " + solved);
+                }
+            }
+        }
+        return mismatches;
+    }
+
+
+
+
+    /*********************
+     * PROGRAM EXECUTION *
+     * ******************/
+
+    public static void main(String[] args) throws IOException{
+        long check = 0;
+        ArrayList<String> positional = new ArrayList<String>();
+        for (String arg : args){
+            if (arg.startsWith("--check=")){
+                check = Long.parseLong(arg.substring("--check=".length()));
+            }
+            else{
+                positional.add(arg);
+            }
+        }
+        args = positional.toArray(new String[0]);
+
+        if (args.length < 1){
+            System.out.println("Usage: java Tablebase <file> [maxCards] [threads]"
+                    + " [--check=<positions>]");
+            return;
+        }
+        Path file = Path.of(args[0]);
+        int maxCards = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+            : Runtime.getRuntime().availableProcessors();
+
+        long start = System.nanoTime();
+        try (Tablebase tb = generate(file, maxCards, threads)){
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println("Tablebase for up to " + maxCards + " cards in "
+                    + String.format("%.3f", seconds) + "s ("
+                    + (HEADER + tb.base[maxCards + 1] / 4) + " bytes)");
+            for (int n = 2; n <= maxCards; n++){
+                long[] counts = new long[4];
+                for (long i = tb.base[n]; i < tb.base[n + 1]; i++){
+                    counts[tb.code(i)]++;
+                }
+                System.out.println(n + " cards: " + counts[CODE_WIN] + " wins, "
+                        + counts[CODE_DRAW] + " draws, " + counts[CODE_LOSS]
+                        + " losses for the attacker");
+            }
+
+            if (check > 0){
+                long mismatches = tb.check(check, 1L);
+                System.out.println(check + " positions checked against EndgameSolver, "
+                        + mismatches + " differ");
+                if (mismatches != 0){
+                    System.exit(1);
+                }
+            }
+        }
+    }
+}
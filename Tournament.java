@@ -0,0 +1,605 @@
+/* Author: Daniel Hammer
+ *
+ * Tournament class
+ *
+ * Compares NPC configurations (attack/defend chances, or a Strategy)
+ *      by playing them against each other, two at a time
+ *
+ * A pairing is played in blocks: every block deals one seed, and plays it
+ *      once for every way of seating the two entrants at the table (each
+ *      holding at least one seat), so neither gains from where it sits or
+ *      from the cards it happened to be dealt
+ * An entrant scores 1 for a game in which the other one holds the durak's
+ *      seat, 0 when it does, and 1/2 for a draw or a game stopped at
+ *      Durak.MAX_ROUNDS; averaged over a block, two equal entrants score
+ *      exactly 1/2
+ * Stopped games are counted in each Result, apart from the draws
+ *
+ * How the deals are chosen is the Sampling mode; most of the noise in a
+ *      comparison comes from the deal, not the entrants, so:
+ *      INDEPENDENT deals every game of a block afresh (no common numbers)
+ *      COMMON      deals one seed per block, played at every seating
+ *                  (common random numbers; the default)
+ *      ANTITHETIC  also plays every block's deal with its faces mirrored,
+ *                  so a strong hand is paired with a weak one
+ *      STRATIFIED  antithetic, with the trump suit cycled evenly over the
+ *                  blocks, and the blocks post-stratified by the number
+ *                  of trumps in the starting hands (weighted by how often
+ *                  each number is dealt)
+ *
+ * Blocks are played concurrently, but judged one at a time in order, so a
+ *      pairing stops at the same block however many threads play it
+ * After every block two sequential probability ratio tests are updated:
+ *      "A scores 1/2 + delta rather than 1/2", and the same for B
+ *      (the estimate of the mean score is treated as normal, with its
+ *      sample variance)
+ * The pairing stops as soon as one entrant is shown to be better, or both
+ *      are shown not to be, which usually takes far fewer games than a
+ *      fixed-size test of the same strength; each result reports both
+ *
+ * Usage: java Tournament [players] [seed] [max games] [entrant ...]
+ *          [--sampling=independent|common|antithetic|stratified]
+ *      an entrant is "atk/def" (chances out of 100) or "ismcts[:millis]"
+ *      every pair of entrants is compared
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+public class Tournament{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // Seatings grow as 2^players, so tables are kept small
+    public static final int MAX_SEATS = 8;
+
+    // Blocks played before the tests are first checked, so the variance
+    //      estimate means something
+    private static final int MIN_BLOCKS = 16;
+
+    // Blocks handed to the pool at a time
+    private static final int WAVE_BLOCKS = 64;
+
+    private final GameConfig config;
+    private final int parallelism;
+
+    // The score margin the tests look for, and their error rates
+    private double delta = 0.02;
+    private double alpha = 0.05;
+    private double beta = 0.05;
+    private long maxGames = 1_000_000L;
+    private Sampling sampling = Sampling.COMMON;
+
+    // The result of a pairing
+    public enum Verdict{
+        A_BETTER, B_BETTER, EQUAL, INCONCLUSIVE
+    }
+
+    // How each block's deals are chosen (see the top of the file)
+    public enum Sampling{
+        INDEPENDENT, COMMON, ANTITHETIC, STRATIFIED
+    }
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    // Tables are dealt from 'config' (its seed seeds the blocks)
+    public Tournament(GameConfig config, int parallelism){
+        if (config.getNumPlayers() > MAX_SEATS){
+            throw new IllegalArgumentException("tournament tables hold at most "
+                    + MAX_SEATS + " players");
+        }
+        if (parallelism < 1){
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.config = config;
+        this.parallelism = parallelism;
+    }
+
+    public Tournament(GameConfig config){
+        this(config, Runtime.getRuntime().availableProcessors());
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    // 'delta' is how much better than 1/2 an entrant must score to be
+    //      called better; 'alpha' and 'beta' are the chances of calling
+    //      it wrongly either way
+    public void setTest(double delta, double alpha, double beta){
+        if (delta <= 0 || delta >= 0.5 || alpha <= 0 || alpha >= 0.5
+                || beta <= 0 || beta >= 0.5){
+            throw new IllegalArgumentException("need 0 < delta < 1/2 and"
+                    + " 0 < alpha, beta < 1/2");
+        }
+        this.delta = delta;
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    // A pairing that has not stopped after this many games is inconclusive
+    public void setMaxGames(long maxGames){
+        this.maxGames = maxGames;
+    }
+
+    public void setSampling(Sampling sampling){
+        this.sampling = sampling;
+    }
+
+    public Sampling getSampling(){
+        return this.sampling;
+    }
+
+    // The number of games in one block
+    public int getGamesPerBlock(){
+        int seatings = (1 << config.getNumPlayers()) - 2;
+        return sampling.compareTo(Sampling.ANTITHETIC) >= 0 ? 2 * seatings : seatings;
+    }
+
+
+
+
+    /************
+     * ENTRANTS *
+     * *********/
+
+    // One NPC configuration: attack and defend chances, and optionally a
+    //      Strategy, made fresh for every seat it plays
+    public static final class Entrant{
+        private final String name;
+        private final int atk;
+        private final int def;
+        private final Supplier<Strategy> strategy;
+
+        public Entrant(String name, int atk, int def, Supplier<Strategy> strategy){
+            this.name = name;
+            this.atk = atk;
+            this.def = def;
+            this.strategy = strategy;
+        }
+
+        // A default NPC with the given chances
+        public static Entrant npc(int atk, int def){
+            return new Entrant(atk + "/" + def, atk, def, null);
+        }
+
+        public static Entrant of(String name, Supplier<Strategy> strategy){
+            return new Entrant(name, 100, 100, strategy);
+        }
+
+        // Reads "atk/def" or "ismcts[:millis]"
+        public static Entrant parse(String s){
+            if (s.startsWith("ismcts")){
+                long millis = s.contains(":")
+                    ? Long.parseLong(s.substring(s.indexOf(':') + 1))
+                    : IsmctsStrategy.DEFAULT_BUDGET_MILLIS;
+                return of(s, () -> new IsmctsStrategy(millis, 1));
+            }
+            int slash = s.indexOf('/');
+            if (slash < 0){
+                throw new IllegalArgumentException("not an entrant: " + s);
+            }
+            return npc(Integer.parseInt(s.substring(0, slash)),
+                    Integer.parseInt(s.substring(slash + 1)));
+        }
+
+        public String getName(){
+            return this.name;
+        }
+
+        public boolean hasStrategy(){
+            return this.strategy != null;
+        }
+
+        void seat(Player p){
+            p.setChances(atk, def);
+            p.setStrategy(strategy == null ? null : strategy.get());
+        }
+
+        public String toString(){
+            return this.name;
+        }
+    }
+
+
+
+
+    /***********
+     * RESULTS *
+     * ********/
+
+    // Where a pairing stood when it stopped
+    public static final class Result{
+        private final Entrant a;
+        private final Entrant b;
+        private final Verdict verdict;
+        private final long blocks;
+        private final long games;
+        private final double mean;
+        private final double halfWidth;
+        private final long fixedGames;
+        private final long stopped;
+
+        Result(Entrant a, Entrant b, Verdict verdict, long blocks, long games,
+                double mean, double halfWidth, long fixedGames, long stopped){
+            this.a = a;
+            this.b = b;
+            this.verdict = verdict;
+            this.blocks = blocks;
+            this.games = games;
+            this.mean = mean;
+            this.halfWidth = halfWidth;
+            this.fixedGames = fixedGames;
+            this.stopped = stopped;
+        }
+
+        public Verdict getVerdict(){
+            return this.verdict;
+        }
+
+        public long getGames(){
+            return this.games;
+        }
+
+        public long getBlocks(){
+            return this.blocks;
+        }
+
+        // Games stopped at Durak.MAX_ROUNDS, scored as 1/2 but not draws
+        public long getStopped(){
+            return this.stopped;
+        }
+
+        // A's mean score, and its 95% confidence interval
+        public double getScore(){
+            return this.mean;
+        }
+
+        public double getLower(){
+            return this.mean - this.halfWidth;
+        }
+
+        public double getUpper(){
+            return this.mean + this.halfWidth;
+        }
+
+        // The games a fixed-size test of the same strength would play
+        public long getFixedGames(){
+            return this.fixedGames;
+        }
+
+        public String toString(){
+            return a + " vs " + b + ": " + verdict + " after " + games + " games ("
+                + blocks + " blocks), " + a + " scores "
+                + String.format("%.4f [%.4f, %.4f]", mean, getLower(), getUpper())
+                + "; a fixed test would need about " + fixedGames + " games"
+                + (stopped == 0 ? "" : " (" + stopped + " stopped at "
+                    + Durak.MAX_ROUNDS + " rounds)");
+        }
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // Plays A against B until the tests decide or maxGames is reached
+    public Result compare(Entrant a, Entrant b){
+        if (a.hasStrategy() || b.hasStrategy()){
+            DurakEngine.checkStrategies(config);
+        }
+        int perBlock = getGamesPerBlock();
+        long maxBlocks = Math.max(MIN_BLOCKS, maxGames / perBlock);
+        double upper = Math.log((1 - beta) / alpha);
+        double lower = Math.log(beta / (1 - alpha));
+
+        Strata strata = new Strata(sampling == Sampling.STRATIFIED
+                ? trumpWeights() : new double[]{1});
+        long n = 0;
+        long stopped = 0;
+        boolean aNotBetter = false;
+        boolean bNotBetter = false;
+        Verdict verdict = Verdict.INCONCLUSIVE;
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try{
+            search:
+            while (n < maxBlocks){
+                List<Callable<double[]>> wave = new ArrayList<Callable<double[]>>();
+                for (long i = n; i < Math.min(n + WAVE_BLOCKS, maxBlocks); i++){
+                    long block = i;
+                    wave.add(() -> playBlock(a, b, block));
+                }
+                for (Future<double[]> f : pool.invokeAll(wave)){
+                    double[] x = f.get();
+                    n++;
+                    strata.add((int) x[1], x[0]);
+                    stopped += (long) x[2];
+                    if (n < MIN_BLOCKS){
+                        continue;
+                    }
+                    double mean = strata.mean();
+                    double var = strata.varianceOfMean();
+                    double llrA = delta / var * (mean - (0.5 + delta / 2));
+                    double llrB = delta / var * ((0.5 - delta / 2) - mean);
+                    if (llrA >= upper){
+                        verdict = Verdict.A_BETTER;
+                        break search;
+                    }
+                    if (llrB >= upper){
+                        verdict = Verdict.B_BETTER;
+                        break search;
+                    }
+                    aNotBetter |= llrA <= lower;
+                    bNotBetter |= llrB <= lower;
+                    if (aNotBetter && bNotBetter){
+                        verdict = Verdict.EQUAL;
+                        break search;
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("tournament interrupted", e);
+        }
+        catch (ExecutionException e){
+            throw new IllegalStateException("a game failed", e.getCause());
+        }
+        finally{
+            pool.shutdown();
+        }
+
+        // The variance of one block's score, as if unstratified
+        double var = strata.varianceOfMean() * n;
+        double z = inverseNormal(1 - alpha) + inverseNormal(1 - beta);
+        long fixedBlocks = (long) Math.ceil(z * z * var / (delta * delta));
+        return new Result(a, b, verdict, n, n * perBlock, strata.mean(),
+                1.96 * Math.sqrt(strata.varianceOfMean()), fixedBlocks * perBlock,
+                stopped);
+    }
+
+    // Compares every pair of entrants
+    public List<Result> roundRobin(List<Entrant> entrants){
+        List<Result> results = new ArrayList<Result>();
+        for (int i = 0; i < entrants.size(); i++){
+            for (int j = i + 1; j < entrants.size(); j++){
+                results.add(compare(entrants.get(i), entrants.get(j)));
+            }
+        }
+        return results;
+    }
+
+    // A's mean score over block 'block', the block's stratum (always 0
+    //      unless STRATIFIED), and its stopped games, as
+    //      { score, stratum, stopped }
+    // Every deal is played at every seating; bit s of 'mask' set means A
+    //      sits in seat s
+    private double[] playBlock(Entrant a, Entrant b, long block){
+        int numPlayers = config.getNumPlayers();
+        long seed = BatchRunner.seedFor(config.getSeed(), block);
+        GameConfig deal = config.withSeed(seed);
+        GameConfig mirror = null;
+        int stratum = 0;
+        if (sampling.compareTo(Sampling.ANTITHETIC) >= 0){
+            Deal d = Deal.shuffled(config, seed);
+            if (sampling == Sampling.STRATIFIED){
+                Suit[] suits = Suit.values();
+                d = d.withTrump(suits[(int) (block % suits.length)]);
+                stratum = d.startingTrumps(numPlayers, config.getInitialHandSize());
+            }
+            deal = deal.withDeal(d);
+            mirror = deal.withDeal(d.mirrored());
+        }
+        double score = 0;
+        int stopped = 0;
+        for (int mask = 1; mask < (1 << numPlayers) - 1; mask++){
+            if (sampling == Sampling.INDEPENDENT){
+                deal = config.withSeed(BatchRunner.seedFor(seed, mask));
+            }
+            GameResult result = play(a, b, deal, mask);
+            score += score(result, mask);
+            stopped += result.isStopped() ? 1 : 0;
+            if (mirror != null){
+                result = play(a, b, mirror, mask);
+                score += score(result, mask);
+                stopped += result.isStopped() ? 1 : 0;
+            }
+        }
+        return new double[]{score / getGamesPerBlock(), stratum, stopped};
+    }
+
+    private static GameResult play(Entrant a, Entrant b, GameConfig deal, int mask){
+        Durak game = new Durak(deal);
+        ArrayList<Player> players = game.getGame().getPlayers();
+        for (int s = 0; s < players.size(); s++){
+            (((mask >> s) & 1) != 0 ? a : b).seat(players.get(s));
+        }
+        game.playGame();
+        return game.getResult();
+    }
+
+    // A's score in one game: 1 if B's seats hold the durak, 0 if A's do,
+    //      1/2 for a draw or a stopped game, which have no durak
+    private static double score(GameResult result, int mask){
+        return result.getLoserSeat() < 0 ? 0.5
+            : ((mask >> result.getLoserSeat()) & 1) != 0 ? 0 : 1;
+    }
+
+    // How likely each number of trumps is in the starting hands, from
+    //      the hypergeometric distribution of the shoe
+    private double[] trumpWeights(){
+        int shoe = config.getShoeSize();
+        int trumps = shoe / Suit.values().length;
+        int dealt = Math.min(shoe, config.getNumPlayers() * config.getInitialHandSize());
+        double[] w = new double[Math.min(trumps, dealt) + 1];
+        double all = binomial(shoe, dealt);
+        for (int k = 0; k < w.length; k++){
+            w[k] = binomial(trumps, k) * binomial(shoe - trumps, dealt - k) / all;
+        }
+        return w;
+    }
+
+    private static double binomial(int n, int k){
+        if (k < 0 || k > n){
+            return 0;
+        }
+        double c = 1;
+        for (int i = 1; i <= Math.min(k, n - k); i++){
+            c = c * (n - Math.min(k, n - k) + i) / i;
+        }
+        return c;
+    }
+
+    // The sample variance, kept away from 0 so the tests stay finite
+    private static double variance(long n, double sum, double sumSquares){
+        if (n < 2){
+            return 0.25;
+        }
+        return Math.max(1e-6, (sumSquares - sum * sum / n) / (n - 1));
+    }
+
+    // The p-th quantile of the standard normal distribution
+    //      (Abramowitz and Stegun 26.2.23, good to about 4.5e-4)
+    private static double inverseNormal(double p){
+        double q = p < 0.5 ? p : 1 - p;
+        double t = Math.sqrt(-2 * Math.log(q));
+        double x = t - (2.515517 + 0.802853 * t + 0.010328 * t * t)
+            / (1 + 1.432788 * t + 0.189269 * t * t + 0.001308 * t * t * t);
+        return p < 0.5 ? -x : x;
+    }
+
+
+
+
+    /**********
+     * STRATA *
+     * *******/
+
+    // Block scores grouped by stratum, for a post-stratified estimate of
+    //      the mean: the strata's means weighted by how likely each
+    //      stratum is, rather than by how often it happened to come up
+    // Strata not yet seen are left out, and the weights of the rest scaled
+    //      up to 1; a stratum seen only once borrows the overall variance
+    // With a single stratum this is the plain sample mean and variance
+    private static final class Strata{
+        private final double[] weights;
+        private final long[] n;
+        private final double[] sum;
+        private final double[] sumSquares;
+        private long total;
+        private double totalSum;
+        private double totalSumSquares;
+
+        Strata(double[] weights){
+            this.weights = weights;
+            this.n = new long[weights.length];
+            this.sum = new double[weights.length];
+            this.sumSquares = new double[weights.length];
+        }
+
+        void add(int k, double x){
+            n[k]++;
+            sum[k] += x;
+            sumSquares[k] += x * x;
+            total++;
+            totalSum += x;
+            totalSumSquares += x * x;
+        }
+
+        double mean(){
+            double m = 0;
+            double w = 0;
+            for (int k = 0; k < n.length; k++){
+                if (n[k] > 0){
+                    m += weights[k] * sum[k] / n[k];
+                    w += weights[k];
+                }
+            }
+            return w == 0 ? 0.5 : m / w;
+        }
+
+        // The variance of mean()
+        double varianceOfMean(){
+            double pooled = variance(total, totalSum, totalSumSquares);
+            double w = 0;
+            for (int k = 0; k < n.length; k++){
+                w += n[k] > 0 ? weights[k] : 0;
+            }
+            if (w == 0){
+                return pooled;
+            }
+            double v = 0;
+            for (int k = 0; k < n.length; k++){
+                if (n[k] > 0){
+                    double wk = weights[k] / w;
+                    double var = n[k] < 2 ? pooled : variance(n[k], sum[k], sumSquares[k]);
+                    v += wk * wk * var / n[k];
+                }
+            }
+            return v;
+        }
+    }
+
+
+
+
+    /*********************
+     * PROGRAM EXECUTION *
+     * ******************/
+
+    public static void main(String[] args){
+        Sampling sampling = Sampling.COMMON;
+        ArrayList<String> positional = new ArrayList<String>();
+        for (String arg : args){
+            if (arg.startsWith("--sampling=")){
+                sampling = Sampling.valueOf(
+                        arg.substring("--sampling=".length()).toUpperCase());
+            }
+            else{
+                positional.add(arg);
+            }
+        }
+        args = positional.toArray(new String[0]);
+
+        int numPlayers = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1L;
+        long maxGames = args.length > 2 ? Long.parseLong(args[2]) : 1_000_000L;
+
+        List<Entrant> entrants = new ArrayList<Entrant>();
+        for (int i = 3; i < args.length; i++){
+            entrants.add(Entrant.parse(args[i]));
+        }
+        if (entrants.isEmpty()){
+            entrants.add(Entrant.npc(100, 100));
+            entrants.add(Entrant.npc(50, 100));
+            entrants.add(Entrant.npc(100, 50));
+        }
+
+        Tournament tournament = new Tournament(new GameConfig(numPlayers, 6, false, seed));
+        tournament.setMaxGames(maxGames);
+        tournament.setSampling(sampling);
+        long start = System.nanoTime();
+        for (Result r : tournament.roundRobin(entrants)){
+            System.out.println(r);
+        }
+        System.out.println(String.format("%.3f", (System.nanoTime() - start) / 1e9) + "s");
+    }
+}
@@ -0,0 +1,101 @@
+/* Author: Daniel Hammer
+ *
+ * TranspositionTable class
+ *
+ * A fixed-size hash table of solved positions, keyed by GameState.getKey()
+ * Each entry remembers a value, whether it is exact or only a bound, and
+ *      the best move found, packed into one long
+ *
+ * The table can be shared by any number of threads without locks:
+ *      every slot holds (key ^ data, data), so an entry torn by two
+ *      threads writing at once no longer matches its key and is simply
+ *      treated as a miss
+ * A new entry always replaces the old one in its slot
+ */
+
+import java.util.Arrays;
+
+public final class TranspositionTable{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // Bounds
+    public static final int EXACT = 0;
+    public static final int LOWER = 1;
+    public static final int UPPER = 2;
+
+    // Set in every stored entry, so an empty slot never matches
+    private static final long USED = 1L << 12;
+
+    private final long[] slots;
+    private final int mask;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    // Holds 2^log2Entries entries, 16 bytes each
+    public TranspositionTable(int log2Entries){
+        if (log2Entries < 1 || log2Entries > 28){
+            throw new IllegalArgumentException("log2Entries must be between 1 and 28");
+        }
+        this.slots = new long[2 << log2Entries];
+        this.mask = (1 << log2Entries) - 1;
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    // Returns the entry stored for 'key', or 0 if there is none
+    public long probe(long key){
+        int i = ((int) key & mask) << 1;
+        long data = slots[i + 1];
+        return data != 0 && (slots[i] ^ data) == key ? data : 0L;
+    }
+
+    // 'value' is between -1 and 1; 'move' is a GameState move, or -1
+    public void store(long key, int value, int bound, int move){
+        long data = USED | (move & 0x3F) << 4 | bound << 2 | (value + 1);
+        int i = ((int) key & mask) << 1;
+        slots[i] = key ^ data;
+        slots[i + 1] = data;
+    }
+
+    public void clear(){
+        Arrays.fill(slots, 0L);
+    }
+
+    public int size(){
+        return this.mask + 1;
+    }
+
+
+
+
+    /******************
+     * ENTRY ACCESSORS *
+     * ***************/
+
+    public static int value(long entry){
+        return (int) (entry & 3) - 1;
+    }
+
+    public static int bound(long entry){
+        return (int) (entry >>> 2) & 3;
+    }
+
+    // The best move stored with the entry, or -1
+    public static int move(long entry){
+        int move = (int) (entry >>> 4) & 0x3F;
+        return move == 0x3F ? -1 : move;
+    }
+}
@@ -0,0 +1,146 @@
+/* Author: Daniel Hammer
+ *
+ * TrumpContext class
+ *
+ * Everything about a game that depends on the trump suit
+ * Cards never change, so instead of marking cards as trumps each game
+ *      looks them up here
+ *
+ * The beat tables are built once for all four possible trump suits:
+ *      BEATS[trump][attack][defense] is true if 'defense' beats 'attack'
+ *      BEATERS[trump][attack] is a CardSet mask of every card that beats it
+ * There is one TrumpContext per suit, shared by every game
+ */
+
+public final class TrumpContext{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    private static final boolean[][][] BEATS = buildBeats();
+    private static final long[][] BEATERS = buildBeaters();
+    private static final TrumpContext[] CONTEXTS = buildContexts();
+
+    private final Suit trumpSuit;
+    private final long trumpMask;
+    private final long[] beaters;
+
+
+
+
+    /***************
+     * CONSTRUCTOR *
+     * ************/
+
+    private TrumpContext(Suit trumpSuit){
+        this.trumpSuit = trumpSuit;
+        this.trumpMask = CardSet.suitMask(trumpSuit);
+        this.beaters = BEATERS[trumpSuit.ordinal()];
+    }
+
+    public static TrumpContext of(Suit trumpSuit){
+        return CONTEXTS[trumpSuit.ordinal()];
+    }
+
+
+
+
+    /************
+     * MUTATORS *
+     * *********/
+
+    public Suit getSuit(){
+        return this.trumpSuit;
+    }
+
+    // A CardSet mask of every trump card
+    public long getTrumpMask(){
+        return this.trumpMask;
+    }
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    public boolean isTrump(Card c){
+        return c.getSuit() == trumpSuit;
+    }
+
+    // Returns true if 'defense' beats 'attack'
+    public boolean beats(Card attack, Card defense){
+        return BEATS[trumpSuit.ordinal()][attack.getId()][defense.getId()];
+    }
+
+    // Returns a CardSet mask of every card that beats 'attack'
+    public long beaters(Card attack){
+        return beaters[attack.getId()];
+    }
+
+    // The card's rank in this game: trumps rank above every other card
+    public int rank(Card c){
+        return isTrump(c) ? c.getRank() + Face.values().length : c.getRank();
+    }
+
+    // Displays the card, marking trumps with (T)
+    public String display(Card c){
+        return isTrump(c) ? c + " (T)" : c.toString();
+    }
+
+    public String toString(){
+        return "Trump " + trumpSuit;
+    }
+
+
+
+
+    /******************
+     * TABLE BUILDING *
+     * ***************/
+
+    // A defense beats an attack if it is a higher card of the same suit,
+    //      or a trump played against a card that is not a trump
+    private static boolean[][][] buildBeats(){
+        int n = Card.count();
+        boolean[][][] beats = new boolean[Suit.values().length][n][n];
+        for (Suit t : Suit.values()){
+            for (int a = 0; a < n; a++){
+                Card atk = Card.byId(a);
+                for (int d = 0; d < n; d++){
+                    Card def = Card.byId(d);
+                    beats[t.ordinal()][a][d] =
+                        (def.getSuit() == atk.getSuit()
+                            && def.getRank() > atk.getRank())
+                        || (def.getSuit() == t && atk.getSuit() != t);
+                }
+            }
+        }
+        return beats;
+    }
+
+    private static long[][] buildBeaters(){
+        int n = Card.count();
+        long[][] beaters = new long[Suit.values().length][n];
+        for (int t = 0; t < beaters.length; t++){
+            for (int a = 0; a < n; a++){
+                for (int d = 0; d < n; d++){
+                    if (BEATS[t][a][d]){
+                        beaters[t][a] |= 1L << d;
+                    }
+                }
+            }
+        }
+        return beaters;
+    }
+
+    private static TrumpContext[] buildContexts(){
+        TrumpContext[] contexts = new TrumpContext[Suit.values().length];
+        for (Suit s : Suit.values()){
+            contexts[s.ordinal()] = new TrumpContext(s);
+        }
+        return contexts;
+    }
+}
@@ -0,0 +1,77 @@
+/* Author: Daniel Hammer
+ *
+ * EngineBenchmark class
+ *
+ * The JMH version of Benchmark: every one of its operations, run one call
+ *      per JMH invocation in a fork of its own
+ * The engine's classes are in the default package, which JMH benchmarks
+ *      cannot be; each operation is looked up once by name through
+ *      Benchmark.operation() and called through IntToLongFunction, so the
+ *      measured code is the same as in Benchmark
+ *
+ * Build and run with the pom's jmh profile:
+ *      mvn -Pjmh package
+ *      java -jar target/benchmarks.jar -prof gc [-p name=game.4p,...]
+ * The gc profiler's gc.alloc.rate.norm is the bytes allocated per op; for
+ *      game.* and table.* that is the allocation per simulated game
+ */
+
+package jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark{
+
+    /**********
+     * FIELDS *
+     * *******/
+
+    // Benchmark's names for its operations
+    @Param({
+        "Game.buildDeck", "Game.shuffle", "Game.deal",
+        "Player.hasHigherCard", "Player.returnHigherCard", "Player.canPlay",
+        "Durak.round", "GameState.copyInto", "GameState.applyUndo",
+        "EndgameSolver.solve", "game.2p", "game.3p", "game.4p", "game.5p", "game.6p",
+        "table.12p.2decks", "table.24p.4decks"
+    })
+    public String name;
+
+    private IntToLongFunction op;
+
+
+
+
+    /*****************
+     * LOGIC METHODS *
+     * **************/
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException{
+        op = (IntToLongFunction) Class.forName("Benchmark")
+            .getMethod("operation", String.class).invoke(null, name);
+    }
+
+    // The returned value goes to JMH's blackhole, so the work is kept
+    @Benchmark
+    public long run(){
+        return op.applyAsLong(1);
+    }
+}